@@ -0,0 +1,78 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.IdentifierService;
+import com.improbable.queue.service.JournalService;
+import com.improbable.queue.service.QueueService;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+
+/**
+ * Builds services outside a Spring context, configured the way their properties would configure them.
+ */
+final class BenchmarkQueues {
+
+    private BenchmarkQueues() {
+    }
+
+    static IdentifierService identifierService(String generator) {
+        IdentifierService identifierService = new IdentifierService();
+        set(identifierService, "generatorType", generator);
+        invoke(identifierService, "init");
+        return identifierService;
+    }
+
+    /**
+     * A journal over {@code directory} for {@code queueService}, recovered from whatever the directory
+     * holds, without periodic snapshots. {@link #close} it when done.
+     */
+    static JournalService journalService(QueueService queueService, Path directory, boolean sync) {
+        JournalService journalService = new JournalService();
+        set(journalService, "queueService", queueService);
+        set(journalService, "enabled", true);
+        set(journalService, "directory", directory.toString());
+        set(journalService, "sync", sync);
+        set(journalService, "fileSizeMegabytes", 256);
+        set(journalService, "flushIntervalMillis", 10L);
+        set(journalService, "snapshotIntervalMillis", 0L);
+        invoke(journalService, "init");
+        return journalService;
+    }
+
+    static void close(JournalService journalService) {
+        invoke(journalService, "destroy");
+    }
+
+    /**
+     * @return the identifiers of the users joined, in queue order
+     */
+    static String[] fill(QueueService queueService, int size) {
+        String[] identifiers = new String[size];
+        for (int i = 0; i < size; i++) {
+            identifiers[i] = queueService.join(UserStub.builder().build());
+        }
+        return identifiers;
+    }
+
+    private static void set(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void invoke(Object target, String name) {
+        try {
+            Method method = target.getClass().getDeclaredMethod(name);
+            method.setAccessible(true);
+            method.invoke(target);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.improbable.queue.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected by the usual JMH command line once per thread count. Without {@code -t}
+ * that is 1, 4 and 16 threads, so contention shows up next to single-threaded cost.
+ */
+public class BenchmarkRunner {
+
+    private static final int[] DEFAULT_THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        if (options.shouldList()) {
+            new Runner(options).list();
+            return;
+        }
+        int[] threadCounts = options.getThreads().hasValue() ? new int[]{options.getThreads().get()} : DEFAULT_THREADS;
+        for (int threads : threadCounts) {
+            new Runner(new OptionsBuilder().parent(options).threads(threads).build()).run();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.QueueServiceApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Join and poll throughput over HTTP against {@code nodes} clustered instances of the application, each
+ * thread talking to one node in turn. The instances share this JVM and its cores, so the numbers only show
+ * how the work per request grows with the node count; spread across machines, that is what throughput
+ * divides by.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClusterBenchmark {
+
+    @Param({"1", "2", "4"})
+    private int nodes;
+
+    @Param({"10000"})
+    private int size;
+
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+    private final AtomicInteger threads = new AtomicInteger();
+    private String[] identifiers;
+
+    @Setup
+    public void setUp() throws IOException {
+        for (int i = 0; i < nodes; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls.add("http://127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        for (int i = 0; i < nodes; i++) {
+            contexts.add(new SpringApplicationBuilder(QueueServiceApplication.class)
+                    .run("--server.port=" + urls.get(i).substring(urls.get(i).lastIndexOf(':') + 1),
+                            "--queue.cluster.nodes=" + String.join(",", urls),
+                            "--queue.cluster.node-index=" + i));
+        }
+        RestTemplate restTemplate = new RestTemplate();
+        identifiers = new String[size];
+        for (int i = 0; i < size; i++) {
+            identifiers[i] = restTemplate.postForObject(urls.get(i % nodes) + "/cluster/join", null, String.class);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (ConfigurableApplicationContext context : contexts) {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final RestTemplate restTemplate = new RestTemplate();
+        String url;
+
+        @Setup
+        public void setUp(ClusterBenchmark benchmark) {
+            url = benchmark.urls.get(benchmark.threads.getAndIncrement() % benchmark.nodes);
+        }
+    }
+
+    @Benchmark
+    public String join(Client client) {
+        return client.restTemplate.postForObject(client.url + "/cluster/join", null, String.class);
+    }
+
+    @Benchmark
+    public String poll(Client client) {
+        String identifier = identifiers[ThreadLocalRandom.current().nextInt(size)];
+        return client.restTemplate.getForObject(client.url + "/cluster/poll?identifier={id}", String.class, identifier);
+    }
+}
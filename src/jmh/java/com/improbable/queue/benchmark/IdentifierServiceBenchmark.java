@@ -0,0 +1,58 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.service.IdentifierService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdentifierServiceBenchmark {
+
+    @Param({"random", "time-ordered"})
+    private String generator;
+
+    private IdentifierService identifierService;
+    private String valid;
+
+    @Setup
+    public void setUp() {
+        identifierService = BenchmarkQueues.identifierService(generator);
+        valid = identifierService.generateIdentifier();
+    }
+
+    @Benchmark
+    public String generateIdentifier() {
+        return identifierService.generateIdentifier();
+    }
+
+    /**
+     * The baseline both generators replace, which contends on one shared {@code SecureRandom}.
+     */
+    @Benchmark
+    public String randomUUID() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public boolean validateValidIdentifier() {
+        return identifierService.validateIdentifier(valid);
+    }
+
+    @Benchmark
+    public boolean validateInvalidIdentifier() {
+        return identifierService.validateIdentifier("3f2a9c1e-7b4d-4e8a-9c5f-1d2e3f4a5b6z");
+    }
+}
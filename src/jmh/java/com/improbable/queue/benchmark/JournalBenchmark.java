@@ -0,0 +1,77 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.JournalService;
+import com.improbable.queue.service.QueueService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of joins through a journaled queue, with and without waiting for each join's record to be
+ * on disk. Under {@code queue.journal.sync} more threads share each group commit.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JournalBenchmark {
+
+    @Param({"false", "true"})
+    private boolean sync;
+
+    private Path directory;
+    private JournalService journalService;
+    private QueueService queueService;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        queueService = new QueueService(BenchmarkQueues.identifierService("random"), "primitive");
+        journalService = BenchmarkQueues.journalService(queueService, directory, sync);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkQueues.close(journalService);
+        delete(directory);
+    }
+
+    @Benchmark
+    public String join() {
+        return queueService.join(UserStub.builder().build());
+    }
+
+    static void copy(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
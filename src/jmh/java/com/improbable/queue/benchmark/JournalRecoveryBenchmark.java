@@ -0,0 +1,92 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.JournalService;
+import com.improbable.queue.service.QueueService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a restart to recover a queue that saw {@code joined} joins, four in five of them followed by a
+ * leave. {@code journal} replays every record; {@code snapshot} loads the snapshot an earlier start wrote.
+ * Each iteration recovers a fresh copy, as recovery itself rewrites the directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JournalRecoveryBenchmark {
+
+    @Param({"5000000"})
+    private int joined;
+
+    @Param({"journal", "snapshot"})
+    private String source;
+
+    private Path recorded;
+    private Path directory;
+    private JournalService journalService;
+
+    @Setup
+    public void setUp() throws IOException {
+        recorded = Files.createTempDirectory("journal-recovery-benchmark");
+        QueueService queueService = new QueueService(BenchmarkQueues.identifierService("random"), "primitive");
+        JournalService recording = BenchmarkQueues.journalService(queueService, recorded, false);
+        for (int i = 0; i < joined; i++) {
+            String identifier = queueService.join(UserStub.builder().build());
+            if (i % 5 != 0) {
+                queueService.removeIdentifier(identifier);
+            }
+        }
+        BenchmarkQueues.close(recording);
+        if ("snapshot".equals(source)) {
+            //    a start replays the journal and leaves only a snapshot of the result behind
+            BenchmarkQueues.close(recover(recorded));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        JournalBenchmark.delete(recorded);
+    }
+
+    @Setup(Level.Iteration)
+    public void copyRecorded() throws IOException {
+        directory = Files.createTempDirectory("journal-recovery-benchmark");
+        JournalBenchmark.copy(recorded, directory);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCopy() throws IOException {
+        BenchmarkQueues.close(journalService);
+        JournalBenchmark.delete(directory);
+    }
+
+    @Benchmark
+    public JournalService recover() {
+        journalService = recover(directory);
+        return journalService;
+    }
+
+    private static JournalService recover(Path directory) {
+        return BenchmarkQueues.journalService(new QueueService(BenchmarkQueues.identifierService("random"), "primitive"), directory, false);
+    }
+}
@@ -0,0 +1,123 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.QueueServiceApplication;
+import com.improbable.queue.controller.BinaryPollServer;
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.QueueService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls per millisecond over {@code GET /queue/poll} against the binary protocol of {@link BinaryPollServer},
+ * one request per round trip and {@value #PIPELINED} per round trip.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PollProtocolBenchmark {
+
+    static final int PIPELINED = 64;
+    private static final int SIZE = 100_000;
+
+    private ConfigurableApplicationContext context;
+    private String url;
+    private int binaryPort;
+    private String[] identifiers;
+
+    @Setup
+    public void setUp() throws IOException {
+        int httpPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            httpPort = socket.getLocalPort();
+        }
+        context = new SpringApplicationBuilder(QueueServiceApplication.class)
+                .run("--server.port=" + httpPort, "--queue.binary.enabled=true", "--queue.binary.port=0");
+        url = "http://127.0.0.1:" + httpPort;
+        binaryPort = context.getBean(BinaryPollServer.class).getLocalPort();
+        QueueService queueService = context.getBean(QueueService.class);
+        identifiers = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            identifiers[i] = queueService.join(UserStub.builder().build());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final RestTemplate restTemplate = new RestTemplate();
+        final ByteBuffer requests = ByteBuffer.allocateDirect(PIPELINED * BinaryPollServer.REQUEST_SIZE);
+        final ByteBuffer responses = ByteBuffer.allocateDirect(PIPELINED * BinaryPollServer.RESPONSE_SIZE);
+        SocketChannel channel;
+
+        @Setup
+        public void setUp(PollProtocolBenchmark benchmark) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", benchmark.binaryPort));
+            channel.socket().setTcpNoDelay(true);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            channel.close();
+        }
+
+        long exchange(String[] identifiers, int count) throws IOException {
+            requests.clear();
+            for (int i = 0; i < count; i++) {
+                UUID uuid = UUID.fromString(identifiers[ThreadLocalRandom.current().nextInt(identifiers.length)]);
+                requests.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            }
+            requests.flip();
+            while (requests.hasRemaining()) {
+                channel.write(requests);
+            }
+            responses.clear().limit(count * BinaryPollServer.RESPONSE_SIZE);
+            while (responses.hasRemaining()) {
+                channel.read(responses);
+            }
+            return responses.getLong(1);
+        }
+    }
+
+    @Benchmark
+    public String rest(Client client) {
+        String identifier = identifiers[ThreadLocalRandom.current().nextInt(SIZE)];
+        return client.restTemplate.getForObject(url + "/queue/poll?identifier={id}", String.class, identifier);
+    }
+
+    @Benchmark
+    public long binary(Client client) throws IOException {
+        return client.exchange(identifiers, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINED)
+    public long binaryPipelined(Client client) throws IOException {
+        return client.exchange(identifiers, PIPELINED);
+    }
+}
@@ -0,0 +1,60 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.service.QueueService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retained heap per waiting user for each storage engine, reported as the {@code bytesPerUser} secondary
+ * result next to the time taken to fill the queue. Run single-threaded: the heap is measured around the
+ * whole fill, so other threads' garbage would count against it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 1, batchSize = 1)
+@Measurement(iterations = 3, batchSize = 1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueueMemoryBenchmark {
+
+    @Param({"10000000"})
+    private int size;
+
+    @Param({"object", "primitive"})
+    private String store;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retained {
+        public double bytesPerUser;
+    }
+
+    @Benchmark
+    public long fill(Retained retained) {
+        long before = usedHeap();
+        QueueService queueService = new QueueService(BenchmarkQueues.identifierService("random"), store);
+        BenchmarkQueues.fill(queueService, size);
+        long after = usedHeap();
+        retained.bytesPerUser = (after - before) / (double) size;
+        return queueService.size();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,105 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.model.QueueStatus;
+import com.improbable.queue.service.QueueService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the read paths a polling user hits, against a queue that stays at {@code size} users.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueueReadBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"object", "primitive"})
+    private String store;
+
+    /**
+     * {@code queue.position-cache.max-staleness-ms}; 0 computes every position from the prefix sums.
+     */
+    @Param({"0", "1000"})
+    private long positionCacheMillis;
+
+    private QueueService queueService;
+    private String head;
+    private String middle;
+    private String tail;
+
+    @Setup
+    public void setUp() {
+        queueService = new QueueService("benchmark", BenchmarkQueues.identifierService("random"), store, positionCacheMillis);
+        String[] identifiers = BenchmarkQueues.fill(queueService, size);
+        //    let the cache build its first table before measuring
+        try {
+            Thread.sleep(positionCacheMillis * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        head = identifiers[0];
+        middle = identifiers[size / 2];
+        tail = identifiers[size - 1];
+    }
+
+    @Benchmark
+    public int positionAtHead() {
+        return queueService.getPositionInQueue(head);
+    }
+
+    @Benchmark
+    public int positionAtMiddle() {
+        return queueService.getPositionInQueue(middle);
+    }
+
+    @Benchmark
+    public int positionAtTail() {
+        return queueService.getPositionInQueue(tail);
+    }
+
+    /**
+     * What {@code GET /queue/poll} did before {@link QueueService#poll}: three lookups under three read locks.
+     */
+    @Benchmark
+    public long pollInThreeLookups() {
+        if (!queueService.checkExists(middle)) {
+            return QueueService.NOT_FOUND;
+        }
+        return queueService.isIdentifierAdmittable(middle) ? QueueService.ADMITTED : queueService.getPositionInQueue(middle);
+    }
+
+    @Benchmark
+    public QueueStatus poll() {
+        return queueService.poll(middle);
+    }
+
+    @Benchmark
+    public boolean isQueueEmpty() {
+        return queueService.isQueueEmpty();
+    }
+
+    @Benchmark
+    public long size() {
+        return queueService.size();
+    }
+
+    @TearDown
+    public void tearDown() {
+        queueService.close();
+    }
+}
@@ -0,0 +1,89 @@
+package com.improbable.queue.benchmark;
+
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.QueueService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per batch of {@value #BATCH} joins, leaves or admissions, per thread. These paths change the
+ * queue's size, so each iteration starts again from a queue of {@code size} users instead of measuring
+ * against a queue that keeps growing or draining. Leaves and admissions contend for the write lock;
+ * attempts that lose are counted like any other, as a caller would see them fail fast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueueWriteBenchmark {
+
+    static final int BATCH = 100_000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"object", "primitive"})
+    private String store;
+
+    private QueueService queueService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queueService = new QueueService(BenchmarkQueues.identifierService("random"), store);
+        BenchmarkQueues.fill(queueService, size);
+    }
+
+    /**
+     * Users each thread joined before the iteration, for it to remove again, and so that every admission
+     * finds someone waiting.
+     */
+    @State(Scope.Thread)
+    public static class Joined {
+        String[] identifiers;
+
+        @Setup(Level.Iteration)
+        public void setUp(QueueWriteBenchmark benchmark) {
+            identifiers = BenchmarkQueues.fill(benchmark.queueService, BATCH);
+        }
+    }
+
+    @Benchmark
+    public void join(Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(queueService.join(UserStub.builder().build()));
+        }
+    }
+
+    @Benchmark
+    public void removeIdentifier(Joined joined, Blackhole blackhole) {
+        for (String identifier : joined.identifiers) {
+            blackhole.consume(queueService.removeIdentifier(identifier));
+        }
+    }
+
+    @Benchmark
+    public void admit(Joined joined, Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) {
+            try {
+                blackhole.consume(queueService.admit(1));
+            } catch (RuntimeException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.improbable.queue.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.improbable.queue.QueueServiceApplication;
+import com.improbable.queue.metrics.LatencyHistogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Starts the application on a free local port and drives it over HTTP from many concurrent clients with a
+ * weighted mix of joins, polls, leaves and admissions, then reports throughput and latency percentiles per
+ * operation and checks the queue against what the clients did.
+ * <p>
+ * Options, all {@code --name=value}: {@code clients} (64), {@code warmup-seconds} (5), {@code seconds} (30),
+ * {@code mix} ({@code join:30,poll:60,leave:5,admit:5}) and {@code admit-count} (10). Any other option, such
+ * as {@code --queue.store=primitive}, is passed to the application.
+ */
+public class LoadTest {
+
+    enum Operation {
+        JOIN, POLL, LEAVE, ADMIT
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int VERIFY_BATCH = 5_000;
+
+    private final String url;
+    private final int clients;
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final int[] weights = new int[Operation.values().length];
+    private final int admitCount;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final AtomicLongArray errors = new AtomicLongArray(Operation.values().length);
+    private final Map<Integer, AtomicLong> errorsByStatus = new ConcurrentHashMap<>();
+    private final Set<String> joined = ConcurrentHashMap.newKeySet();
+    private final Set<String> left = ConcurrentHashMap.newKeySet();
+    private final AtomicLong admitted = new AtomicLong();
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    private LoadTest(String url, Map<String, String> options) {
+        this.url = url;
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "64"));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup-seconds", "5")));
+        this.measureNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("seconds", "30")));
+        this.admitCount = Integer.parseInt(options.getOrDefault("admit-count", "10"));
+        for (String entry : options.getOrDefault("mix", "join:30,poll:60,leave:5,admit:5").split(",")) {
+            String[] parts = entry.split(":");
+            weights[Operation.valueOf(parts[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(parts[1].trim());
+        }
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        applicationArgs.add("--server.port=0");
+        for (String arg : args) {
+            if (arg.startsWith("--queue.") || arg.startsWith("--server.")) {
+                applicationArgs.add(arg);
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("expected --name=value, got " + arg);
+            }
+        }
+        int clients = Integer.parseInt(options.getOrDefault("clients", "64"));
+        //    keep one pooled connection per client instead of the default five
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QueueServiceApplication.class)
+                .run(applicationArgs.toArray(new String[0]));
+        boolean isValid;
+        try {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            LoadTest loadTest = new LoadTest("http://127.0.0.1:" + port, options);
+            loadTest.run();
+            loadTest.report();
+            isValid = loadTest.verify();
+        } finally {
+            context.close();
+        }
+        System.exit(isValid ? 0 : 1);
+    }
+
+    private void run() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    drive();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        TimeUnit.NANOSECONDS.sleep(warmupNanos);
+        measuring = true;
+        TimeUnit.NANOSECONDS.sleep(measureNanos);
+        measuring = false;
+        running = false;
+        done.await();
+    }
+
+    private void drive() {
+        List<String> mine = new ArrayList<>();
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        while (running) {
+            Operation operation = pick(ThreadLocalRandom.current().nextInt(totalWeight));
+            if (mine.isEmpty() && (operation == Operation.POLL || operation == Operation.LEAVE)) {
+                operation = Operation.JOIN;
+            }
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = call(operation, mine);
+            } catch (IOException e) {
+                response = new Response(-1, e.getMessage());
+            }
+            long elapsed = System.nanoTime() - start;
+            if (measuring) {
+                latencies[operation.ordinal()].record(elapsed);
+                if (response.status != 200) {
+                    errors.incrementAndGet(operation.ordinal());
+                    errorsByStatus.computeIfAbsent(response.status, status -> new AtomicLong()).incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private Operation pick(int draw) {
+        for (Operation operation : Operation.values()) {
+            draw -= weights[operation.ordinal()];
+            if (draw < 0) {
+                return operation;
+            }
+        }
+        return Operation.POLL;
+    }
+
+    private Response call(Operation operation, List<String> mine) throws IOException {
+        switch (operation) {
+            case JOIN: {
+                Response response = send("POST", "/queue/join?username=load", null);
+                if (response.status == 200) {
+                    joined.add(response.body);
+                    mine.add(response.body);
+                }
+                return response;
+            }
+            case POLL:
+                return send("GET", "/queue/poll?identifier=" + random(mine), null);
+            case LEAVE: {
+                int index = ThreadLocalRandom.current().nextInt(mine.size());
+                String identifier = mine.get(index);
+                Response response = send("PUT", "/queue/leave?identifier=" + identifier, null);
+                if (response.status == 200) {
+                    left.add(identifier);
+                    mine.set(index, mine.get(mine.size() - 1));
+                    mine.remove(mine.size() - 1);
+                }
+                return response;
+            }
+            default: {
+                Response response = send("POST", "/queue/admit?count=" + admitCount, null);
+                if (response.status == 200) {
+                    admitted.addAndGet(Long.parseLong(response.body));
+                }
+                return response;
+            }
+        }
+    }
+
+    private void report() {
+        double seconds = measureNanos / 1e9;
+        System.out.println();
+        System.out.printf("%-6s %10s %10s %8s %10s %10s %10s %10s%n", "op", "count", "ops/s", "errors", "p50 us", "p99 us", "p999 us", "max us");
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            total += histogram.count();
+            System.out.printf("%-6s %10d %10.0f %8d %10.1f %10.1f %10.1f %10.1f%n", operation.name().toLowerCase(), histogram.count(),
+                    histogram.count() / seconds, errors.get(operation.ordinal()), histogram.percentile(50) / 1e3,
+                    histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+        }
+        System.out.printf("%-6s %10d %10.0f%n", "all", total, total / seconds);
+        if (!errorsByStatus.isEmpty()) {
+            System.out.println("errors by status: " + errorsByStatus);
+        }
+    }
+
+    /**
+     * Every user joined and not left must be known, admitted ones as admitted; the rest must hold the
+     * positions 0 to n - 1 exactly once, with n the queue's size; users who left must be unknown.
+     */
+    private boolean verify() throws IOException {
+        List<String> present = new ArrayList<>();
+        for (String identifier : joined) {
+            if (!left.contains(identifier)) {
+                present.add(identifier);
+            }
+        }
+        long lost = 0;
+        long admittedSeen = 0;
+        BitSet positions = new BitSet();
+        long duplicates = 0;
+        int waiting = 0;
+        for (int from = 0; from < present.size(); from += VERIFY_BATCH) {
+            for (JsonNode status : pollBatch(present.subList(from, Math.min(present.size(), from + VERIFY_BATCH)))) {
+                String value = status.get("status").asText();
+                if ("JOIN".equals(value)) {
+                    admittedSeen++;
+                } else if ("WAITING".equals(value)) {
+                    int position = status.get("position").asInt();
+                    if (positions.get(position)) {
+                        duplicates++;
+                    }
+                    positions.set(position);
+                    waiting++;
+                } else {
+                    lost++;
+                }
+            }
+        }
+        long resurrected = 0;
+        List<String> gone = new ArrayList<>(left);
+        for (int from = 0; from < gone.size(); from += VERIFY_BATCH) {
+            for (JsonNode status : pollBatch(gone.subList(from, Math.min(gone.size(), from + VERIFY_BATCH)))) {
+                if (!"NOT_FOUND".equals(status.get("status").asText())) {
+                    resurrected++;
+                }
+            }
+        }
+        long size = MAPPER.readTree(send("GET", "/metrics", null).body).get("default").get("queueLength").asLong();
+        boolean isGapFree = duplicates == 0 && waiting == size && positions.nextClearBit(0) == waiting;
+
+        System.out.println();
+        System.out.printf("joined %d, left %d, admitted %d (%d still known), waiting %d, queue length %d%n",
+                joined.size(), left.size(), admitted.get(), admittedSeen, waiting, size);
+        System.out.printf("lost users: %d, users back after leaving: %d, positions gap-free: %s%n", lost, resurrected, isGapFree);
+        return lost == 0 && resurrected == 0 && isGapFree;
+    }
+
+    private JsonNode pollBatch(List<String> identifiers) throws IOException {
+        Response response = send("POST", "/queue/poll/batch", MAPPER.writeValueAsString(identifiers));
+        if (response.status != 200) {
+            throw new IOException("poll/batch answered " + response.status + ": " + response.body);
+        }
+        return MAPPER.readTree(response.body);
+    }
+
+    private static String random(List<String> identifiers) {
+        return identifiers.get(ThreadLocalRandom.current().nextInt(identifiers.size()));
+    }
+
+    private Response send(String method, String path, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+        connection.setRequestMethod(method);
+        if (json != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        //    read to the end so the connection goes back to the keep-alive pool
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[4096];
+                for (int n = stream.read(buffer); n >= 0; n = stream.read(buffer)) {
+                    body.write(buffer, 0, n);
+                }
+            }
+        }
+        return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.model.PollStatus;
+import com.improbable.queue.model.QueueEntry;
+import com.improbable.queue.model.QueueStatus;
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.IdentifierService;
+import com.improbable.queue.service.QueueService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request handling shared by the default queue's endpoints and the named queues' endpoints.
+ */
+public abstract class AbstractQueueController {
+
+    /**
+     * Sent with every poll answer; see {@link QueueStatus#getEpoch()}.
+     */
+    public static final String EPOCH_HEADER = "X-Queue-Epoch";
+
+    //    keep client tokens and usernames apart, so a token can never collide with someone's username
+    private static final String TOKEN_KEY = "token:";
+    private static final String USERNAME_KEY = "username:";
+
+    @Autowired
+    protected IdentifierService identifierService;
+
+    @Value("${queue.batch-limit:10000}")
+    protected int batchLimit;
+
+    @Value("${queue.join.dedupe-usernames:false}")
+    protected boolean dedupeUsernames;
+
+    @Value("${queue.range.enabled:false}")
+    protected boolean rangeEnabled;
+
+    /**
+     * @param idempotencyKey the client's {@code Idempotency-Key} header, or null; with
+     *                       {@code queue.join.dedupe-usernames} set the username serves when it is missing
+     */
+    protected ResponseEntity join(QueueService queueService, String username, String idempotencyKey) {
+        String key = idempotencyKey != null ? TOKEN_KEY + idempotencyKey
+                : dedupeUsernames && username != null ? USERNAME_KEY + username : null;
+        UserStub userStub = UserStub.builder().username(username).build();
+        String identifier = key == null ? queueService.join(userStub) : queueService.join(userStub, key);
+        return ResponseEntity.status(HttpStatus.OK).body(identifier);
+    }
+
+    protected ResponseEntity joinBatch(QueueService queueService, List<String> usernames) {
+        if (usernames == null || usernames.isEmpty() || usernames.size() > batchLimit) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("a batch holds 1 to " + batchLimit + " usernames");
+        }
+        List<UserStub> userStubs = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            userStubs.add(UserStub.builder().username(username).build());
+        }
+        List<String> identifiers = queueService.joinAll(userStubs);
+        return ResponseEntity.status(HttpStatus.OK).body(identifiers);
+    }
+
+    protected ResponseEntity poll(QueueService queueService, String identifier) {
+        identifier = IdentifierService.normalizeIdentifier(identifier);
+//        validate identifier
+        if (!identifierService.validateIdentifier(identifier)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid identifier");
+        }
+        QueueStatus status = queueService.poll(identifier);
+        if (!status.isFound()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).header(EPOCH_HEADER, Long.toString(status.getEpoch())).build();
+        }
+        queueService.heartbeat(identifier);
+        ResponseEntity.BodyBuilder ok = ResponseEntity.status(HttpStatus.OK).header(EPOCH_HEADER, Long.toString(status.getEpoch()));
+        return status.isAdmitted() ? ok.body("JOIN") : ok.body(status.getPosition());
+    }
+
+    protected ResponseEntity pollBatch(QueueService queueService, List<String> identifiers) {
+        if (identifiers == null || identifiers.isEmpty() || identifiers.size() > batchLimit) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("a batch holds 1 to " + batchLimit + " identifiers");
+        }
+        boolean[] isValid = new boolean[identifiers.size()];
+        List<String> valid = new ArrayList<>(identifiers.size());
+        for (int i = 0; i < identifiers.size(); i++) {
+            String identifier = IdentifierService.normalizeIdentifier(identifiers.get(i));
+            isValid[i] = identifierService.validateIdentifier(identifier);
+            if (isValid[i]) {
+                valid.add(identifier);
+            }
+        }
+        long[] statuses = queueService.pollAll(valid);
+        List<PollStatus> results = new ArrayList<>(identifiers.size());
+        int next = 0;
+        for (int i = 0; i < identifiers.size(); i++) {
+            PollStatus.PollStatusBuilder result = PollStatus.builder().identifier(identifiers.get(i));
+            if (!isValid[i]) {
+                result.status(PollStatus.INVALID);
+            } else {
+                long status = statuses[next++];
+                if (status == QueueService.ADMITTED) {
+                    result.status(PollStatus.ADMITTED);
+                } else if (status == QueueService.NOT_FOUND) {
+                    result.status(PollStatus.NOT_FOUND);
+                } else {
+                    result.status(PollStatus.WAITING).position(status);
+                }
+                if (status != QueueService.NOT_FOUND) {
+                    queueService.heartbeat(valid.get(next - 1));
+                }
+            }
+            results.add(result.build());
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(results);
+    }
+
+    protected ResponseEntity leave(QueueService queueService, String identifier) {
+        identifier = IdentifierService.normalizeIdentifier(identifier);
+//        validate identifier
+        if (!identifierService.validateIdentifier(identifier)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid identifier");
+        }
+        if (queueService.checkExists(identifier)) {
+            boolean isSuccessful = queueService.removeIdentifier(identifier);
+            return isSuccessful ? ResponseEntity.status(HttpStatus.OK).build() : ResponseEntity.status(HttpStatus.EXPECTATION_FAILED).build();
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * A page of waiting users from position {@code from} on. The page lists identifiers, which let anyone
+     * holding them poll or leave as that user, so it is 404 unless {@code queue.range.enabled} is set.
+     */
+    protected ResponseEntity range(QueueService queueService, long from, int limit) {
+        if (!rangeEnabled) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (from < 0 || limit < 1 || limit > batchLimit) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("a page starts at 0 or later and holds 1 to " + batchLimit + " users");
+        }
+        List<QueueEntry> entries = queueService.range(from, limit);
+        return ResponseEntity.status(HttpStatus.OK).body(entries);
+    }
+
+    protected ResponseEntity admit(QueueService queueService, int count) {
+        if (count < 1 || count > batchLimit) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("an admission takes 1 to " + batchLimit + " users");
+        }
+        if (queueService.isQueueEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        List<UserStub> admitted = queueService.admit(count);
+        if (admitted.isEmpty()) {
+//            the head of the queue is still being joined or was admitted concurrently
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(admitted.size());
+    }
+}
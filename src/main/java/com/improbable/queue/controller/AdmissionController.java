@@ -0,0 +1,63 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.AdmissionScheduler;
+import com.improbable.queue.service.QueueRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and changes the rate at which a queue is admitted automatically. A rate of 0 leaves admission to
+ * {@code POST /queue/admit}.
+ */
+@RestController
+public class AdmissionController {
+
+    @Autowired
+    private AdmissionScheduler admissionScheduler;
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    @GetMapping("queue/admission")
+    public ResponseEntity rate() {
+        return rate(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @PutMapping("queue/admission")
+    public ResponseEntity setRate(@RequestParam("rate") double rate, @RequestParam(value = "burst", defaultValue = "0") long burst) {
+        return setRate(QueueRegistry.DEFAULT_QUEUE, rate, burst);
+    }
+
+    @GetMapping("queue/{queueName}/admission")
+    public ResponseEntity rate(@PathVariable("queueName") String queueName) {
+        if (queueRegistry.get(queueName) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("unknown queue");
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("rate", admissionScheduler.getRatePerSecond(queueName));
+        body.put("burst", admissionScheduler.getBurst(queueName));
+        return ResponseEntity.status(HttpStatus.OK).body(body);
+    }
+
+    @PutMapping("queue/{queueName}/admission")
+    public ResponseEntity setRate(@PathVariable("queueName") String queueName, @RequestParam("rate") double rate,
+                                  @RequestParam(value = "burst", defaultValue = "0") long burst) {
+        if (rate < 0 || Double.isNaN(rate) || Double.isInfinite(rate) || burst < 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid rate");
+        }
+        if (queueRegistry.get(queueName) == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("unknown queue");
+        }
+        admissionScheduler.setRate(queueName, rate, burst);
+        return rate(queueName);
+    }
+}
@@ -0,0 +1,215 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.QueueBusyException;
+import com.improbable.queue.service.QueueService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Polls of the default queue over plain TCP, for clients that poll too often to pay for HTTP and JSON.
+ * <p>
+ * A request is the 16 bytes of an identifier, most significant half first. The response is 9 bytes: a
+ * status, then the position as a long when the status is {@link #WAITING}, else 0. A client may send any
+ * number of requests without waiting; they are answered in order. Everything is big-endian.
+ * <p>
+ * One selector thread serves every connection with buffers allocated once per connection. The requests
+ * read together from a connection are answered from one {@link QueueService#pollAll} under one read lock. A
+ * connection whose requests fail unexpectedly is closed, leaving the others served.
+ */
+@Component
+public class BinaryPollServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryPollServer.class);
+
+    public static final int REQUEST_SIZE = 16;
+    public static final int RESPONSE_SIZE = 9;
+
+    public static final byte WAITING = 0;
+    public static final byte ADMITTED = 1;
+    public static final byte NOT_FOUND = 2;
+    //    the queue's lock was busy; the client should poll again later
+    public static final byte RETRY = 3;
+
+    //    requests answered per read; bounds the buffers and the batch passed to pollAll
+    private static final int BATCH = 256;
+
+    @Autowired
+    private QueueService queueService;
+
+    @Value("${queue.binary.enabled:false}")
+    private boolean isEnabled;
+
+    @Value("${queue.binary.port:7070}")
+    private int port;
+
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+
+    @PostConstruct
+    private void init() throws IOException {
+        if (!isEnabled) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::serve, "binary-poll");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("binary poll protocol listening on port {}", getLocalPort());
+    }
+
+    @PreDestroy
+    private void destroy() throws IOException, InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        thread.join();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return the port bound, which differs from {@code queue.binary.port} when that is 0, or -1 when off
+     */
+    public int getLocalPort() {
+        return serverChannel == null ? -1 : serverChannel.socket().getLocalPort();
+    }
+
+    private void serve() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        handle(key);
+                    } catch (IOException e) {
+                        //    the client went away mid-exchange
+                        key.channel().close();
+                    } catch (RuntimeException e) {
+                        //    drop the one connection rather than the selector thread serving every other
+                        LOGGER.error("binary poll request failed, closing the connection", e);
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("binary poll selector failed.  error is {}", e.getMessage());
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            SocketChannel channel = serverChannel.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.register(selector, SelectionKey.OP_READ, new Connection());
+            }
+            return;
+        }
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        if (key.isWritable()) {
+            if (!connection.flush(channel)) {
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+        if (key.isReadable()) {
+            if (channel.read(connection.requests) < 0) {
+                channel.close();
+                return;
+            }
+            connection.answer(queueService);
+            if (!connection.flush(channel)) {
+                //    the client is not reading; stop reading its requests until it catches up
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private static final class Connection {
+        final ByteBuffer requests = ByteBuffer.allocateDirect(BATCH * REQUEST_SIZE);
+        final ByteBuffer responses = ByteBuffer.allocateDirect(BATCH * RESPONSE_SIZE);
+        final long[] mostSignificantBits = new long[BATCH];
+        final long[] leastSignificantBits = new long[BATCH];
+        final long[] statuses = new long[BATCH];
+
+        void answer(QueueService queueService) {
+            requests.flip();
+            int count = 0;
+            while (requests.remaining() >= REQUEST_SIZE) {
+                //    any 16 bytes make a well-formed identifier, so there is nothing to validate
+                mostSignificantBits[count] = requests.getLong();
+                leastSignificantBits[count] = requests.getLong();
+                count++;
+            }
+            requests.compact();
+            if (count == 0) {
+                return;
+            }
+            try {
+                queueService.pollAll(mostSignificantBits, leastSignificantBits, count, statuses);
+            } catch (QueueBusyException e) {
+                for (int i = 0; i < count; i++) {
+                    responses.put(RETRY).putLong(0);
+                }
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                long status = statuses[i];
+                if (status == QueueService.NOT_FOUND) {
+                    responses.put(NOT_FOUND).putLong(0);
+                    continue;
+                }
+                if (status == QueueService.ADMITTED) {
+                    responses.put(ADMITTED).putLong(0);
+                } else {
+                    responses.put(WAITING).putLong(status);
+                }
+                queueService.heartbeat(mostSignificantBits[i], leastSignificantBits[i]);
+            }
+        }
+
+        /**
+         * @return whether every response was written
+         */
+        boolean flush(SocketChannel channel) throws IOException {
+            responses.flip();
+            channel.write(responses);
+            boolean isFlushed = !responses.hasRemaining();
+            responses.compact();
+            return isFlushed;
+        }
+    }
+}
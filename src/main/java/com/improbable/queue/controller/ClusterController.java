@@ -0,0 +1,101 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.ClusterService;
+import com.improbable.queue.service.IdentifierService;
+import com.improbable.queue.service.QueueService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The default queue across every node of the cluster: join, poll and leave answer the same on any node.
+ * {@code position}, {@code count-before} and {@code summary} are how nodes ask each other.
+ */
+@RestController
+@RequestMapping("cluster")
+public class ClusterController {
+
+    @Autowired
+    private ClusterService clusterService;
+
+    @Autowired
+    private IdentifierService identifierService;
+
+    @GetMapping("nodes")
+    public ResponseEntity nodes() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("nodeIndex", clusterService.getNodeIndex());
+        body.put("nodes", clusterService.getNodes());
+        return ResponseEntity.status(HttpStatus.OK).body(body);
+    }
+
+    @PostMapping("join")
+    public ResponseEntity join(String username) {
+        if (!clusterService.isEnabled()) {
+            return clusterDisabled();
+        }
+        String identifier = clusterService.join(UserStub.builder().username(username).build());
+        return ResponseEntity.status(HttpStatus.OK).body(identifier);
+    }
+
+    @GetMapping("poll")
+    public ResponseEntity poll(@RequestParam("identifier") String identifier) {
+        if (!clusterService.isEnabled()) {
+            return clusterDisabled();
+        }
+        identifier = IdentifierService.normalizeIdentifier(identifier);
+        if (!identifierService.validateIdentifier(identifier)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid identifier");
+        }
+        long position = clusterService.positionOf(identifier);
+        if (position == QueueService.NOT_FOUND) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (position == QueueService.ADMITTED) {
+            return ResponseEntity.status(HttpStatus.OK).body("JOIN");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(position);
+    }
+
+    @PutMapping("leave")
+    public ResponseEntity leave(@RequestParam("identifier") String identifier) {
+        if (!clusterService.isEnabled()) {
+            return clusterDisabled();
+        }
+        identifier = IdentifierService.normalizeIdentifier(identifier);
+        if (!identifierService.validateIdentifier(identifier)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid identifier");
+        }
+        boolean isSuccessful = clusterService.leave(identifier);
+        return isSuccessful ? ResponseEntity.status(HttpStatus.OK).build() : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+
+    @GetMapping("position")
+    public ResponseEntity position(@RequestParam("identifier") String identifier) {
+        return ResponseEntity.status(HttpStatus.OK).body(clusterService.localPositionOf(identifier));
+    }
+
+    @GetMapping("count-before")
+    public ResponseEntity countBefore(@RequestParam("stamp") long stamp, @RequestParam("node") int node) {
+        return ResponseEntity.status(HttpStatus.OK).body(clusterService.countBefore(stamp, node));
+    }
+
+    @GetMapping("summary")
+    public ResponseEntity summary() {
+        return ResponseEntity.status(HttpStatus.OK).body(clusterService.summary());
+    }
+
+    private static ResponseEntity clusterDisabled() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("queue.cluster.nodes is not set");
+    }
+}
@@ -0,0 +1,152 @@
+package com.improbable.queue.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns requests away before they reach the queue once too many are in flight, so the ones accepted keep
+ * their latency instead of everyone timing out together.
+ * <p>
+ * Every operation has its own limit, and all of them share a total. Polls and joins may not take the last
+ * {@code reserved} slots of the total, which stay free for leaves and admissions: those shrink the queue,
+ * so they are what gets the service out of overload. A refused request gets a 503 with a Retry-After long
+ * enough for the requests in flight to drain at the rate requests have been completing, spread over up to
+ * twice that so refused clients do not all come back in the same second.
+ */
+public class LoadShedder implements HandlerInterceptor {
+
+    enum Operation {
+        POLL(false), JOIN(false), LEAVE(true), ADMIT(true);
+
+        final boolean isShrinking;
+
+        Operation(boolean isShrinking) {
+            this.isShrinking = isShrinking;
+        }
+
+        static Operation of(String path) {
+            if (path.endsWith("/poll") || path.endsWith("/poll/batch")) {
+                return POLL;
+            }
+            if (path.endsWith("/join") || path.endsWith("/join/batch")) {
+                return JOIN;
+            }
+            if (path.endsWith("/leave")) {
+                return LEAVE;
+            }
+            if (path.endsWith("/admit")) {
+                return ADMIT;
+            }
+            return null;
+        }
+    }
+
+    private static final String ACQUIRED = LoadShedder.class.getName() + ".acquired";
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final int maxInFlight;
+    private final int reserved;
+    private final int[] limits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger[] inFlight;
+    private final LongAdder completed = new LongAdder();
+
+    private volatile long windowStart = System.nanoTime();
+    private long completedAtWindowStart;
+    private volatile double completionsPerSecond;
+
+    /**
+     * @param limits the in-flight limit of each {@link Operation}, in declaration order
+     */
+    LoadShedder(int maxInFlight, int reserved, int... limits) {
+        this.maxInFlight = maxInFlight;
+        this.reserved = reserved;
+        this.limits = limits.clone();
+        this.inFlight = new AtomicInteger[Operation.values().length];
+        for (int i = 0; i < inFlight.length; i++) {
+            inFlight[i] = new AtomicInteger();
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Operation operation = Operation.of(request.getRequestURI());
+        if (operation == null) {
+            return true;
+        }
+        if (tryAcquire(operation)) {
+            request.setAttribute(ACQUIRED, operation);
+            return true;
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds()));
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object operation = request.getAttribute(ACQUIRED);
+        if (operation != null) {
+            request.removeAttribute(ACQUIRED);
+            release((Operation) operation);
+        }
+    }
+
+    boolean tryAcquire(Operation operation) {
+        int totalLimit = operation.isShrinking ? maxInFlight : maxInFlight - reserved;
+        if (total.incrementAndGet() > totalLimit) {
+            total.decrementAndGet();
+            return false;
+        }
+        if (inFlight[operation.ordinal()].incrementAndGet() > limits[operation.ordinal()]) {
+            inFlight[operation.ordinal()].decrementAndGet();
+            total.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void release(Operation operation) {
+        inFlight[operation.ordinal()].decrementAndGet();
+        total.decrementAndGet();
+        completed.increment();
+        long now = System.nanoTime();
+        if (now - windowStart >= RATE_WINDOW_NANOS) {
+            measureRate(now);
+        }
+    }
+
+    int inFlight() {
+        return total.get();
+    }
+
+    int retryAfterSeconds() {
+        double rate = measureRate(System.nanoTime());
+        int drainSeconds = rate <= 0 ? 1 : (int) Math.ceil(total.get() / rate);
+        int base = Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, drainSeconds));
+        return base + ThreadLocalRandom.current().nextInt(base);
+    }
+
+    /**
+     * @return completions per second over the last whole window, updated at most once per window
+     */
+    synchronized double measureRate(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            long count = completed.sum();
+            completionsPerSecond = (count - completedAtWindowStart) * (double) RATE_WINDOW_NANOS / elapsed;
+            completedAtWindowStart = count;
+            windowStart = now;
+        }
+        return completionsPerSecond;
+    }
+}
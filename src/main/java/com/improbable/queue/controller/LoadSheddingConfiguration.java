@@ -0,0 +1,42 @@
+package com.improbable.queue.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Puts a {@link LoadShedder} in front of the queue endpoints when {@code queue.shedding.enabled} is set.
+ */
+@Configuration
+public class LoadSheddingConfiguration implements WebMvcConfigurer {
+
+    @Value("${queue.shedding.enabled:false}")
+    private boolean isEnabled;
+
+    @Value("${queue.shedding.max-in-flight:256}")
+    private int maxInFlight;
+
+    @Value("${queue.shedding.reserved:32}")
+    private int reserved;
+
+    @Value("${queue.shedding.max-in-flight.poll:224}")
+    private int pollLimit;
+
+    @Value("${queue.shedding.max-in-flight.join:128}")
+    private int joinLimit;
+
+    @Value("${queue.shedding.max-in-flight.leave:64}")
+    private int leaveLimit;
+
+    @Value("${queue.shedding.max-in-flight.admit:16}")
+    private int admitLimit;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (isEnabled) {
+            registry.addInterceptor(new LoadShedder(maxInFlight, reserved, pollLimit, joinLimit, leaveLimit, admitLimit))
+                    .addPathPatterns("/queue/**", "/cluster/**");
+        }
+    }
+}
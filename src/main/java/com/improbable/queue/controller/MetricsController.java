@@ -0,0 +1,70 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.metrics.LatencyHistogram;
+import com.improbable.queue.service.QueueMetrics;
+import com.improbable.queue.service.QueueRegistry;
+import com.improbable.queue.service.QueueService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metrics of every queue, keyed by queue name. Latencies are in nanoseconds.
+ */
+@RestController
+public class MetricsController {
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    @GetMapping("metrics")
+    public ResponseEntity metrics() {
+        Map<String, Object> queues = new LinkedHashMap<>();
+        for (String name : queueRegistry.names()) {
+            QueueService queueService = queueRegistry.get(name);
+            if (queueService != null) {
+                queues.put(name, toMap(queueService.getMetrics()));
+            }
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(queues);
+    }
+
+    private static Map<String, Object> toMap(QueueMetrics metrics) {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("join", toMap(metrics.getJoin()));
+        latency.put("joinBatch", toMap(metrics.getJoinBatch()));
+        latency.put("position", toMap(metrics.getPosition()));
+        latency.put("pollBatch", toMap(metrics.getPollBatch()));
+        latency.put("remove", toMap(metrics.getRemove()));
+        latency.put("admit", toMap(metrics.getAdmit()));
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("queueLength", metrics.getQueueLength());
+        map.put("segmentCount", metrics.getSegmentCount());
+        map.put("admittedCount", metrics.getAdmittedCount());
+        map.put("readLockFailures", metrics.getReadLockFailures());
+        map.put("writeLockFailures", metrics.getWriteLockFailures());
+        map.put("expiredCount", metrics.getExpiredCount());
+        map.put("compactedSegments", metrics.getCompactedSegments());
+        map.put("duplicateJoins", metrics.getDuplicateJoins());
+        map.put("latency", latency);
+        return map;
+    }
+
+    private static Map<String, Object> toMap(LatencyHistogram histogram) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", histogram.count());
+        map.put("mean", Math.round(histogram.mean()));
+        map.put("p50", histogram.percentile(50));
+        map.put("p90", histogram.percentile(90));
+        map.put("p99", histogram.percentile(99));
+        map.put("p999", histogram.percentile(99.9));
+        map.put("max", histogram.max());
+        return map;
+    }
+}
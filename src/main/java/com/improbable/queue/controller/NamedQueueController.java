@@ -0,0 +1,97 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.QueueRegistry;
+import com.improbable.queue.service.QueueService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+
+@RestController
+public class NamedQueueController extends AbstractQueueController {
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    @GetMapping("queues")
+    public ResponseEntity list() {
+        return ResponseEntity.status(HttpStatus.OK).body(queueRegistry.names());
+    }
+
+    @PutMapping("queues/{queueName}")
+    public ResponseEntity create(@PathVariable("queueName") String queueName) {
+        if (!QueueRegistry.isValidName(queueName)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid queue name");
+        }
+        boolean isCreated = queueRegistry.create(queueName);
+        return isCreated ? ResponseEntity.status(HttpStatus.CREATED).build() : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    @DeleteMapping("queues/{queueName}")
+    public ResponseEntity delete(@PathVariable("queueName") String queueName) {
+        if (QueueRegistry.DEFAULT_QUEUE.equals(queueName)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("the default queue cannot be deleted");
+        }
+        boolean isDeleted = queueRegistry.delete(queueName);
+        return isDeleted ? ResponseEntity.status(HttpStatus.OK).build() : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+
+    @PostMapping("queue/{queueName}/join")
+    public ResponseEntity join(@PathVariable("queueName") String queueName, String username,
+                               @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        QueueService queueService = queueRegistry.get(queueName);
+        return queueService == null ? queueNotFound() : join(queueService, username, idempotencyKey);
+    }
+
+    @PostMapping("queue/{queueName}/join/batch")
+    public ResponseEntity joinBatch(@PathVariable("queueName") String queueName, @RequestBody List<String> usernames) {
+        QueueService queueService = queueRegistry.get(queueName);
+        return queueService == null ? queueNotFound() : joinBatch(queueService, usernames);
+    }
+
+    @GetMapping("queue/{queueName}/poll")
+    public ResponseEntity poll(@PathVariable("queueName") String queueName, @RequestParam("identifier") String identifier) {
+        QueueService queueService = queueRegistry.get(queueName);
+        return queueService == null ? queueNotFound() : poll(queueService, identifier);
+    }
+
+    @PostMapping("queue/{queueName}/poll/batch")
+    public ResponseEntity pollBatch(@PathVariable("queueName") String queueName, @RequestBody List<String> identifiers) {
+        QueueService queueService = queueRegistry.get(queueName);
+        return queueService == null ? queueNotFound() : pollBatch(queueService, identifiers);
+    }
+
+    @PutMapping("queue/{queueName}/leave")
+    public ResponseEntity leave(@PathVariable("queueName") String queueName, @RequestParam("identifier") String identifier) {
+        QueueService queueService = queueRegistry.get(queueName);
+        return queueService == null ? queueNotFound() : leave(queueService, identifier);
+    }
+
+    @GetMapping("queue/{queueName}/range")
+    public ResponseEntity range(@PathVariable("queueName") String queueName, @RequestParam("from") long from,
+                                @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        QueueService queueService = queueRegistry.get(queueName);
+        return queueService == null ? queueNotFound() : range(queueService, from, limit);
+    }
+
+    @PostMapping("queue/{queueName}/admit")
+    public ResponseEntity admit(@PathVariable("queueName") String queueName, @RequestParam(value = "count", defaultValue = "1") int count) {
+        QueueService queueService = queueRegistry.get(queueName);
+        return queueService == null ? queueNotFound() : admit(queueService, count);
+    }
+
+    private static ResponseEntity queueNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("unknown queue");
+    }
+}
@@ -1,80 +1,59 @@
 package com.improbable.queue.controller;
 
-import com.improbable.queue.model.UserStub;
-import com.improbable.queue.service.IdentifierService;
 import com.improbable.queue.service.QueueService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 
 @RestController
 @RequestMapping("queue")
-public class QueueController {
+public class QueueController extends AbstractQueueController {
 
     @Autowired
     private QueueService queueService;
 
-    @Autowired
-    private IdentifierService identifierService;
-
     @PostMapping(value = "join")
-    public ResponseEntity join(String username) {
-        String identifier = queueService.join(UserStub.builder().username(username).build());
-        return ResponseEntity.status(HttpStatus.OK).body(identifier);
+    public ResponseEntity join(String username, @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return join(queueService, username, idempotencyKey);
+    }
+
+    @PostMapping(value = "join/batch")
+    public ResponseEntity joinBatch(@RequestBody List<String> usernames) {
+        return joinBatch(queueService, usernames);
     }
 
     @GetMapping("poll")
     public ResponseEntity poll(@RequestParam("identifier") String identifier) {
-//        validate identifier
-        if (!identifierService.validateIdentifier(identifier)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid identifier");
-        }
-        if (queueService.checkExists(identifier)) {
-            if (queueService.isIdentifierAdmittable(identifier)) {
-                return ResponseEntity.status(HttpStatus.OK).body("JOIN");
-            } else {
-                long position = queueService.getPositionInQueue(identifier);
-                return ResponseEntity.status(HttpStatus.OK).body(position);
-            }
-        } else {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
+        return poll(queueService, identifier);
+    }
 
+    @PostMapping(value = "poll/batch")
+    public ResponseEntity pollBatch(@RequestBody List<String> identifiers) {
+        return pollBatch(queueService, identifiers);
     }
 
     @PutMapping("leave")
     public ResponseEntity leave(@RequestParam("identifier") String identifier) {
-//        validate identifier
-        if (!identifierService.validateIdentifier(identifier)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid identifier");
-        }
-        if (queueService.checkExists(identifier)) {
-            boolean isSuccessful = queueService.removeIdentifier(identifier);
-            return isSuccessful ? ResponseEntity.status(HttpStatus.OK).build() : ResponseEntity.status(HttpStatus.EXPECTATION_FAILED).build();
-        } else {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
+        return leave(queueService, identifier);
+    }
+
+    @GetMapping("range")
+    public ResponseEntity range(@RequestParam("from") long from, @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return range(queueService, from, limit);
     }
 
     @PostMapping(value = "admit")
-    public ResponseEntity admit() {
-        if(queueService.isQueueEmpty()){
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
-        UserStub userStub = queueService.getFirst();
-        boolean isAdmittable = queueService.isIdentifierAdmittable(userStub.getIdentifier());
-        if (isAdmittable) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).build();
-        } else {
-            userStub.setAdmittable(true);
-            return ResponseEntity.status(HttpStatus.OK).build();
-        }
+    public ResponseEntity admit(@RequestParam(value = "count", defaultValue = "1") int count) {
+        return admit(queueService, count);
     }
 }
@@ -0,0 +1,100 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.model.QueueEvent;
+import com.improbable.queue.service.QueueEventService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+@RestController
+@RequestMapping("queue")
+public class QueueEventController {
+
+    @Autowired
+    private QueueEventService queueEventService;
+
+    @Value("${queue.stream.timeout-ms:300000}")
+    private long timeoutMillis;
+
+    /**
+     * Server-sent events carrying the default queue's joins, leaves and admissions for downstream services.
+     * Each "events" event holds a batch in sequence order, with the last sequence as its id, so a reconnecting
+     * client resumes through {@code Last-Event-ID}, or through {@code from} when it keeps its own cursor.
+     * Without either the stream starts at the next event. A "lost" event reports the sequences, {@code from}
+     * inclusive to {@code to} exclusive, the client fell too far behind to read. 404 unless
+     * {@code queue.events.enabled} is set.
+     */
+    @GetMapping("events")
+    public ResponseEntity<SseEmitter> events(@RequestParam(value = "from", required = false) Long from,
+                                             @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        if (!queueEventService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        long next;
+        if (from != null) {
+            next = from;
+        } else if (lastEventId != null) {
+            next = lastEventId + 1;
+        } else {
+            next = queueEventService.lastSequence() + 1;
+        }
+        if (next < 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        EmitterSubscriber subscriber = new EmitterSubscriber(emitter);
+        emitter.onCompletion(() -> queueEventService.unsubscribe(subscriber));
+        emitter.onTimeout(() -> queueEventService.unsubscribe(subscriber));
+        queueEventService.subscribe(next, subscriber);
+        return ResponseEntity.status(HttpStatus.OK).body(emitter);
+    }
+
+    private static class EmitterSubscriber implements QueueEventService.Subscriber {
+        private final SseEmitter emitter;
+
+        private EmitterSubscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public boolean send(List<QueueEvent> events) {
+            String lastSequence = Long.toString(events.get(events.size() - 1).getSequence());
+            return send(SseEmitter.event().name("events").id(lastSequence).data(events));
+        }
+
+        @Override
+        public boolean sendLost(long from, long to) {
+            Map<String, Long> lost = new LinkedHashMap<>();
+            lost.put("from", from);
+            lost.put("to", to);
+            return send(SseEmitter.event().name("lost").data(lost));
+        }
+
+        @Override
+        public void close() {
+            emitter.complete();
+        }
+
+        private boolean send(SseEmitter.SseEventBuilder event) {
+            try {
+                emitter.send(event);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                return false;
+            }
+        }
+    }
+}
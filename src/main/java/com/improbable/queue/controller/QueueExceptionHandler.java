@@ -0,0 +1,25 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.QueueBusyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+@RestControllerAdvice
+public class QueueExceptionHandler {
+
+    /**
+     * A busy lock frees up within milliseconds, so the client is told to come back in a second or two,
+     * chosen at random so clients turned away together do not return together.
+     */
+    @ExceptionHandler(QueueBusyException.class)
+    public ResponseEntity busy(QueueBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(1 + ThreadLocalRandom.current().nextInt(2)))
+                .body(e.getMessage());
+    }
+}
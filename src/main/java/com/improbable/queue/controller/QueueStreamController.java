@@ -0,0 +1,87 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.IdentifierService;
+import com.improbable.queue.service.PositionUpdateService;
+import com.improbable.queue.service.QueueService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+
+
+@RestController
+@RequestMapping("queue")
+public class QueueStreamController {
+
+    @Autowired
+    private QueueService queueService;
+
+    @Autowired
+    private IdentifierService identifierService;
+
+    @Autowired
+    private PositionUpdateService positionUpdateService;
+
+    @Value("${queue.stream.timeout-ms:300000}")
+    private long timeoutMillis;
+
+    /**
+     * Server-sent events replacing repeated polls: a "position" event whenever the position changes and a
+     * final "admitted" event carrying "JOIN".
+     */
+    @GetMapping("stream")
+    public ResponseEntity<SseEmitter> stream(@RequestParam("identifier") String requested) {
+        String identifier = IdentifierService.normalizeIdentifier(requested);
+        if (!identifierService.validateIdentifier(identifier)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (!queueService.checkExists(identifier)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        EmitterSubscriber subscriber = new EmitterSubscriber(emitter);
+        emitter.onCompletion(() -> positionUpdateService.unsubscribe(identifier, subscriber));
+        emitter.onTimeout(() -> positionUpdateService.unsubscribe(identifier, subscriber));
+        positionUpdateService.subscribe(identifier, subscriber);
+        return ResponseEntity.status(HttpStatus.OK).body(emitter);
+    }
+
+    private static class EmitterSubscriber implements PositionUpdateService.Subscriber {
+        private final SseEmitter emitter;
+
+        private EmitterSubscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public boolean sendPosition(long position) {
+            return send(SseEmitter.event().name("position").data(position));
+        }
+
+        @Override
+        public boolean sendAdmitted() {
+            return send(SseEmitter.event().name("admitted").data("JOIN"));
+        }
+
+        @Override
+        public void close() {
+            emitter.complete();
+        }
+
+        private boolean send(SseEmitter.SseEventBuilder event) {
+            try {
+                emitter.send(event);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.improbable.queue.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Binary indexed tree over non-negative counts, growing on demand as higher indexes are written.
+ * Concurrent adds only share a read stamp, so they never wait on each other; they wait only while
+ * the tree doubles its capacity. Sums read concurrently with adds may miss adds still in flight.
+ */
+public class FenwickTree {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final StampedLock resizeLock = new StampedLock();
+    private volatile AtomicLongArray tree;
+
+    public FenwickTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FenwickTree(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1;
+        this.tree = new AtomicLongArray(capacity + 1);
+    }
+
+    public void add(int index, long delta) {
+        if (index + 1 > capacity(tree)) {
+            grow(index + 1);
+        }
+        long stamp = resizeLock.readLock();
+        try {
+            AtomicLongArray current = tree;
+            int capacity = capacity(current);
+            for (int i = index + 1; i <= capacity; i += i & -i) {
+                current.addAndGet(i, delta);
+            }
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the sum of the counts at indexes {@code [0, index)}
+     */
+    public long prefixSum(int index) {
+        AtomicLongArray current = tree;
+        long sum = 0;
+        for (int i = Math.min(index, capacity(current)); i > 0; i -= i & -i) {
+            sum += current.get(i);
+        }
+        return sum;
+    }
+
+    public long rangeSum(int fromIndex, int toIndex) {
+        if (toIndex <= fromIndex) {
+            return 0;
+        }
+        return prefixSum(toIndex) - prefixSum(fromIndex);
+    }
+
+    /**
+     * Seeks by rank in O(log n), walking down the tree instead of searching over prefix sums.
+     *
+     * @return the index holding the unit at {@code rank}, counting from 0 in index order; the capacity when
+     * {@code rank} is not below the total
+     */
+    public int indexOf(long rank) {
+        AtomicLongArray current = tree;
+        int capacity = capacity(current);
+        int index = 0;
+        long remaining = rank;
+        for (int step = capacity; step > 0; step >>= 1) {
+            int next = index + step;
+            if (next <= capacity) {
+                long count = current.get(next);
+                if (count <= remaining) {
+                    index = next;
+                    remaining -= count;
+                }
+            }
+        }
+        return index;
+    }
+
+    public long total() {
+        AtomicLongArray current = tree;
+        return current.get(capacity(current));
+    }
+
+    public void clear() {
+        long stamp = resizeLock.writeLock();
+        try {
+            tree = new AtomicLongArray(tree.length());
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+
+    private void grow(int size) {
+        long stamp = resizeLock.writeLock();
+        try {
+            AtomicLongArray current = tree;
+            int capacity = capacity(current);
+            while (size > capacity) {
+                // the new root covers the whole old range; every other new node covers only empty indexes
+                AtomicLongArray grown = new AtomicLongArray(capacity * 2 + 1);
+                for (int i = 1; i <= capacity; i++) {
+                    grown.set(i, current.get(i));
+                }
+                grown.set(capacity * 2, current.get(capacity));
+                current = grown;
+                capacity *= 2;
+            }
+            tree = current;
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+
+    private static int capacity(AtomicLongArray tree) {
+        return tree.length() - 1;
+    }
+}
@@ -0,0 +1,20 @@
+package com.improbable.queue.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One identifier's answer in a batch poll. {@code position} is only set while the user is waiting.
+ */
+@Data
+@Builder
+public class PollStatus {
+    public static final String ADMITTED = "JOIN";
+    public static final String WAITING = "WAITING";
+    public static final String NOT_FOUND = "NOT_FOUND";
+    public static final String INVALID = "INVALID";
+
+    private String identifier;
+    private String status;
+    private Long position;
+}
@@ -0,0 +1,16 @@
+package com.improbable.queue.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One waiting user as listed by a range scan, at the position the scan found them in.
+ */
+@Data
+@Builder
+public class QueueEntry {
+    private long position;
+    private String identifier;
+    private String username;
+    private long ticket;
+}
@@ -0,0 +1,20 @@
+package com.improbable.queue.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One join, leave or admission as read from the event ring. {@code ticket} is not known for leaves.
+ */
+@Data
+@Builder
+public class QueueEvent {
+    public static final String JOIN = "JOIN";
+    public static final String LEAVE = "LEAVE";
+    public static final String ADMIT = "ADMIT";
+
+    private long sequence;
+    private String type;
+    private String identifier;
+    private Long ticket;
+}
@@ -0,0 +1,44 @@
+package com.improbable.queue.model;
+
+import lombok.Value;
+
+/**
+ * One user's standing in a queue, read in a single consistent lookup. {@code position} is only meaningful
+ * while the user is waiting. {@code epoch} advances with every admission, leave, expiry, clear and restore,
+ * so answers in the same epoch describe the same order of waiting users, and a changed epoch means someone
+ * moved. Joins only add users behind everyone else and leave it unchanged. An answer may already reflect a
+ * leave still finishing on another thread, one epoch early.
+ */
+@Value
+public class QueueStatus {
+
+    public enum State {
+        NOT_FOUND,
+        ADMITTED,
+        WAITING
+    }
+
+    private State state;
+    private long position;
+    private long epoch;
+
+    public static QueueStatus notFound(long epoch) {
+        return new QueueStatus(State.NOT_FOUND, -1, epoch);
+    }
+
+    public static QueueStatus admitted(long epoch) {
+        return new QueueStatus(State.ADMITTED, -1, epoch);
+    }
+
+    public static QueueStatus waiting(long position, long epoch) {
+        return new QueueStatus(State.WAITING, position, epoch);
+    }
+
+    public boolean isFound() {
+        return state != State.NOT_FOUND;
+    }
+
+    public boolean isAdmitted() {
+        return state == State.ADMITTED;
+    }
+}
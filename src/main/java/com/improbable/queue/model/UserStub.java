@@ -9,5 +9,7 @@ public class UserStub {
     private String identifier;
     private String username;
     private boolean isAdmittable;
+    private long ticket;
     private int queueIndex;
+    private int slotIndex;
 }
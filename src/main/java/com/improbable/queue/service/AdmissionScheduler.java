@@ -0,0 +1,130 @@
+package com.improbable.queue.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains queues at a steady rate instead of waiting for {@code POST /queue/admit}. Every
+ * {@code queue.admission.tick-ms} each queue with a rate admits as many users as its token bucket holds, in
+ * one batch under one write lock. A queue whose lock is busy keeps its tokens for the next tick.
+ */
+@Service
+public class AdmissionScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionScheduler.class);
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    @Value("${queue.admission.rate-per-second:0}")
+    private double ratePerSecond;
+
+    @Value("${queue.admission.burst:0}")
+    private long burst;
+
+    @Value("${queue.admission.tick-ms:100}")
+    private long tickMillis;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    private void init() {
+        if (ratePerSecond > 0) {
+            setRate(QueueRegistry.DEFAULT_QUEUE, ratePerSecond, burst);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "queue-admission");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @param ratePerSecond users admitted per second, 0 to stop admitting automatically
+     * @param burst         most users admitted at once after an idle spell, 0 for one second's worth
+     */
+    public void setRate(String queueName, double ratePerSecond, long burst) {
+        if (ratePerSecond < 0 || burst < 0) {
+            throw new IllegalArgumentException("rate and burst must not be negative");
+        }
+        if (ratePerSecond == 0) {
+            buckets.remove(queueName);
+            return;
+        }
+        //    a burst below one tick's worth would cap the rate
+        long effectiveBurst = Math.max(burst == 0 ? (long) Math.ceil(ratePerSecond) : burst,
+                (long) Math.ceil(ratePerSecond * tickMillis / 1000));
+        long now = System.nanoTime();
+        buckets.compute(queueName, (name, bucket) -> {
+            if (bucket == null) {
+                return new TokenBucket(ratePerSecond, effectiveBurst, now);
+            }
+            bucket.update(ratePerSecond, effectiveBurst, now);
+            return bucket;
+        });
+    }
+
+    /**
+     * @return users admitted per second, 0 when the queue is only admitted on request
+     */
+    public double getRatePerSecond(String queueName) {
+        TokenBucket bucket = buckets.get(queueName);
+        return bucket == null ? 0 : bucket.getRatePerSecond();
+    }
+
+    public long getBurst(String queueName) {
+        TokenBucket bucket = buckets.get(queueName);
+        return bucket == null ? 0 : bucket.getBurst();
+    }
+
+    /**
+     * Synchronized so a tick run by hand cannot spend the same tokens as the scheduler's own.
+     */
+    synchronized void tick() {
+        Iterator<Map.Entry<String, TokenBucket>> entries = buckets.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, TokenBucket> entry = entries.next();
+            QueueService queueService = queueRegistry.get(entry.getKey());
+            if (queueService == null) {
+                //    the queue was deleted
+                entries.remove();
+                continue;
+            }
+            TokenBucket bucket = entry.getValue();
+            long available = bucket.available(System.nanoTime());
+            if (available == 0) {
+                continue;
+            }
+            try {
+                int admitted = queueService.admit((int) Math.min(Integer.MAX_VALUE, available)).size();
+                bucket.consume(admitted);
+            } catch (QueueBusyException e) {
+                LOGGER.debug("admission into {} deferred: {}", entry.getKey(), e.getMessage());
+            } catch (RuntimeException e) {
+                //    escaping would cancel the schedule, and with it automatic admission into every queue
+                LOGGER.error("admission into {} failed", entry.getKey(), e);
+                //    a listener can fail after the users were admitted; spend the tokens so the next tick
+                //    does not admit another burst on top of them
+                bucket.consume(available);
+            }
+        }
+    }
+}
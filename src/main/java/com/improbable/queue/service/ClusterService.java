@@ -0,0 +1,355 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The default queue split across the nodes listed in {@code queue.cluster.nodes}, each holding the users
+ * whose identifier hashes to it. Every join stays on the node that took it: identifiers are drawn until one
+ * hashes to that node, which takes a handful of draws for a handful of nodes.
+ * <p>
+ * Nodes order their users by a hybrid logical clock stamp, wall-clock microseconds that never go backwards
+ * and move past any stamp a node is asked about, ties broken by node index. A user's global position is
+ * their position on their own node plus, from every other node, the number of waiting users stamped before
+ * them. Stamps are taken in ticket order, so that number is one binary search and one prefix sum per node.
+ * <p>
+ * So that a poll need not call every other node, each node fetches a {@link StampSummary} from all the others
+ * every {@code queue.cluster.summary-interval-ms}, in parallel. A poll is answered from the summaries when they
+ * are at most {@code queue.cluster.summary-max-age-ms} old and were taken after the user joined; any other node
+ * is asked directly, all of them at once. Positions answered locally are behind by the leaves and admissions
+ * since the summary, and interpolated between its {@code queue.cluster.summary-size} samples.
+ */
+@Service
+public class ClusterService implements QueueListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterService.class);
+
+    @Autowired
+    private QueueService queueService;
+
+    @Autowired
+    private IdentifierService identifierService;
+
+    @Value("${queue.cluster.nodes:}")
+    private String nodeList;
+
+    @Value("${queue.cluster.node-index:0}")
+    private int nodeIndex;
+
+    @Value("${queue.cluster.timeout-ms:1000}")
+    private int timeoutMillis;
+
+    @Value("${queue.cluster.threads:16}")
+    private int threads;
+
+    @Value("${queue.cluster.summary-interval-ms:100}")
+    private long summaryIntervalMillis;
+
+    @Value("${queue.cluster.summary-max-age-ms:1000}")
+    private long summaryMaxAgeMillis;
+
+    @Value("${queue.cluster.summary-size:1024}")
+    private int summarySize;
+
+    private final StampIndex stamps = new StampIndex();
+    private final Object joinOrder = new Object();
+    private List<String> nodes;
+    private RestTemplate restTemplate;
+    private long lastStamp;
+    private AtomicReferenceArray<StampSummary> summaries;
+    private ExecutorService requests;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    private void init() {
+        List<String> parsed = new ArrayList<>();
+        for (String node : nodeList.split(",")) {
+            if (!node.trim().isEmpty()) {
+                parsed.add(node.trim().replaceAll("/+$", ""));
+            }
+        }
+        if (!parsed.isEmpty() && (nodeIndex < 0 || nodeIndex >= parsed.size())) {
+            throw new IllegalArgumentException("queue.cluster.node-index " + nodeIndex + " is not one of " + parsed.size() + " nodes");
+        }
+        nodes = Collections.unmodifiableList(parsed);
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        restTemplate = new RestTemplate(requestFactory);
+        summaries = new AtomicReferenceArray<>(nodes.size());
+        if (nodes.isEmpty()) {
+            return;
+        }
+        queueService.addListener(this);
+        //    a full queue runs the call on the caller, which slows polls rather than failing them
+        requests = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 16), runnable -> {
+            Thread thread = new Thread(runnable, "queue-cluster");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        if (summaryIntervalMillis > 0 && nodes.size() > 1) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "queue-cluster-summaries");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::fetchSummaries, 0, summaryIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (requests != null) {
+            requests.shutdownNow();
+        }
+    }
+
+    @Override
+    public void onAdmit(List<UserStub> admitted) {
+        //    admission goes in ticket order and stops at a join in flight, so nobody below the last one waits
+        stamps.releaseBelow(admitted.get(admitted.size() - 1).getTicket() + 1);
+    }
+
+    public boolean isEnabled() {
+        return !nodes.isEmpty();
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public int getNodeIndex() {
+        return nodeIndex;
+    }
+
+    public int ownerOf(String identifier) {
+        return Math.floorMod(identifier.hashCode(), nodes.size());
+    }
+
+    /**
+     * @return the base URL of the node holding the identifier, or null when that is this node
+     */
+    public String ownerUrl(String identifier) {
+        int owner = ownerOf(identifier);
+        return owner == nodeIndex ? null : nodes.get(owner);
+    }
+
+    /**
+     * Joins the user to this node's shard.
+     */
+    public String join(UserStub userStub) {
+        String identifier;
+        do {
+            identifier = identifierService.generateIdentifier();
+        } while (ownerOf(identifier) != nodeIndex);
+        userStub.setIdentifier(identifier);
+        return queueService.joinAs(userStub, joinOrder, ticket -> {
+            if (ticket >= 0) {
+                stamps.record(ticket, nextStamp());
+            }
+        });
+    }
+
+    /**
+     * @return the global position of the user, {@link QueueService#ADMITTED} or {@link QueueService#NOT_FOUND},
+     * asking the node holding them when that is another node
+     */
+    public long positionOf(String identifier) {
+        int owner = ownerOf(identifier);
+        if (owner == nodeIndex) {
+            return localPositionOf(identifier);
+        }
+        try {
+            Long position = restTemplate.getForObject(nodes.get(owner) + "/cluster/position?identifier={identifier}",
+                    Long.class, identifier);
+            return position == null ? QueueService.NOT_FOUND : position;
+        } catch (RestClientException e) {
+            throw new QueueBusyException(e);
+        }
+    }
+
+    /**
+     * Like {@link #positionOf} for a user of this node's shard. A found user's poll counts as a heartbeat.
+     */
+    public long localPositionOf(String identifier) {
+        long ticket = queueService.ticketOf(identifier);
+        if (ticket < 0) {
+            return QueueService.NOT_FOUND;
+        }
+        queueService.heartbeat(identifier);
+        if (queueService.isIdentifierAdmittable(identifier)) {
+            return QueueService.ADMITTED;
+        }
+        long stamp = stamps.stampOf(ticket);
+        long position = queueService.waitingBefore(ticket);
+        long oldestMillis = System.currentTimeMillis() - summaryMaxAgeMillis;
+        List<Integer> unsummarized = new ArrayList<>();
+        for (int node = 0; node < nodes.size(); node++) {
+            if (node == nodeIndex) {
+                continue;
+            }
+            StampSummary summary = summaries.get(node);
+            if (summary != null && summary.covers(stamp, oldestMillis)) {
+                //    as countBefore on that node: ties go to the lower node index
+                position += summary.countBefore(stamp, node < nodeIndex);
+            } else {
+                unsummarized.add(node);
+            }
+        }
+        return position + remoteCountBefore(unsummarized, stamp);
+    }
+
+    /**
+     * @return whether the user was found and removed, on whichever node holds them
+     */
+    public boolean leave(String identifier) {
+        int owner = ownerOf(identifier);
+        if (owner == nodeIndex) {
+            return queueService.removeIdentifier(identifier);
+        }
+        try {
+            restTemplate.put(nodes.get(owner) + "/cluster/leave?identifier={identifier}", null, identifier);
+            return true;
+        } catch (HttpClientErrorException e) {
+            //    only a 404 says the user is not there; a shed or rejected call says nothing either way
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                return false;
+            }
+            throw new QueueBusyException(e);
+        } catch (RestClientException e) {
+            throw new QueueBusyException(e);
+        }
+    }
+
+    /**
+     * @return how many users waiting on this node come before a user of node {@code node} stamped
+     * {@code stamp}
+     */
+    public long countBefore(long stamp, int node) {
+        observe(stamp);
+        long ticket = stamps.firstTicketAfter(stamp, nodeIndex < node);
+        return queueService.waitingBefore(ticket);
+    }
+
+    /**
+     * @return this node's clock followed by samples of its waiting users' stamps, each with how many of them
+     * wait up to and including it; see {@link StampSummary}
+     */
+    public long[] summary() {
+        long clock;
+        long first;
+        long end;
+        synchronized (joinOrder) {
+            //    every join stamped up to the clock has been recorded below end
+            clock = currentStamp();
+            end = stamps.endTicket();
+            first = stamps.firstUnreleased();
+        }
+        long span = end - first;
+        int samples = (int) Math.min(span, summarySize);
+        long[] sampledStamps = new long[samples];
+        long[] counts = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            //    spread evenly, the last sample on the last ticket
+            long ticket = first + (span * (i + 1) + samples - 1) / samples - 1;
+            sampledStamps[i] = stamps.stampOf(ticket);
+            counts[i] = queueService.waitingBefore(ticket + 1);
+        }
+        return StampSummary.encode(clock, sampledStamps, counts, samples);
+    }
+
+    private void fetchSummaries() {
+        for (int node = 0; node < nodes.size(); node++) {
+            if (node == nodeIndex) {
+                continue;
+            }
+            int from = node;
+            requests.execute(() -> {
+                try {
+                    long[] encoded = restTemplate.getForObject(nodes.get(from) + "/cluster/summary", long[].class);
+                    if (encoded != null && encoded.length > 0) {
+                        observe(encoded[0]);
+                        summaries.set(from, new StampSummary(encoded, System.currentTimeMillis()));
+                    }
+                } catch (RuntimeException e) {
+                    //    the summary held ages out, and polls ask the node directly meanwhile
+                    LOGGER.debug("no summary from {}.  error is {}", nodes.get(from), e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Asks every node in {@code remote} at once, the first one on this thread.
+     */
+    private long remoteCountBefore(List<Integer> remote, long stamp) {
+        if (remote.isEmpty()) {
+            return 0;
+        }
+        List<Future<Long>> asked = new ArrayList<>(remote.size() - 1);
+        for (int node : remote.subList(1, remote.size())) {
+            asked.add(requests.submit(() -> remoteCountBefore(node, stamp)));
+        }
+        long count = remoteCountBefore(remote.get(0), stamp);
+        for (Future<Long> answer : asked) {
+            try {
+                count += answer.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueueBusyException(e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof QueueBusyException ? (QueueBusyException) e.getCause() : new QueueBusyException(e.getCause());
+            }
+        }
+        return count;
+    }
+
+    private long remoteCountBefore(int node, long stamp) {
+        try {
+            Long count = restTemplate.getForObject(nodes.get(node) + "/cluster/count-before?stamp={stamp}&node={node}",
+                    Long.class, stamp, nodeIndex);
+            return count == null ? 0 : count;
+        } catch (RestClientException e) {
+            throw new QueueBusyException(e);
+        }
+    }
+
+    private synchronized long nextStamp() {
+        lastStamp = Math.max(lastStamp + 1, System.currentTimeMillis() * 1000);
+        return lastStamp;
+    }
+
+    private synchronized long currentStamp() {
+        return lastStamp;
+    }
+
+    private synchronized void observe(long stamp) {
+        lastStamp = Math.max(lastStamp, stamp);
+    }
+}
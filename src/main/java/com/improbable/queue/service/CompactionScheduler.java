@@ -0,0 +1,74 @@
+package com.improbable.queue.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reclaims the slots of users who left. Every {@code queue.compaction.interval-ms} each queue compacts the
+ * segments in which at least {@code queue.compaction.threshold} of the slots were left, a bounded number per
+ * write lock hold so admissions never wait long behind it. A queue whose lock is busy is tried again next time.
+ */
+@Service
+public class CompactionScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactionScheduler.class);
+
+    private static final int MAX_SEGMENTS_PER_LOCK = 16;
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    @Value("${queue.compaction.threshold:0.5}")
+    private double threshold;
+
+    @Value("${queue.compaction.interval-ms:1000}")
+    private long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    private void init() {
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("queue.compaction.threshold must be in (0, 1]");
+        }
+        if (intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "queue-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void tick() {
+        for (String name : queueRegistry.names()) {
+            QueueService queueService = queueRegistry.get(name);
+            try {
+                //    null once the queue was deleted meanwhile
+                while (queueService != null && queueService.compact(threshold, MAX_SEGMENTS_PER_LOCK) == MAX_SEGMENTS_PER_LOCK) {
+                    Thread.yield();
+                }
+            } catch (RuntimeException e) {
+                //    escaping would cancel the schedule, and with it compaction of every queue
+                LOGGER.error("compaction of {} failed", name, e);
+            }
+        }
+    }
+}
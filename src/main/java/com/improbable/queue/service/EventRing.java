@@ -0,0 +1,98 @@
+package com.improbable.queue.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring of queue events numbered by a sequence, written by one thread at a time and read by any
+ * number of readers that each keep their own cursor. Nothing is allocated per event: every entry is four
+ * longs in one pre-allocated array, overwritten once the ring wraps.
+ * <p>
+ * The writer claims a sequence before overwriting its entry and publishes it after. A reader copies entries
+ * up to the published cursor and then checks the claim: entries the writer may have started overwriting
+ * meanwhile are dropped, and the reader learns they were lost instead of seeing them torn.
+ */
+class EventRing {
+
+    static final byte JOIN = 1;
+    static final byte LEAVE = 2;
+    static final byte ADMIT = 3;
+
+    private static final int ENTRY_SIZE = 4;
+
+    interface EventVisitor {
+        void visit(long sequence, byte type, long ticket, long mostSignificantBits, long leastSignificantBits);
+    }
+
+    private final int capacity;
+    private final int mask;
+    //    per entry: type, ticket, identifier's most and least significant bits
+    private final AtomicLongArray entries;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong published = new AtomicLong(-1);
+
+    EventRing(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.entries = new AtomicLongArray(this.capacity * ENTRY_SIZE);
+    }
+
+    /**
+     * Appends one event. Callers must not publish concurrently; see {@link QueueEventService}.
+     *
+     * @return the event's sequence
+     */
+    long publish(byte type, long ticket, long mostSignificantBits, long leastSignificantBits) {
+        long sequence = published.get() + 1;
+        //    claim before overwriting, so a reader that copied the old entry can tell it may be torn
+        claimed.set(sequence);
+        int offset = (int) (sequence & mask) * ENTRY_SIZE;
+        entries.lazySet(offset, type);
+        entries.lazySet(offset + 1, ticket);
+        entries.lazySet(offset + 2, mostSignificantBits);
+        entries.lazySet(offset + 3, leastSignificantBits);
+        published.lazySet(sequence);
+        return sequence;
+    }
+
+    /**
+     * Visits up to {@code limit} events in sequence order, starting at {@code from} or, when the ring has
+     * already overwritten that, at the oldest event still held.
+     *
+     * @return the sequence to read from next; the events between {@code from} and the first one visited were lost
+     */
+    long read(long from, int limit, EventVisitor visitor) {
+        long last = published.get();
+        long first = Math.max(from, Math.max(0, last - capacity + 1));
+        long end = Math.min(last + 1, first + limit);
+        if (end <= first) {
+            return Math.max(from, first);
+        }
+        int count = (int) (end - first);
+        long[] copy = new long[count * ENTRY_SIZE];
+        for (int i = 0; i < count; i++) {
+            int offset = (int) ((first + i) & mask) * ENTRY_SIZE;
+            for (int j = 0; j < ENTRY_SIZE; j++) {
+                copy[i * ENTRY_SIZE + j] = entries.get(offset + j);
+            }
+        }
+        //    anything the writer has claimed since may have overwritten the oldest entries copied
+        long valid = Math.max(first, claimed.get() - capacity + 1);
+        for (long sequence = valid; sequence < end; sequence++) {
+            int i = (int) (sequence - first) * ENTRY_SIZE;
+            visitor.visit(sequence, (byte) copy[i], copy[i + 1], copy[i + 2], copy[i + 3]);
+        }
+        return end;
+    }
+
+    /**
+     * @return the sequence of the last event published, or -1 before the first
+     */
+    long lastSequence() {
+        return published.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,142 @@
+package com.improbable.queue.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel expiring users who have not been heard from for {@code ttlMillis}.
+ * <p>
+ * The TTL is split into {@link #TICKS_PER_TTL} ticks and each user sits in the slot of the tick their
+ * deadline falls in. A heartbeat only moves the deadline forward; the user stays where they are until their
+ * old slot comes round, and is then either expired or dropped into the slot of the new deadline. So a
+ * heartbeat is a map lookup and a volatile write, and each tick looks only at the users due in it.
+ * Users are expired late by at most one tick.
+ */
+class HeartbeatWheel {
+
+    static final int TICKS_PER_TTL = 64;
+    //    more slots than ticks in a TTL, so a slot only ever holds users due in the tick being drained or later
+    private static final int SLOTS = 2 * TICKS_PER_TTL;
+    private static final int MASK = SLOTS - 1;
+
+    private static final ScheduledExecutorService EXPIRER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "queue-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long tickNanos;
+    private final Consumer<List<String>> expire;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry>[] slots;
+    private final ScheduledFuture<?> expiry;
+
+    private long nextTick;
+
+    private static final class Entry {
+        final String identifier;
+        volatile long deadline;
+
+        Entry(String identifier, long deadline) {
+            this.identifier = identifier;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * @param expire called on the expiry thread with every user whose TTL ran out in one tick
+     */
+    @SuppressWarnings("unchecked")
+    HeartbeatWheel(long ttlMillis, Consumer<List<String>> expire) {
+        this.tickNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(ttlMillis) / TICKS_PER_TTL);
+        this.expire = expire;
+        this.slots = new Queue[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.nextTick = tickOf(System.nanoTime());
+        this.expiry = EXPIRER.scheduleWithFixedDelay(() -> expire(System.nanoTime()), tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void touch(String identifier) {
+        touch(identifier, System.nanoTime());
+    }
+
+    void touch(String identifier, long now) {
+        //    one extra tick, as the current one is already partly over
+        long deadline = tickOf(now) + TICKS_PER_TTL + 1;
+        Entry entry = entries.get(identifier);
+        if (entry == null) {
+            entry = new Entry(identifier, deadline);
+            Entry previous = entries.putIfAbsent(identifier, entry);
+            if (previous == null) {
+                slots[(int) (deadline & MASK)].add(entry);
+                return;
+            }
+            entry = previous;
+        }
+        if (entry.deadline < deadline) {
+            entry.deadline = deadline;
+        }
+    }
+
+    void forget(String identifier) {
+        //    the entry is skipped when its slot comes round
+        entries.remove(identifier);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void close() {
+        expiry.cancel(false);
+        entries.clear();
+    }
+
+    synchronized void expire(long now) {
+        long currentTick = tickOf(now);
+        List<String> expired = new ArrayList<>();
+        List<Entry> due = new ArrayList<>();
+        for (; nextTick <= currentTick; nextTick++) {
+            Queue<Entry> slot = slots[(int) (nextTick & MASK)];
+            for (Entry entry = slot.poll(); entry != null; entry = slot.poll()) {
+                due.add(entry);
+            }
+            for (Entry entry : due) {
+                if (entries.get(entry.identifier) != entry) {
+                    continue;
+                }
+                long deadline = entry.deadline;
+                if (deadline <= nextTick) {
+                    if (entries.remove(entry.identifier, entry)) {
+                        expired.add(entry.identifier);
+                    }
+                } else {
+                    slots[(int) (deadline & MASK)].add(entry);
+                }
+            }
+            due.clear();
+        }
+        if (!expired.isEmpty()) {
+            expire.accept(expired);
+        }
+    }
+
+    private long tickOf(long nanos) {
+        return Math.floorDiv(nanos, tickNanos);
+    }
+}
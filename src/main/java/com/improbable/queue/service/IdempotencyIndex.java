@@ -0,0 +1,48 @@
+package com.improbable.queue.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Identifiers of the users who joined under an idempotency key, so a retried join finds the user its first
+ * attempt added instead of adding another. A key is held from the join until that user leaves.
+ */
+class IdempotencyIndex {
+
+    private final Map<String, String> identifiersByKey = new ConcurrentHashMap<>();
+    //    only keyed users are here, so unkeyed joins cost nothing
+    private final Map<String, String> keysByIdentifier = new ConcurrentHashMap<>();
+
+    /**
+     * @param join adds the user and returns their identifier; runs at most once per key, while other joins under
+     *             the same key wait
+     * @return the identifier already held by the key, or the one {@code join} returned
+     */
+    String joinOnce(String key, Supplier<String> join) {
+        return identifiersByKey.computeIfAbsent(key, absent -> {
+            String identifier = join.get();
+            keysByIdentifier.put(identifier, key);
+            return identifier;
+        });
+    }
+
+    /**
+     * Releases the key of a user who left, if they joined with one.
+     */
+    void forget(String identifier) {
+        String key = keysByIdentifier.remove(identifier);
+        if (key != null) {
+            identifiersByKey.remove(key, identifier);
+        }
+    }
+
+    void clear() {
+        identifiersByKey.clear();
+        keysByIdentifier.clear();
+    }
+
+    int size() {
+        return identifiersByKey.size();
+    }
+}
@@ -0,0 +1,9 @@
+package com.improbable.queue.service;
+
+/**
+ * Source of unguessable queue identifiers in canonical {@code 8-4-4-4-12} UUID form.
+ */
+interface IdentifierGenerator {
+
+    String generate();
+}
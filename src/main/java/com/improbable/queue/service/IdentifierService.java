@@ -2,26 +2,50 @@ package com.improbable.queue.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import java.util.Locale;
 
 @Service
 public class IdentifierService {
     private static final Logger LOGGER = LoggerFactory.getLogger(IdentifierService.class);
 
+    @Value("${queue.identifier.generator:random}")
+    private String generatorType;
+
+    private IdentifierGenerator generator;
+
+    @PostConstruct
+    private void init() {
+        if ("random".equals(generatorType)) {
+            generator = new RandomIdentifierGenerator();
+        } else if ("time-ordered".equals(generatorType)) {
+            generator = new TimeOrderedIdentifierGenerator();
+        } else {
+            throw new IllegalArgumentException("unknown queue.identifier.generator " + generatorType);
+        }
+    }
+
     public String generateIdentifier() {
-        return UUID.randomUUID().toString();
+        return generator.generate();
+    }
+
+    /**
+     * The form the queues keep identifiers in: clients may send hex digits in either case, as
+     * {@link java.util.UUID#fromString} accepted, but only lowercase is canonical.
+     */
+    public static String normalizeIdentifier(String identifier) {
+        return identifier == null ? null : identifier.toLowerCase(Locale.ROOT);
     }
 
     public boolean validateIdentifier(String identifier) {
-        try {
-            UUID.fromString(identifier);
+//        checked character by character: bad input is expected from bots and must stay cheap
+        if (UuidCodec.isCanonical(identifier)) {
             return true;
-        } catch (Exception e) {
-            LOGGER.error("identifier {} is invalid.  error is {}", identifier, e.getMessage());
-            return false;
         }
+        LOGGER.debug("identifier {} is invalid", identifier);
+        return false;
     }
 }
@@ -0,0 +1,138 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rebuilds the queue from the newest complete journal generation: its newest {@link QueueSnapshot} plus the
+ * journal written after it. Every start writes a snapshot before it journals anything, so a generation
+ * without one is a start that failed first, and the generation before it is still whole. Joins may reach the journal
+ * slightly out of ticket order, so they are sorted by ticket before being restored; an admission record
+ * means everyone with a ticket up to the one it carries was admitted.
+ */
+class JournalRecovery implements QueueJournal.RecordHandler, TicketIndex.Keys {
+
+    private long[] tickets = new long[1024];
+    private long[] mostSignificantBits = new long[1024];
+    private long[] leastSignificantBits = new long[1024];
+    private boolean[] admitted = new boolean[1024];
+    private boolean[] left = new boolean[1024];
+    private String[] usernames = new String[1024];
+    private int joins;
+    private long lastAdmittedTicket = -1;
+    //    maps identifiers to their position in the arrays above
+    private final TicketIndex index = new TicketIndex(this);
+
+    private List<UserStub> users;
+    private int admittedCount;
+
+    /**
+     * @return the recovered state, or null when the directory holds no complete generation
+     */
+    static JournalRecovery recover(Path directory) throws IOException {
+        for (long generation : QueueJournal.generations(directory)) {
+            Path snapshot = QueueSnapshot.newest(directory, generation);
+            if (snapshot != null) {
+                JournalRecovery recovery = new JournalRecovery();
+                QueueJournal.replay(directory, generation, QueueSnapshot.read(snapshot, recovery), recovery);
+                recovery.build();
+                return recovery;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Users still in the queue or admitted but not yet left, in queue order.
+     */
+    List<UserStub> users() {
+        return users;
+    }
+
+    /**
+     * How many users at the front of {@link #users()} had been admitted.
+     */
+    int admittedCount() {
+        return admittedCount;
+    }
+
+    @Override
+    public void onJoin(long ticket, long mostSignificantBits, long leastSignificantBits, boolean admitted, String username) {
+        //    the journal just after a snapshot's position may repeat joins the snapshot already holds
+        if (index.get(mostSignificantBits, leastSignificantBits) >= 0) {
+            return;
+        }
+        if (joins == tickets.length) {
+            int capacity = joins * 2;
+            this.tickets = Arrays.copyOf(tickets, capacity);
+            this.mostSignificantBits = Arrays.copyOf(this.mostSignificantBits, capacity);
+            this.leastSignificantBits = Arrays.copyOf(this.leastSignificantBits, capacity);
+            this.admitted = Arrays.copyOf(this.admitted, capacity);
+            this.left = Arrays.copyOf(left, capacity);
+            this.usernames = Arrays.copyOf(usernames, capacity);
+        }
+        tickets[joins] = ticket;
+        this.mostSignificantBits[joins] = mostSignificantBits;
+        this.leastSignificantBits[joins] = leastSignificantBits;
+        this.admitted[joins] = admitted;
+        usernames[joins] = username;
+        index.put(mostSignificantBits, leastSignificantBits, joins);
+        joins++;
+    }
+
+    @Override
+    public void onLeave(long mostSignificantBits, long leastSignificantBits) {
+        long join = index.remove(mostSignificantBits, leastSignificantBits);
+        if (join >= 0) {
+            left[(int) join] = true;
+        }
+    }
+
+    @Override
+    public void onAdmit(long lastTicket) {
+        lastAdmittedTicket = Math.max(lastAdmittedTicket, lastTicket);
+    }
+
+    @Override
+    public boolean matches(long join, long mostSignificantBits, long leastSignificantBits) {
+        return this.leastSignificantBits[(int) join] == leastSignificantBits && this.mostSignificantBits[(int) join] == mostSignificantBits;
+    }
+
+    @Override
+    public long mostSignificantBits(long join) {
+        return mostSignificantBits[(int) join];
+    }
+
+    @Override
+    public long leastSignificantBits(long join) {
+        return leastSignificantBits[(int) join];
+    }
+
+    private void build() {
+        //    tickets stay far below 2^31 within one generation, so ticket and position pack into one sortable long
+        long[] order = new long[joins];
+        for (int i = 0; i < joins; i++) {
+            order[i] = tickets[i] << 32 | i;
+        }
+        Arrays.sort(order);
+        users = new ArrayList<>(index.size());
+        for (long packed : order) {
+            int join = (int) packed;
+            if (!left[join]) {
+                users.add(UserStub.builder()
+                        .identifier(UuidCodec.format(mostSignificantBits[join], leastSignificantBits[join]))
+                        .username(usernames[join])
+                        .isAdmittable(admitted[join])
+                        .build());
+                if (tickets[join] <= lastAdmittedTicket) {
+                    admittedCount++;
+                }
+            }
+        }
+    }
+}
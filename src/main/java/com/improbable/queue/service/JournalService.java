@@ -0,0 +1,172 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the default queue survive restarts. Every join, leave and admission is appended to a
+ * {@link QueueJournal}; at startup the newest complete generation is replayed into the queue, written out
+ * again as the {@link QueueSnapshot} a fresh generation starts from, and older generations are deleted.
+ * While running, a snapshot is taken every {@code queue.journal.snapshot-interval-ms}, after which the
+ * journal files it covers are deleted, so startup never replays more than one interval of history.
+ * <p>
+ * With {@code queue.journal.sync} a join only returns once its record is on disk. Leaves and admissions never
+ * wait for the disk, as admissions hold the queue's write lock and leaves share its read lock with polls; the
+ * next group commit forces them. Concurrent leaves are ordered by the journal's own appends.
+ */
+@Service
+public class JournalService implements QueueListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalService.class);
+
+    @Autowired
+    private QueueService queueService;
+
+    @Value("${queue.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${queue.journal.directory:journal}")
+    private String directory;
+
+    @Value("${queue.journal.sync:true}")
+    private boolean sync;
+
+    @Value("${queue.journal.file-size-mb:64}")
+    private int fileSizeMegabytes;
+
+    @Value("${queue.journal.flush-interval-ms:10}")
+    private long flushIntervalMillis;
+
+    @Value("${queue.journal.snapshot-interval-ms:60000}")
+    private long snapshotIntervalMillis;
+
+    private Path path;
+    private QueueJournal journal;
+    private ScheduledExecutorService scheduler;
+    //    the ticket of the last user admitted, written before the admission reaches the journal
+    private volatile long lastAdmittedTicket = -1;
+    private long lastSnapshotPosition;
+
+    @PostConstruct
+    private void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        path = Paths.get(directory);
+        JournalRecovery recovery = JournalRecovery.recover(path);
+        List<Long> generations = QueueJournal.generations(path);
+        long generation = generations.isEmpty() ? 1 : generations.get(0) + 1;
+        journal = new QueueJournal(path, generation, fileSizeMegabytes << 20, flushIntervalMillis);
+
+        List<UserStub> users = recovery == null ? Collections.emptyList() : recovery.users();
+        int admittedCount = recovery == null ? 0 : recovery.admittedCount();
+        queueService.restore(users, admittedCount);
+        //    restored users are ticketed from zero, so the admitted ones hold the lowest tickets
+        lastAdmittedTicket = admittedCount - 1;
+        snapshot();
+        QueueJournal.deleteOtherGenerations(path, generation);
+
+        queueService.addListener(this);
+        LOGGER.info("recovered {} users from the journal in {} ms", users.size(), System.currentTimeMillis() - start);
+
+        if (snapshotIntervalMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "queue-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::snapshotIfChanged, snapshotIntervalMillis, snapshotIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (journal != null) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+            queueService.removeListener(this);
+            journal.close();
+        }
+    }
+
+    @Override
+    public void onJoin(UserStub userStub) {
+        long position = appendJoin(userStub);
+        if (sync) {
+            journal.awaitDurable(position);
+        }
+    }
+
+    @Override
+    public void onJoinAll(List<UserStub> joined) {
+        long position = 0;
+        for (UserStub userStub : joined) {
+            position = appendJoin(userStub);
+        }
+        //    one wait covers the whole batch: the journal forces everything up to a position at once
+        if (sync && !joined.isEmpty()) {
+            journal.awaitDurable(position);
+        }
+    }
+
+    @Override
+    public void onLeave(String identifier) {
+        journal.appendLeave(UuidCodec.mostSignificantBits(identifier), UuidCodec.leastSignificantBits(identifier));
+    }
+
+    @Override
+    public void onAdmit(List<UserStub> admitted) {
+        long ticket = admitted.get(admitted.size() - 1).getTicket();
+        lastAdmittedTicket = ticket;
+        journal.appendAdmit(ticket);
+    }
+
+    /**
+     * Writes a snapshot of the queue as of the journal's current position, then deletes the older
+     * snapshots and the journal files the new one covers.
+     */
+    synchronized void snapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        //    read the position first: every record before it has already been applied to the queue
+        long position = journal.position();
+        long count = QueueSnapshot.write(path, journal.generation(), position, lastAdmittedTicket, queueService::forEachUser);
+        QueueSnapshot.deleteOthers(path, path.resolve(QueueSnapshot.fileName(journal.generation(), position)));
+        journal.deleteFilesBefore(position);
+        lastSnapshotPosition = position;
+        LOGGER.info("wrote a snapshot of {} users in {} ms", count, System.currentTimeMillis() - start);
+    }
+
+    private synchronized void snapshotIfChanged() {
+        if (journal.position() == lastSnapshotPosition) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("failed to write a queue snapshot", e);
+        }
+    }
+
+    private long appendJoin(UserStub userStub) {
+        String identifier = userStub.getIdentifier();
+        return journal.appendJoin(userStub.getTicket(), UuidCodec.mostSignificantBits(identifier),
+                UuidCodec.leastSignificantBits(identifier), userStub.isAdmittable(), userStub.getUsername());
+    }
+}
@@ -0,0 +1,188 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every user as a {@link UserStub}, looked up by identifier through a {@link ConcurrentHashMap}.
+ */
+class ObjectQueueStore implements QueueStore {
+
+    private final SegmentedQueue queue;
+    private final Map<String, UserStub> users = new ConcurrentHashMap<>();
+
+    ObjectQueueStore(int segmentSize) {
+        this.queue = new SegmentedQueue(segmentSize);
+    }
+
+    @Override
+    public void add(UserStub userStub) {
+        queue.add(userStub);
+        users.put(userStub.getIdentifier(), userStub);
+    }
+
+    @Override
+    public void addAll(List<UserStub> userStubs) {
+        queue.addAll(userStubs);
+        for (UserStub userStub : userStubs) {
+            users.put(userStub.getIdentifier(), userStub);
+        }
+    }
+
+    @Override
+    public boolean contains(String identifier) {
+        return users.containsKey(identifier);
+    }
+
+    @Override
+    public boolean isAdmitted(String identifier) {
+        UserStub userStub = users.get(identifier);
+        return userStub != null && userStub.isAdmittable();
+    }
+
+    @Override
+    public long ticketOf(String identifier) {
+        UserStub userStub = identifier == null ? null : users.get(identifier);
+        return userStub == null ? -1 : userStub.getTicket();
+    }
+
+    @Override
+    public long waitingBefore(long ticket) {
+        return queue.waitingBefore(ticket);
+    }
+
+    @Override
+    public long positionOf(String identifier) {
+        UserStub userStub = users.get(identifier);
+        return userStub == null ? -1 : queue.positionOf(userStub);
+    }
+
+    @Override
+    public void statusOf(List<String> identifiers, long[] statuses) {
+        UserStub[] waiting = new UserStub[identifiers.size()];
+        //    segment index in the high half, request index in the low half, so sorting groups by segment
+        long[] bySegment = new long[identifiers.size()];
+        int waitingCount = 0;
+        for (int i = 0; i < identifiers.size(); i++) {
+            String identifier = identifiers.get(i);
+            UserStub userStub = identifier == null ? null : users.get(identifier);
+            if (userStub == null) {
+                statuses[i] = UNKNOWN;
+            } else if (userStub.isAdmittable()) {
+                statuses[i] = ADMITTED;
+            } else {
+                waiting[i] = userStub;
+                bySegment[waitingCount++] = (long) userStub.getQueueIndex() << 32 | i;
+            }
+        }
+        Arrays.sort(bySegment, 0, waitingCount);
+        int queueIndex = -1;
+        long usersInSegmentsBefore = 0;
+        for (int k = 0; k < waitingCount; k++) {
+            UserStub userStub = waiting[(int) bySegment[k]];
+            if (userStub.getQueueIndex() != queueIndex) {
+                queueIndex = userStub.getQueueIndex();
+                usersInSegmentsBefore = queue.usersInSegmentsBefore(queueIndex);
+            }
+            statuses[(int) bySegment[k]] = usersInSegmentsBefore + queue.usersAheadInSegment(userStub);
+        }
+    }
+
+    @Override
+    public void statusOf(long[] mostSignificantBits, long[] leastSignificantBits, int count, long[] statuses) {
+        for (int i = 0; i < count; i++) {
+            statuses[i] = statusOf(UuidCodec.format(mostSignificantBits[i], leastSignificantBits[i]), null);
+        }
+    }
+
+    @Override
+    public long statusOf(String identifier, PositionHint hint) {
+        UserStub userStub = identifier == null ? null : users.get(identifier);
+        if (userStub == null) {
+            return UNKNOWN;
+        }
+        if (userStub.isAdmittable()) {
+            return ADMITTED;
+        }
+        long position = hint == null ? -1 : hint.positionOf(userStub.getTicket());
+        return position >= 0 ? position : queue.positionOf(userStub);
+    }
+
+    @Override
+    public boolean remove(String identifier) {
+        UserStub userStub = users.remove(identifier);
+        if (userStub == null) {
+            return false;
+        }
+        queue.remove(userStub);
+        return true;
+    }
+
+    @Override
+    public List<UserStub> admit(int count) {
+        List<UserStub> admitted = queue.poll(count);
+        for (UserStub userStub : admitted) {
+            userStub.setAdmittable(true);
+        }
+        return admitted;
+    }
+
+    @Override
+    public UserStub peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public long size() {
+        return queue.size();
+    }
+
+    @Override
+    public long admittedCount() {
+        //    known users are either waiting or admitted; clamp the race between the two counts
+        return Math.max(0, users.size() - queue.size());
+    }
+
+    @Override
+    public int segmentCount() {
+        return queue.segmentCount();
+    }
+
+    @Override
+    public int compact(double threshold, int maxSegments) {
+        return queue.compact(threshold, maxSegments);
+    }
+
+    @Override
+    public void forEach(UserVisitor visitor) {
+        for (UserStub userStub : users.values()) {
+            String identifier = userStub.getIdentifier();
+            visitor.visit(userStub.getTicket(), UuidCodec.mostSignificantBits(identifier), UuidCodec.leastSignificantBits(identifier),
+                    userStub.isAdmittable(), userStub.getUsername());
+        }
+    }
+
+    @Override
+    public void forEachWaiting(TicketVisitor visitor) {
+        queue.forEach(visitor);
+    }
+
+    @Override
+    public void forEachWaitingFrom(long position, int limit, UserVisitor visitor) {
+        queue.forEachFrom(position, limit, userStub -> {
+            String identifier = userStub.getIdentifier();
+            visitor.visit(userStub.getTicket(), UuidCodec.mostSignificantBits(identifier), UuidCodec.leastSignificantBits(identifier),
+                    false, userStub.getUsername());
+        });
+    }
+
+    @Override
+    public void clear() {
+        queue.clear();
+        users.clear();
+    }
+}
@@ -0,0 +1,171 @@
+package com.improbable.queue.service;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Table of every waiting user's rank, rebuilt in the background, so a poll is a ticket lookup plus a
+ * subtraction instead of two prefix sums.
+ * <p>
+ * Admissions always take users from the head, so they never make the table wrong: a rank minus the users
+ * admitted since the table was built is exact. Leaves ahead of a user do, until the next rebuild. So once
+ * someone has left, a table older than {@code maxStalenessMillis} is no longer trusted and the caller
+ * computes the position itself. Users who joined after the table was built are computed by the caller too.
+ * <p>
+ * The queue reports admissions, batch removals and compactions under its write lock, bracketed by a sequence
+ * number that is odd while one is in progress. A rebuild runs without the lock and keeps its table only if the
+ * sequence did not move meanwhile, the same way a seqlock reader does. Single leaves run under the read lock,
+ * concurrently with each other and with a rebuild, so they only bump the leave count. A scan that raced some
+ * leaves still has every rank between the exact one and the exact one plus those leaves, the same error a
+ * table built just before them would have, so it is kept and stamped with the leave count from before the
+ * scan: the staleness bound then applies to it as to any table that leaves have overtaken.
+ */
+class PositionCache implements QueueStore.PositionHint {
+
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "position-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicLongFieldUpdater<PositionCache> LEAVES = AtomicLongFieldUpdater.newUpdater(PositionCache.class, "leaves");
+
+    private final QueueStore store;
+    private final long maxStalenessNanos;
+    private final ScheduledFuture<?> refresh;
+
+    private volatile long sequence;
+    private volatile long admitted;
+    private volatile long leaves;
+    private volatile long replacements;
+    private volatile Table table;
+
+    private static final class Table {
+        final long firstTicket;
+        final int[] ranks;
+        final int waiting;
+        final long admittedAtBuild;
+        final long leavesAtBuild;
+        final long replacementsAtBuild;
+        final long builtAt;
+
+        Table(long firstTicket, int[] ranks, int waiting, long admittedAtBuild, long leavesAtBuild, long replacementsAtBuild,
+              long builtAt) {
+            this.firstTicket = firstTicket;
+            this.ranks = ranks;
+            this.waiting = waiting;
+            this.admittedAtBuild = admittedAtBuild;
+            this.leavesAtBuild = leavesAtBuild;
+            this.replacementsAtBuild = replacementsAtBuild;
+            this.builtAt = builtAt;
+        }
+    }
+
+    PositionCache(QueueStore store, long maxStalenessMillis) {
+        this.store = store;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        //    rebuilding at half the bound keeps a fresh table available before the current one expires
+        long period = Math.max(1, maxStalenessMillis / 2);
+        this.refresh = REFRESHER.scheduleWithFixedDelay(this::rebuildIfChanged, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of waiting users ahead of the ticket, or -1 when the table cannot answer
+     */
+    @Override
+    public long positionOf(long ticket) {
+        Table current = table;
+        //    tickets start again from zero once the queue's contents are replaced
+        if (current == null || current.replacementsAtBuild != replacements) {
+            return -1;
+        }
+        long offset = ticket - current.firstTicket;
+        if (offset < 0 || offset >= current.ranks.length || current.ranks[(int) offset] < 0) {
+            return -1;
+        }
+        if (leaves != current.leavesAtBuild && System.nanoTime() - current.builtAt > maxStalenessNanos) {
+            return -1;
+        }
+        return Math.max(0, current.ranks[(int) offset] - (admitted - current.admittedAtBuild));
+    }
+
+    /**
+     * Called under the queue's write lock before users are admitted, removed, replaced or compacted.
+     */
+    void beginChange() {
+        sequence++;
+    }
+
+    /**
+     * Called under the queue's write lock once the change is visible in the store.
+     */
+    void endChange(int admittedCount, int leaveCount, boolean replaced) {
+        admitted += admittedCount;
+        LEAVES.addAndGet(this, leaveCount);
+        if (replaced) {
+            replacements++;
+        }
+        sequence++;
+    }
+
+    /**
+     * Called under the queue's read lock once a single leave is visible in the store.
+     */
+    void left() {
+        LEAVES.incrementAndGet(this);
+    }
+
+    void close() {
+        refresh.cancel(false);
+        table = null;
+    }
+
+    void rebuildIfChanged() {
+        Table current = table;
+        //    without leaves or joins since the build, admissions alone keep the table exact
+        if (current != null && current.leavesAtBuild == leaves && current.replacementsAtBuild == replacements
+                && store.size() == current.waiting - (admitted - current.admittedAtBuild)) {
+            return;
+        }
+        rebuild();
+    }
+
+    void rebuild() {
+        long startSequence = sequence;
+        if ((startSequence & 1) != 0) {
+            return;
+        }
+        long admittedAtBuild = admitted;
+        long leavesAtBuild = leaves;
+        long replacementsAtBuild = replacements;
+        long builtAt = System.nanoTime();
+        long[][] tickets = {new long[1024]};
+        int[] count = new int[1];
+        store.forEachWaiting(ticket -> {
+            if (count[0] == tickets[0].length) {
+                tickets[0] = Arrays.copyOf(tickets[0], count[0] * 2);
+            }
+            tickets[0][count[0]++] = ticket;
+        });
+        if (sequence != startSequence) {
+            //    admitted, compacted or replaced meanwhile; the next period tries again
+            return;
+        }
+        int waiting = count[0];
+        if (waiting == 0) {
+            table = new Table(0, new int[0], 0, admittedAtBuild, leavesAtBuild, replacementsAtBuild, builtAt);
+            return;
+        }
+        long firstTicket = tickets[0][0];
+        int[] ranks = new int[(int) (tickets[0][waiting - 1] - firstTicket + 1)];
+        Arrays.fill(ranks, -1);
+        for (int rank = 0; rank < waiting; rank++) {
+            ranks[(int) (tickets[0][rank] - firstTicket)] = rank;
+        }
+        table = new Table(firstTicket, ranks, waiting, admittedAtBuild, leavesAtBuild, replacementsAtBuild, builtAt);
+    }
+}
@@ -0,0 +1,233 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.QueueStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes position changes to subscribed users instead of having them poll. Positions only move when the
+ * queue's epoch does, so once per {@code queue.stream.interval-ms} the epoch is checked and, only if it moved,
+ * every subscriber is looked up in one {@link QueueService#pollAll} per batch; nothing is recomputed while the
+ * queue is only growing. Sends run on a bounded pool of {@code queue.stream.send-threads}, at most one per
+ * subscriber at a time: a slow subscriber is sent only its latest position once its previous send completes.
+ */
+@Service
+public class PositionUpdateService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PositionUpdateService.class);
+
+    private static final int BATCH = 1024;
+    //    nothing sent yet, or an epoch no pass has been published for
+    private static final long NONE = Long.MIN_VALUE;
+
+    public interface Subscriber {
+        /**
+         * @return false once the subscriber can no longer be reached
+         */
+        boolean sendPosition(long position);
+
+        boolean sendAdmitted();
+
+        void close();
+    }
+
+    @Autowired
+    private QueueService queueService;
+
+    @Value("${queue.stream.interval-ms:500}")
+    private long intervalMillis;
+
+    @Value("${queue.stream.send-threads:4}")
+    private int sendThreads;
+
+    @Value("${queue.stream.send-queue:10000}")
+    private int sendQueue;
+
+    @Value("${queue.heartbeat.ttl-ms:0}")
+    private long heartbeatTtlMillis;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private volatile long publishedEpoch = NONE;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService sender;
+
+    @PostConstruct
+    private void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "position-updates");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sender = new ThreadPoolExecutor(sendThreads, sendThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(sendQueue),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "position-sends");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        scheduler.scheduleWithFixedDelay(this::publishAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        if (heartbeatTtlMillis > 0) {
+            //    an open stream is as good as a poll, so streaming users must not expire between pushes
+            long period = Math.max(1, heartbeatTtlMillis / 2);
+            scheduler.scheduleWithFixedDelay(this::heartbeatAll, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    /**
+     * Sends the current position on the calling thread, then keeps the subscriber updated.
+     */
+    public void subscribe(String identifier, Subscriber subscriber) {
+        Subscription subscription = new Subscription(identifier, subscriber);
+        Subscription previous = subscriptions.put(identifier, subscription);
+        if (previous != null) {
+            previous.subscriber.close();
+        }
+        QueueStatus status;
+        try {
+            status = queueService.poll(identifier);
+        } catch (RuntimeException e) {
+            subscriptions.remove(identifier, subscription);
+            throw e;
+        }
+        subscription.latest = status.isAdmitted() ? QueueService.ADMITTED
+                : status.isFound() ? status.getPosition() : QueueService.NOT_FOUND;
+        if (subscription.sending.compareAndSet(false, true)) {
+            send(subscription);
+        }
+    }
+
+    public void unsubscribe(String identifier, Subscriber subscriber) {
+        subscriptions.computeIfPresent(identifier, (key, subscription) -> subscription.subscriber == subscriber ? null : subscription);
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    synchronized void publishAll() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        //    read before the lookups: a change after this is a new epoch, and the next pass picks it up
+        long epoch = queueService.getEpoch();
+        if (epoch == publishedEpoch) {
+            return;
+        }
+        try {
+            List<Subscription> batch = new ArrayList<>(BATCH);
+            List<String> identifiers = new ArrayList<>(BATCH);
+            for (Subscription subscription : subscriptions.values()) {
+                batch.add(subscription);
+                identifiers.add(subscription.identifier);
+                if (batch.size() == BATCH) {
+                    publish(batch, identifiers);
+                }
+            }
+            if (!batch.isEmpty()) {
+                publish(batch, identifiers);
+            }
+            publishedEpoch = epoch;
+        } catch (QueueBusyException e) {
+            LOGGER.debug("publishing positions deferred: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            //    escaping would cancel the schedule, and with it every later update
+            LOGGER.warn("publishing positions failed, retrying", e);
+        }
+    }
+
+    private void heartbeatAll() {
+        for (String identifier : subscriptions.keySet()) {
+            queueService.heartbeat(identifier);
+        }
+    }
+
+    private void publish(List<Subscription> batch, List<String> identifiers) {
+        long[] statuses = queueService.pollAll(identifiers);
+        for (int i = 0; i < batch.size(); i++) {
+            Subscription subscription = batch.get(i);
+            subscription.latest = statuses[i];
+            if (subscription.latest != subscription.sent && subscription.sending.compareAndSet(false, true)) {
+                try {
+                    sender.execute(() -> send(subscription));
+                } catch (RejectedExecutionException e) {
+                    //    the pool is saturated; the next pass tries again even if nothing moved
+                    subscription.sending.set(false);
+                    publishedEpoch = NONE;
+                }
+            }
+        }
+        batch.clear();
+        identifiers.clear();
+    }
+
+    /**
+     * Sends the subscription's latest status until what was sent catches up with it. Runs for one
+     * subscription on one thread at a time, whoever set its {@code sending} flag.
+     */
+    private void send(Subscription subscription) {
+        do {
+            long status;
+            while ((status = subscription.latest) != subscription.sent) {
+                subscription.sent = status;
+                if (!deliver(subscription, status)) {
+                    subscriptions.remove(subscription.identifier, subscription);
+                    subscription.subscriber.close();
+                    return;
+                }
+            }
+            subscription.sending.set(false);
+            //    a pass may have set a newer status after the check above but before the flag was cleared
+        } while (subscription.latest != subscription.sent && subscription.sending.compareAndSet(false, true));
+    }
+
+    /**
+     * @return false once the subscription is finished: admitted, gone from the queue or unreachable
+     */
+    private boolean deliver(Subscription subscription, long status) {
+        try {
+            if (status == QueueService.ADMITTED) {
+                subscription.subscriber.sendAdmitted();
+                return false;
+            }
+            return status != QueueService.NOT_FOUND && subscription.subscriber.sendPosition(status);
+        } catch (RuntimeException e) {
+            LOGGER.debug("publishing the position of {} failed.  error is {}", subscription.identifier, e.getMessage());
+            return false;
+        }
+    }
+
+    private static class Subscription {
+        private final String identifier;
+        private final Subscriber subscriber;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile long latest = NONE;
+        private volatile long sent = NONE;
+
+        private Subscription(String identifier, Subscriber subscriber) {
+            this.identifier = identifier;
+            this.subscriber = subscriber;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.index.FenwickTree;
+import com.improbable.queue.model.UserStub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps users as two longs of identifier, a state word and an optional username in per-segment arrays,
+ * with a {@link TicketIndex} for lookups, so a waiting user costs no objects of its own. {@link UserStub}s
+ * are only built for the users handed back by {@link #admit} and {@link #peek}.
+ */
+class PrimitiveQueueStore implements QueueStore, TicketIndex.Keys {
+
+    private final int segmentSize;
+    private final AtomicLong nextTicket = new AtomicLong();
+    private final Map<Integer, PrimitiveSegment> segments = new ConcurrentHashMap<>();
+    private final FenwickTree segmentSizes = new FenwickTree();
+    private final TicketIndex index = new TicketIndex(this);
+    private volatile int headIndex;
+
+    PrimitiveQueueStore(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void add(UserStub userStub) {
+        String identifier = userStub.getIdentifier();
+        long mostSignificantBits = UuidCodec.mostSignificantBits(identifier);
+        long leastSignificantBits = UuidCodec.leastSignificantBits(identifier);
+        long ticket = nextTicket.getAndIncrement();
+        int queueIndex = (int) (ticket / segmentSize);
+        int slotIndex = (int) (ticket % segmentSize);
+        userStub.setTicket(ticket);
+        userStub.setQueueIndex(queueIndex);
+        userStub.setSlotIndex(slotIndex);
+        segment(queueIndex).set(slotIndex, mostSignificantBits, leastSignificantBits, userStub.getUsername(), userStub.isAdmittable());
+        segmentSizes.add(queueIndex, 1);
+        index.put(mostSignificantBits, leastSignificantBits, ticket);
+    }
+
+    @Override
+    public void addAll(List<UserStub> userStubs) {
+        long ticket = nextTicket.getAndAdd(userStubs.size());
+        int next = 0;
+        while (next < userStubs.size()) {
+            int queueIndex = queueIndex(ticket);
+            PrimitiveSegment segment = segment(queueIndex);
+            int published = 0;
+            do {
+                int slotIndex = slotIndex(ticket);
+                UserStub userStub = userStubs.get(next++);
+                String identifier = userStub.getIdentifier();
+                long mostSignificantBits = UuidCodec.mostSignificantBits(identifier);
+                long leastSignificantBits = UuidCodec.leastSignificantBits(identifier);
+                userStub.setTicket(ticket);
+                userStub.setQueueIndex(queueIndex);
+                userStub.setSlotIndex(slotIndex);
+                segment.set(slotIndex, mostSignificantBits, leastSignificantBits, userStub.getUsername(), userStub.isAdmittable());
+                index.put(mostSignificantBits, leastSignificantBits, ticket++);
+                published++;
+            } while (next < userStubs.size() && slotIndex(ticket) != 0);
+            segmentSizes.add(queueIndex, published);
+        }
+    }
+
+    @Override
+    public boolean contains(String identifier) {
+        return ticketOf(identifier) >= 0;
+    }
+
+    @Override
+    public boolean isAdmitted(String identifier) {
+        long ticket = ticketOf(identifier);
+        PrimitiveSegment segment = ticket < 0 ? null : segments.get(queueIndex(ticket));
+        return segment != null && (segment.state(slotIndex(ticket)) & PrimitiveSegment.ADMITTED) != 0;
+    }
+
+    @Override
+    public long positionOf(String identifier) {
+        long ticket = ticketOf(identifier);
+        if (ticket < 0) {
+            return -1;
+        }
+        int queueIndex = queueIndex(ticket);
+        PrimitiveSegment segment = segments.get(queueIndex);
+        long usersInEarlierSegments = segmentSizes.prefixSum(queueIndex);
+        return segment == null ? usersInEarlierSegments : usersInEarlierSegments + segment.countBefore(slotIndex(ticket));
+    }
+
+    @Override
+    public long waitingBefore(long ticket) {
+        int queueIndex = queueIndex(ticket);
+        PrimitiveSegment segment = segments.get(queueIndex);
+        long usersInEarlierSegments = segmentSizes.prefixSum(queueIndex);
+        return segment == null ? usersInEarlierSegments : usersInEarlierSegments + segment.countBefore(slotIndex(ticket));
+    }
+
+    @Override
+    public void statusOf(List<String> identifiers, long[] statuses) {
+        long[] tickets = new long[identifiers.size()];
+        //    segment index in the high half, request index in the low half, so sorting groups by segment
+        long[] bySegment = new long[identifiers.size()];
+        int waitingCount = 0;
+        for (int i = 0; i < identifiers.size(); i++) {
+            long ticket = ticketOf(identifiers.get(i));
+            PrimitiveSegment segment = ticket < 0 ? null : segments.get(queueIndex(ticket));
+            if (ticket < 0) {
+                statuses[i] = UNKNOWN;
+            } else if (segment != null && (segment.state(slotIndex(ticket)) & PrimitiveSegment.ADMITTED) != 0) {
+                statuses[i] = ADMITTED;
+            } else {
+                tickets[i] = ticket;
+                bySegment[waitingCount++] = (long) queueIndex(ticket) << 32 | i;
+            }
+        }
+        Arrays.sort(bySegment, 0, waitingCount);
+        int queueIndex = -1;
+        long usersInEarlierSegments = 0;
+        PrimitiveSegment segment = null;
+        for (int k = 0; k < waitingCount; k++) {
+            int i = (int) bySegment[k];
+            if (queueIndex(tickets[i]) != queueIndex) {
+                queueIndex = queueIndex(tickets[i]);
+                usersInEarlierSegments = segmentSizes.prefixSum(queueIndex);
+                segment = segments.get(queueIndex);
+            }
+            statuses[i] = segment == null ? usersInEarlierSegments : usersInEarlierSegments + segment.countBefore(slotIndex(tickets[i]));
+        }
+    }
+
+    @Override
+    public void statusOf(long[] mostSignificantBits, long[] leastSignificantBits, int count, long[] statuses) {
+        //    one count per identifier rather than a sort by segment, which would need scratch arrays
+        for (int i = 0; i < count; i++) {
+            statuses[i] = statusOfTicket(index.get(mostSignificantBits[i], leastSignificantBits[i]), null);
+        }
+    }
+
+    @Override
+    public long statusOf(String identifier, PositionHint hint) {
+        return statusOfTicket(ticketOf(identifier), hint);
+    }
+
+    private long statusOfTicket(long ticket, PositionHint hint) {
+        if (ticket < 0) {
+            return UNKNOWN;
+        }
+        PrimitiveSegment segment = segments.get(queueIndex(ticket));
+        if (segment != null && (segment.state(slotIndex(ticket)) & PrimitiveSegment.ADMITTED) != 0) {
+            return ADMITTED;
+        }
+        long position = hint == null ? -1 : hint.positionOf(ticket);
+        return position >= 0 ? position : waitingBefore(ticket);
+    }
+
+    @Override
+    public boolean remove(String identifier) {
+        if (!UuidCodec.isCanonical(identifier)) {
+            return false;
+        }
+        long ticket = index.remove(UuidCodec.mostSignificantBits(identifier), UuidCodec.leastSignificantBits(identifier));
+        if (ticket < 0) {
+            return false;
+        }
+        int queueIndex = queueIndex(ticket);
+        PrimitiveSegment segment = segments.get(queueIndex);
+        if (segment != null) {
+            int state = segment.remove(slotIndex(ticket));
+            if ((state & PrimitiveSegment.WAITING) != 0) {
+                segmentSizes.add(queueIndex, -1);
+            }
+            releaseIfUnused(queueIndex, segment);
+        }
+        return true;
+    }
+
+    @Override
+    public List<UserStub> admit(int count) {
+        List<UserStub> admitted = new ArrayList<>(Math.min(count, segmentSize));
+        int tailIndex = tailIndex();
+        while (admitted.size() < count && headIndex <= tailIndex) {
+            int queueIndex = headIndex;
+            PrimitiveSegment segment = segments.get(queueIndex);
+            if (segment == null) {
+                break;
+            }
+            int taken = segment.admitTo(admitted, count - admitted.size(), segmentSize);
+            if (taken > 0) {
+                segmentSizes.add(queueIndex, -taken);
+            }
+            if (!segment.isDrained()) {
+                break;
+            }
+            headIndex++;
+            releaseIfUnused(queueIndex, segment);
+        }
+        return admitted;
+    }
+
+    @Override
+    public UserStub peek() {
+        for (int i = headIndex; i <= tailIndex(); i++) {
+            PrimitiveSegment segment = segments.get(i);
+            UserStub first = segment == null ? null : segment.peek(segmentSize);
+            if (first != null) {
+                return first;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long size() {
+        return segmentSizes.total();
+    }
+
+    @Override
+    public void forEach(UserVisitor visitor) {
+        for (PrimitiveSegment segment : segments.values()) {
+            segment.forEach(visitor, segmentSize);
+        }
+    }
+
+    @Override
+    public void forEachWaiting(TicketVisitor visitor) {
+        for (int i = headIndex; i <= tailIndex(); i++) {
+            PrimitiveSegment segment = segments.get(i);
+            if (segment != null) {
+                segment.forEachWaiting(visitor, segmentSize);
+            }
+        }
+    }
+
+    @Override
+    public void forEachWaitingFrom(long position, int limit, UserVisitor visitor) {
+        int queueIndex = segmentSizes.indexOf(position);
+        long rank = position - segmentSizes.prefixSum(queueIndex);
+        int remaining = limit;
+        for (int i = queueIndex; i <= tailIndex() && remaining > 0; i++) {
+            PrimitiveSegment segment = segments.get(i);
+            if (segment != null) {
+                remaining -= segment.forEachWaitingFrom(rank, remaining, visitor, segmentSize);
+            }
+            //    every later segment is read from its front
+            rank = 0;
+        }
+    }
+
+    @Override
+    public void clear() {
+        segments.clear();
+        segmentSizes.clear();
+        index.clear();
+        nextTicket.set(0);
+        headIndex = 0;
+    }
+
+    @Override
+    public boolean matches(long ticket, long mostSignificantBits, long leastSignificantBits) {
+        PrimitiveSegment segment = segments.get(queueIndex(ticket));
+        int slotIndex = slotIndex(ticket);
+        return segment != null
+                && segment.leastSignificantBits(slotIndex) == leastSignificantBits
+                && segment.mostSignificantBits(slotIndex) == mostSignificantBits;
+    }
+
+    @Override
+    public long mostSignificantBits(long ticket) {
+        return segments.get(queueIndex(ticket)).mostSignificantBits(slotIndex(ticket));
+    }
+
+    @Override
+    public long leastSignificantBits(long ticket) {
+        return segments.get(queueIndex(ticket)).leastSignificantBits(slotIndex(ticket));
+    }
+
+    @Override
+    public long admittedCount() {
+        //    indexed users are either waiting or admitted; clamp the race between the two counts
+        return Math.max(0, index.size() - size());
+    }
+
+    @Override
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public int compact(double threshold, int maxSegments) {
+        int compacted = 0;
+        //    drained segments behind the head are included: admitted users keep their slots until they leave
+        for (PrimitiveSegment segment : segments.values()) {
+            if (compacted == maxSegments) {
+                break;
+            }
+            if (segment.shouldCompact(threshold)) {
+                segment.compact();
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    @Override
+    public long ticketOf(String identifier) {
+        if (!UuidCodec.isCanonical(identifier)) {
+            return -1;
+        }
+        return index.get(UuidCodec.mostSignificantBits(identifier), UuidCodec.leastSignificantBits(identifier));
+    }
+
+    private void releaseIfUnused(int queueIndex, PrimitiveSegment segment) {
+        //    admitted users keep their slot until they leave, so a drained segment lives on until then
+        if (queueIndex < headIndex && segment.isDrained() && !segment.hasPresentUsers()) {
+            segments.remove(queueIndex, segment);
+        }
+    }
+
+    private int queueIndex(long ticket) {
+        return (int) (ticket / segmentSize);
+    }
+
+    private int slotIndex(long ticket) {
+        return (int) (ticket % segmentSize);
+    }
+
+    private int tailIndex() {
+        return (int) ((nextTicket.get() - 1) / segmentSize);
+    }
+
+    private PrimitiveSegment segment(int queueIndex) {
+        PrimitiveSegment segment = segments.get(queueIndex);
+        if (segment == null) {
+            PrimitiveSegment created = new PrimitiveSegment(queueIndex, segmentSize);
+            segment = segments.putIfAbsent(queueIndex, created);
+            if (segment == null) {
+                segment = created;
+            }
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,308 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.index.FenwickTree;
+import com.improbable.queue.model.UserStub;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed-capacity block of the queue stored as parallel primitive arrays, one slot per ticket. A slot's
+ * state is written last, so reading a non-zero state makes the rest of the slot visible; a zero state
+ * means the join for that ticket is still in flight.
+ * <p>
+ * Once every slot has been filled, {@link #compact} can rewrite a segment that is mostly left slots into
+ * arrays holding only its present users, with a sorted table mapping their slots to array positions.
+ */
+class PrimitiveSegment {
+
+    static final int PRESENT = 1;
+    static final int WAITING = 2;
+    static final int ADMITTED = 4;
+    static final int LEFT = 8;
+
+    private final int queueIndex;
+    private final int capacity;
+    private final AtomicInteger filled = new AtomicInteger();
+    private final AtomicInteger presentUsers = new AtomicInteger();
+    private volatile Layout layout;
+    //    an array position in the current layout
+    private volatile int head;
+
+    private static final class Layout {
+        //    slot of each array position, or null while every slot has its own position
+        final int[] slots;
+        final long[] mostSignificantBits;
+        final long[] leastSignificantBits;
+        final AtomicIntegerArray states;
+        final FenwickTree waitingUsers;
+        volatile String[] usernames;
+
+        Layout(int[] slots, int length) {
+            this.slots = slots;
+            this.mostSignificantBits = new long[length];
+            this.leastSignificantBits = new long[length];
+            this.states = new AtomicIntegerArray(length);
+            this.waitingUsers = new FenwickTree(length);
+        }
+
+        int positionOf(int slot) {
+            return slots == null ? slot : Arrays.binarySearch(slots, slot);
+        }
+
+        int slotAt(int position) {
+            return slots == null ? position : slots[position];
+        }
+
+        /**
+         * @return how many array positions hold slots below {@code slot}
+         */
+        int positionsBefore(int slot) {
+            if (slots == null) {
+                return slot;
+            }
+            int position = Arrays.binarySearch(slots, slot);
+            return position < 0 ? -position - 1 : position;
+        }
+
+        int length() {
+            return states.length();
+        }
+
+        String[] usernames() {
+            String[] names = usernames;
+            if (names == null) {
+                synchronized (this) {
+                    names = usernames;
+                    if (names == null) {
+                        names = new String[length()];
+                        usernames = names;
+                    }
+                }
+            }
+            return names;
+        }
+    }
+
+    PrimitiveSegment(int queueIndex, int capacity) {
+        this.queueIndex = queueIndex;
+        this.capacity = capacity;
+        this.layout = new Layout(null, capacity);
+    }
+
+    void set(int slot, long mostSignificantBits, long leastSignificantBits, String username, boolean admitted) {
+        //    only full segments are compacted, so a slot being set always has its own position
+        Layout current = layout;
+        current.mostSignificantBits[slot] = mostSignificantBits;
+        current.leastSignificantBits[slot] = leastSignificantBits;
+        if (username != null) {
+            current.usernames()[slot] = username;
+        }
+        presentUsers.incrementAndGet();
+        current.waitingUsers.add(slot, 1);
+        current.states.set(slot, PRESENT | WAITING | (admitted ? ADMITTED : 0));
+        filled.incrementAndGet();
+    }
+
+    int state(int slot) {
+        Layout current = layout;
+        int position = current.positionOf(slot);
+        //    compaction keeps every present user, so a slot it dropped was left
+        return position < 0 ? LEFT : current.states.get(position);
+    }
+
+    long mostSignificantBits(int slot) {
+        Layout current = layout;
+        int position = current.positionOf(slot);
+        return position < 0 ? 0 : current.mostSignificantBits[position];
+    }
+
+    long leastSignificantBits(int slot) {
+        Layout current = layout;
+        int position = current.positionOf(slot);
+        return position < 0 ? 0 : current.leastSignificantBits[position];
+    }
+
+    /**
+     * @return the state the slot had before removal, or 0 when nobody present held it
+     */
+    int remove(int slot) {
+        Layout current = layout;
+        int position = current.positionOf(slot);
+        if (position < 0) {
+            return 0;
+        }
+        while (true) {
+            int state = current.states.get(position);
+            if ((state & PRESENT) == 0) {
+                return 0;
+            }
+            if (current.states.compareAndSet(position, state, LEFT)) {
+                if ((state & WAITING) != 0) {
+                    current.waitingUsers.add(position, -1);
+                }
+                presentUsers.decrementAndGet();
+                String[] names = current.usernames;
+                if (names != null) {
+                    names[position] = null;
+                }
+                return state;
+            }
+        }
+    }
+
+    /**
+     * Admits up to {@code count} waiting users from the front of the segment into {@code admitted},
+     * stopping early at a slot whose join is still in flight.
+     */
+    int admitTo(List<UserStub> admitted, int count, int segmentSize) {
+        Layout current = layout;
+        int taken = 0;
+        int position = head;
+        while (taken < count && position < current.length()) {
+            int state = current.states.get(position);
+            if (state == 0) {
+                break;
+            }
+            if ((state & WAITING) != 0 && current.states.compareAndSet(position, state, (state & ~WAITING) | ADMITTED)) {
+                current.waitingUsers.add(position, -1);
+                admitted.add(toUserStub(current, position, PRESENT | ADMITTED, segmentSize));
+                taken++;
+            }
+            position++;
+        }
+        head = position;
+        return taken;
+    }
+
+    UserStub peek(int segmentSize) {
+        Layout current = layout;
+        for (int position = head; position < current.length(); position++) {
+            int state = current.states.get(position);
+            if ((state & WAITING) != 0) {
+                return toUserStub(current, position, state, segmentSize);
+            }
+        }
+        return null;
+    }
+
+    void forEach(QueueStore.UserVisitor visitor, int segmentSize) {
+        Layout current = layout;
+        for (int position = 0; position < current.length(); position++) {
+            int state = current.states.get(position);
+            if ((state & PRESENT) != 0) {
+                String[] names = current.usernames;
+                visitor.visit((long) queueIndex * segmentSize + current.slotAt(position), current.mostSignificantBits[position],
+                        current.leastSignificantBits[position], (state & ADMITTED) != 0, names == null ? null : names[position]);
+            }
+        }
+    }
+
+    void forEachWaiting(QueueStore.TicketVisitor visitor, int segmentSize) {
+        //    read the layout before head: compaction moves head before publishing its layout
+        Layout current = layout;
+        for (int position = Math.min(head, current.length()); position < current.length(); position++) {
+            if ((current.states.get(position) & WAITING) != 0) {
+                visitor.visit((long) queueIndex * segmentSize + current.slotAt(position));
+            }
+        }
+    }
+
+    /**
+     * Visits up to {@code limit} waiting users in slot order, skipping the first {@code rank} of them.
+     *
+     * @return the number of users visited
+     */
+    int forEachWaitingFrom(long rank, int limit, QueueStore.UserVisitor visitor, int segmentSize) {
+        Layout current = layout;
+        int visited = 0;
+        for (int position = current.waitingUsers.indexOf(rank); position < current.length() && visited < limit; position++) {
+            int state = current.states.get(position);
+            if ((state & WAITING) != 0) {
+                String[] names = current.usernames;
+                visitor.visit((long) queueIndex * segmentSize + current.slotAt(position), current.mostSignificantBits[position],
+                        current.leastSignificantBits[position], (state & ADMITTED) != 0, names == null ? null : names[position]);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    boolean isDrained() {
+        return head == layout.length();
+    }
+
+    boolean hasPresentUsers() {
+        return presentUsers.get() > 0;
+    }
+
+    int countBefore(int slot) {
+        Layout current = layout;
+        return (int) current.waitingUsers.prefixSum(current.positionsBefore(slot));
+    }
+
+    /**
+     * @return whether every slot has been filled and at least {@code threshold} of them have been left
+     */
+    boolean shouldCompact(double threshold) {
+        if (filled.get() < capacity) {
+            return false;
+        }
+        int held = layout.length();
+        int left = held - presentUsers.get();
+        return left > 0 && left >= threshold * held;
+    }
+
+    /**
+     * Drops every left slot, keeping present users, admitted ones included, in slot order. Callers must hold
+     * off everything but joins, which never reach a segment whose slots are all filled.
+     */
+    void compact() {
+        Layout current = layout;
+        int present = presentUsers.get();
+        int[] slots = new int[present];
+        Layout compacted = new Layout(slots, present);
+        String[] names = current.usernames;
+        int newHead = 0;
+        int next = 0;
+        for (int position = 0; position < current.length() && next < present; position++) {
+            int state = current.states.get(position);
+            if ((state & PRESENT) == 0) {
+                continue;
+            }
+            slots[next] = current.slotAt(position);
+            compacted.mostSignificantBits[next] = current.mostSignificantBits[position];
+            compacted.leastSignificantBits[next] = current.leastSignificantBits[position];
+            if (names != null && names[position] != null) {
+                compacted.usernames()[next] = names[position];
+            }
+            if ((state & WAITING) != 0) {
+                compacted.waitingUsers.add(next, 1);
+            }
+            compacted.states.set(next, state);
+            if (position < head) {
+                newHead = next + 1;
+            }
+            next++;
+        }
+        //    admitted users behind the head stay behind it; the new head is never past the old one, so a reader
+        //    still on the old layout only rescans slots nobody is waiting in
+        head = newHead;
+        layout = compacted;
+    }
+
+    private UserStub toUserStub(Layout current, int position, int state, int segmentSize) {
+        String[] names = current.usernames;
+        int slot = current.slotAt(position);
+        return UserStub.builder()
+                .identifier(UuidCodec.format(current.mostSignificantBits[position], current.leastSignificantBits[position]))
+                .username(names == null ? null : names[position])
+                .isAdmittable((state & ADMITTED) != 0)
+                .ticket((long) queueIndex * segmentSize + slot)
+                .queueIndex(queueIndex)
+                .slotIndex(slot)
+                .build();
+    }
+}
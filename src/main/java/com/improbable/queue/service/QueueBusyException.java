@@ -0,0 +1,16 @@
+package com.improbable.queue.service;
+
+/**
+ * The queue could not serve the request right now, typically because its lock was taken. Trying again
+ * shortly is expected to succeed.
+ */
+public class QueueBusyException extends RuntimeException {
+
+    public QueueBusyException() {
+        super("please retry later");
+    }
+
+    public QueueBusyException(Throwable cause) {
+        super("please retry later", cause);
+    }
+}
@@ -0,0 +1,368 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.QueueEvent;
+import com.improbable.queue.model.UserStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the default queue's joins, leaves and admissions to an {@link EventRing}, so downstream services
+ * such as checkout hear of an admission within milliseconds instead of on the user's next poll.
+ * <p>
+ * Listeners run on many threads, so they only hand their events over; one writer at a time moves them onto the
+ * ring, either the dispatcher thread or a reader catching up. The dispatcher hands each subscriber the events
+ * after its cursor, at most {@code queue.events.batch-size} per send, and naps for {@code queue.events.idle-ms}
+ * whenever nobody has anything new. Memory stays bounded by {@code queue.events.capacity} however far a
+ * subscriber falls behind; one that falls behind by more is told how many events it lost.
+ * <p>
+ * A user's join is heard once the user is in the queue, so an admission on another thread can arrive first.
+ * Admissions follow ticket order, so the writer tracks which tickets it has seen join: a user admitted before
+ * its join arrived has the join published just ahead of the admission, and the late one is dropped. Every
+ * admission is therefore preceded by its user's join, including users restored at startup.
+ */
+@Service
+public class QueueEventService implements QueueListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueEventService.class);
+    private static final byte CLEAR = 0;
+    private static final int REBASE = 1 << 16;
+
+    public interface Subscriber {
+        /**
+         * @return false once the subscriber can no longer be reached
+         */
+        boolean send(List<QueueEvent> events);
+
+        /**
+         * @return false once the subscriber can no longer be reached
+         */
+        boolean sendLost(long from, long to);
+
+        void close();
+    }
+
+    @Autowired
+    private QueueService queueService;
+
+    @Value("${queue.events.enabled:false}")
+    private boolean enabled;
+
+    @Value("${queue.events.capacity:65536}")
+    private int capacity;
+
+    @Value("${queue.events.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${queue.events.idle-ms:1}")
+    private long idleMillis;
+
+    private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock writer = new ReentrantLock();
+    //    guarded by writer: every ticket below joinedBelow has had its join published or its admission passed,
+    //    and joinedAbove has a bit, counted from joinedBase, for each ticket above it whose join was published
+    private long joinedBelow;
+    private long joinedBase;
+    private BitSet joinedAbove = new BitSet();
+    //    guarded by writer: tickets whose join was published ahead of their admission, so their own is dropped
+    private Map<Long, Boolean> joinedEarly;
+    private EventRing ring;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        ring = new EventRing(capacity);
+        joinedEarly = new LinkedHashMap<Long, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                //    joins restored at startup never arrive, so forget the oldest rather than grow
+                return size() > capacity;
+            }
+        };
+        running = true;
+        dispatcher = new Thread(this::dispatchContinuously, "queue-events");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        queueService.addListener(this);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (ring == null) {
+            return;
+        }
+        queueService.removeListener(this);
+        running = false;
+        LockSupport.unpark(dispatcher);
+    }
+
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * @return the sequence of the last event published, or -1 before the first
+     */
+    public long lastSequence() {
+        write();
+        return ring.lastSequence();
+    }
+
+    /**
+     * Reads up to {@code limit} events from {@code from} on, or from the oldest one still held when the ring
+     * has already overwritten {@code from}.
+     */
+    public List<QueueEvent> read(long from, int limit) {
+        write();
+        return readWritten(from, limit);
+    }
+
+    private List<QueueEvent> readWritten(long from, int limit) {
+        List<QueueEvent> events = new ArrayList<>(Math.min(limit, ring.capacity()));
+        ring.read(from, limit, (sequence, type, ticket, mostSignificantBits, leastSignificantBits) -> events.add(QueueEvent.builder()
+                .sequence(sequence)
+                .type(typeName(type))
+                .identifier(UuidCodec.format(mostSignificantBits, leastSignificantBits))
+                .ticket(ticket < 0 ? null : ticket)
+                .build()));
+        return events;
+    }
+
+    /**
+     * Streams every event from {@code from} on to the subscriber until it is unsubscribed or unreachable.
+     */
+    public void subscribe(long from, Subscriber subscriber) {
+        write();
+        subscriptions.add(new Subscription(subscriber, from));
+        LockSupport.unpark(dispatcher);
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscriptions.removeIf(subscription -> subscription.subscriber == subscriber);
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void onJoin(UserStub userStub) {
+        pending.add(new Pending(EventRing.JOIN, userStub, null, null));
+    }
+
+    @Override
+    public void onJoinAll(List<UserStub> joined) {
+        pending.add(new Pending(EventRing.JOIN, null, joined, null));
+    }
+
+    @Override
+    public void onLeave(String identifier) {
+        pending.add(new Pending(EventRing.LEAVE, null, null, identifier));
+    }
+
+    @Override
+    public void onAdmit(List<UserStub> admitted) {
+        pending.add(new Pending(EventRing.ADMIT, null, admitted, null));
+    }
+
+    @Override
+    public void onClear() {
+        pending.add(new Pending(CLEAR, null, null, null));
+    }
+
+    /**
+     * Moves the events handed over so far onto the ring.
+     *
+     * @return whether anything was written
+     */
+    private boolean write() {
+        writer.lock();
+        try {
+            boolean written = false;
+            //    a bounded drain, so a stream of joins cannot keep the dispatcher from its subscribers
+            for (int i = 0; i < ring.capacity(); i++) {
+                Pending next = pending.poll();
+                if (next == null) {
+                    break;
+                }
+                write(next);
+                written = true;
+            }
+            return written;
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    private void write(Pending next) {
+        switch (next.type) {
+            case EventRing.JOIN:
+                if (next.userStub != null) {
+                    writeJoin(next.userStub);
+                } else {
+                    for (UserStub userStub : next.userStubs) {
+                        writeJoin(userStub);
+                    }
+                }
+                break;
+            case EventRing.LEAVE:
+                ring.publish(EventRing.LEAVE, -1, UuidCodec.mostSignificantBits(next.identifier), UuidCodec.leastSignificantBits(next.identifier));
+                break;
+            case EventRing.ADMIT:
+                writeAdmit(next.userStubs);
+                break;
+            default:
+                //    tickets start again from zero
+                joinedBelow = 0;
+                joinedBase = 0;
+                joinedAbove.clear();
+                joinedEarly.clear();
+        }
+    }
+
+    private void writeJoin(UserStub userStub) {
+        long ticket = userStub.getTicket();
+        if (ticket >= joinedBelow) {
+            joinedAbove.set((int) (ticket - joinedBase));
+            advanceJoinedBelow(joinedBelow);
+        } else if (joinedEarly.remove(ticket) != null) {
+            return;
+        }
+        publish(EventRing.JOIN, userStub);
+    }
+
+    private void writeAdmit(List<UserStub> admitted) {
+        for (UserStub userStub : admitted) {
+            long ticket = userStub.getTicket();
+            if (ticket >= joinedBelow && !joinedAbove.get((int) (ticket - joinedBase))) {
+                publish(EventRing.JOIN, userStub);
+                joinedEarly.put(ticket, Boolean.TRUE);
+            }
+            publish(EventRing.ADMIT, userStub);
+        }
+        //    admissions take users in ticket order, so no later one can need an earlier ticket's join
+        long last = admitted.get(admitted.size() - 1).getTicket();
+        if (last >= joinedBelow) {
+            advanceJoinedBelow(last + 1);
+        }
+    }
+
+    private void advanceJoinedBelow(long from) {
+        joinedBelow = joinedBase + joinedAbove.nextClearBit((int) (from - joinedBase));
+        int passed = (int) (joinedBelow - joinedBase);
+        if (passed >= REBASE) {
+            joinedAbove = joinedAbove.get(passed, Math.max(passed, joinedAbove.length()));
+            joinedBase = joinedBelow;
+        }
+    }
+
+    private void publish(byte type, UserStub userStub) {
+        String identifier = userStub.getIdentifier();
+        ring.publish(type, userStub.getTicket(), UuidCodec.mostSignificantBits(identifier), UuidCodec.leastSignificantBits(identifier));
+    }
+
+    private void dispatchContinuously() {
+        while (running) {
+            boolean busy = write();
+            for (Subscription subscription : subscriptions) {
+                try {
+                    busy |= dispatch(subscription);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("dropping an event subscriber.  error is {}", e.getMessage());
+                    subscriptions.remove(subscription);
+                    subscription.subscriber.close();
+                }
+            }
+            if (!busy) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(idleMillis));
+            }
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.subscriber.close();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * @return whether anything was sent
+     */
+    private boolean dispatch(Subscription subscription) {
+        if (subscription.next > ring.lastSequence()) {
+            return false;
+        }
+        List<QueueEvent> events = readWritten(subscription.next, batchSize);
+        boolean reachable = true;
+        long first = events.isEmpty() ? ring.lastSequence() + 1 : events.get(0).getSequence();
+        if (first > subscription.next) {
+            reachable = subscription.subscriber.sendLost(subscription.next, first);
+        }
+        if (reachable && !events.isEmpty()) {
+            reachable = subscription.subscriber.send(events);
+        }
+        subscription.next = events.isEmpty() ? first : events.get(events.size() - 1).getSequence() + 1;
+        if (!reachable) {
+            subscriptions.remove(subscription);
+            subscription.subscriber.close();
+        }
+        return true;
+    }
+
+    private static String typeName(byte type) {
+        switch (type) {
+            case EventRing.JOIN:
+                return QueueEvent.JOIN;
+            case EventRing.LEAVE:
+                return QueueEvent.LEAVE;
+            case EventRing.ADMIT:
+                return QueueEvent.ADMIT;
+            default:
+                throw new IllegalStateException("unknown event type " + type);
+        }
+    }
+
+    private static class Pending {
+        private final byte type;
+        private final UserStub userStub;
+        private final List<UserStub> userStubs;
+        private final String identifier;
+
+        private Pending(byte type, UserStub userStub, List<UserStub> userStubs, String identifier) {
+            this.type = type;
+            this.userStub = userStub;
+            this.userStubs = userStubs;
+            this.identifier = identifier;
+        }
+    }
+
+    private static class Subscription {
+        private final Subscriber subscriber;
+        //    only the dispatcher thread moves it
+        private long next;
+
+        private Subscription(Subscriber subscriber, long next) {
+            this.subscriber = subscriber;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.improbable.queue.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only log of queue events written through memory-mapped files. One generation of files is written
+ * per process run; a background thread forces the mapped pages to disk, so callers waiting for durability
+ * share one fsync with everyone who appended while the previous one ran.
+ * <p>
+ * Files are zero-filled when mapped, so a zero size marks the end of what was written to a file, and a
+ * record's trailing commit byte, written last, tells a complete record from a torn one.
+ */
+class QueueJournal implements Closeable {
+
+    static final byte JOIN = 1;
+    static final byte LEAVE = 2;
+    static final byte ADMIT = 3;
+
+    //    every record is [int size][byte type][payload][byte COMMITTED]
+    private static final int HEADER_SIZE = 4 + 1;
+    private static final int JOIN_SIZE = HEADER_SIZE + 8 + 8 + 8 + 1 + 2 + 1;
+    private static final int LEAVE_SIZE = HEADER_SIZE + 8 + 8 + 1;
+    private static final int ADMIT_SIZE = HEADER_SIZE + 8 + 1;
+    private static final byte COMMITTED = 0x5A;
+    private static final Pattern FILE_NAME = Pattern.compile("journal-(\\d+)-(\\d+)\\.log");
+
+    interface RecordHandler {
+        void onJoin(long ticket, long mostSignificantBits, long leastSignificantBits, boolean admitted, String username);
+
+        void onLeave(long mostSignificantBits, long leastSignificantBits);
+
+        void onAdmit(long lastTicket);
+    }
+
+    private final Path directory;
+    private final long generation;
+    private final int fileSize;
+    private final Object flushMonitor = new Object();
+    private final Thread flusher;
+    private final long flushIntervalMillis;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int fileIndex = -1;
+    private volatile long written;
+    private volatile long flushed;
+    private volatile boolean open = true;
+
+    QueueJournal(Path directory, long generation, int fileSize, long flushIntervalMillis) {
+        this.directory = directory;
+        this.generation = generation;
+        this.fileSize = fileSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        roll();
+        this.flusher = new Thread(this::flushContinuously, "queue-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * @return the journal position just after the record, to pass to {@link #awaitDurable}
+     */
+    synchronized long appendJoin(long ticket, long mostSignificantBits, long leastSignificantBits, boolean admitted, String username) {
+        byte[] name = username == null ? null : username.getBytes(StandardCharsets.UTF_8);
+        int nameLength = name == null ? 0 : Math.min(name.length, Short.MAX_VALUE);
+        int offset = reserve(JOIN_SIZE + nameLength, JOIN);
+        buffer.putLong(offset + HEADER_SIZE, ticket);
+        buffer.putLong(offset + HEADER_SIZE + 8, mostSignificantBits);
+        buffer.putLong(offset + HEADER_SIZE + 16, leastSignificantBits);
+        buffer.put(offset + HEADER_SIZE + 24, (byte) (admitted ? 1 : 0));
+        //    -1 tells a missing username apart from an empty one
+        buffer.putShort(offset + HEADER_SIZE + 25, (short) (name == null ? -1 : nameLength));
+        for (int i = 0; i < nameLength; i++) {
+            buffer.put(offset + HEADER_SIZE + 27 + i, name[i]);
+        }
+        return commit(offset, JOIN_SIZE + nameLength);
+    }
+
+    synchronized long appendLeave(long mostSignificantBits, long leastSignificantBits) {
+        int offset = reserve(LEAVE_SIZE, LEAVE);
+        buffer.putLong(offset + HEADER_SIZE, mostSignificantBits);
+        buffer.putLong(offset + HEADER_SIZE + 8, leastSignificantBits);
+        return commit(offset, LEAVE_SIZE);
+    }
+
+    synchronized long appendAdmit(long lastTicket) {
+        int offset = reserve(ADMIT_SIZE, ADMIT);
+        buffer.putLong(offset + HEADER_SIZE, lastTicket);
+        return commit(offset, ADMIT_SIZE);
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * @return the position just after the last record appended so far
+     */
+    long position() {
+        return written;
+    }
+
+    /**
+     * Deletes the files holding only records before {@code position}, once a snapshot has made them redundant.
+     */
+    void deleteFilesBefore(long position) throws IOException {
+        int lastUnneeded = (int) (position / fileSize) - 1;
+        for (int index : fileIndexes(directory, generation)) {
+            if (index <= lastUnneeded) {
+                Files.deleteIfExists(directory.resolve(fileName(generation, index)));
+            }
+        }
+    }
+
+    /**
+     * Blocks until everything up to {@code position} has been forced to disk.
+     */
+    void awaitDurable(long position) {
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+            while (flushed < position && open) {
+                try {
+                    flushMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            buffer.force();
+            closeChannel();
+        }
+    }
+
+    /**
+     * Deletes every file belonging to a generation other than {@code generationToKeep}.
+     */
+    static void deleteOtherGenerations(Path directory, long generationToKeep) throws IOException {
+        for (Path file : files(directory)) {
+            Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+            if (matcher.matches() && Long.parseLong(matcher.group(1)) != generationToKeep) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * @return generations found in the directory, newest first
+     */
+    static List<Long> generations(Path directory) throws IOException {
+        TreeSet<Long> generations = new TreeSet<>(Collections.reverseOrder());
+        for (Path file : files(directory)) {
+            Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+                generations.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        return new ArrayList<>(generations);
+    }
+
+    /**
+     * Replays the records of a generation starting at {@code fromPosition}, a position returned by an append.
+     * Files wholly before that position may already have been deleted.
+     */
+    static void replay(Path directory, long generation, long fromPosition, RecordHandler handler) throws IOException {
+        List<Integer> indexes = fileIndexes(directory, generation);
+        if (indexes.isEmpty()) {
+            return;
+        }
+        long fileSize = Files.size(directory.resolve(fileName(generation, indexes.get(0))));
+        for (int index = (int) (fromPosition / fileSize); ; index++) {
+            Path file = directory.resolve(fileName(generation, index));
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                long fileStart = index * fileSize;
+                replay(buffer, (int) Math.max(0, fromPosition - fileStart), handler);
+            }
+        }
+    }
+
+    private static void replay(MappedByteBuffer buffer, int offset, RecordHandler handler) {
+        while (offset + HEADER_SIZE <= buffer.limit()) {
+            int size = buffer.getInt(offset);
+            if (size < HEADER_SIZE + 1 || offset + size > buffer.limit() || buffer.get(offset + size - 1) != COMMITTED) {
+                return;
+            }
+            int payload = offset + HEADER_SIZE;
+            switch (buffer.get(offset + 4)) {
+                case JOIN:
+                    short nameLength = buffer.getShort(payload + 25);
+                    String username = null;
+                    if (nameLength >= 0) {
+                        byte[] name = new byte[nameLength];
+                        for (int i = 0; i < nameLength; i++) {
+                            name[i] = buffer.get(payload + 27 + i);
+                        }
+                        username = new String(name, StandardCharsets.UTF_8);
+                    }
+                    handler.onJoin(buffer.getLong(payload), buffer.getLong(payload + 8), buffer.getLong(payload + 16), buffer.get(payload + 24) != 0, username);
+                    break;
+                case LEAVE:
+                    handler.onLeave(buffer.getLong(payload), buffer.getLong(payload + 8));
+                    break;
+                case ADMIT:
+                    handler.onAdmit(buffer.getLong(payload));
+                    break;
+                default:
+                    return;
+            }
+            offset += size;
+        }
+    }
+
+    private int reserve(int size, byte type) {
+        if (!open) {
+            throw new IllegalStateException("journal is closed");
+        }
+        if (buffer.position() + size > buffer.capacity()) {
+            buffer.force();
+            flushed = written;
+            roll();
+        }
+        int offset = buffer.position();
+        buffer.putInt(offset, size);
+        buffer.put(offset + 4, type);
+        return offset;
+    }
+
+    private long commit(int offset, int size) {
+        buffer.put(offset + size - 1, COMMITTED);
+        buffer.position(offset + size);
+        written = (long) fileIndex * fileSize + offset + size;
+        return written;
+    }
+
+    private void roll() {
+        closeChannel();
+        fileIndex++;
+        try {
+            channel = FileChannel.open(directory.resolve(fileName(generation, fileIndex)),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written = (long) fileIndex * fileSize;
+        flushed = written;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void flushContinuously() {
+        while (open) {
+            long target;
+            MappedByteBuffer current;
+            synchronized (flushMonitor) {
+                while (written == flushed && open) {
+                    try {
+                        flushMonitor.wait(flushIntervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            synchronized (this) {
+                target = written;
+                current = buffer;
+            }
+            if (target > flushed) {
+                current.force();
+            }
+            synchronized (flushMonitor) {
+                if (target > flushed) {
+                    flushed = target;
+                }
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+
+    private static List<Integer> fileIndexes(Path directory, long generation) throws IOException {
+        List<Integer> indexes = new ArrayList<>();
+        for (Path file : files(directory)) {
+            Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+            if (matcher.matches() && Long.parseLong(matcher.group(1)) == generation) {
+                indexes.add(Integer.parseInt(matcher.group(2)));
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    private static String fileName(long generation, int index) {
+        return String.format("journal-%d-%06d.log", generation, index);
+    }
+
+    private static List<Path> files(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*.log")) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+}
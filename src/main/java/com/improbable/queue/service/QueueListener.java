@@ -0,0 +1,36 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+
+import java.util.List;
+
+/**
+ * Callback for changes to a queue. Listeners run on the thread that made the change, in some cases while
+ * it holds the queue's write lock, so they must hand any slow work off to another thread.
+ */
+public interface QueueListener {
+
+    default void onJoin(UserStub userStub) {
+    }
+
+    /**
+     * Called once for a batch joined together, in queue order.
+     */
+    default void onJoinAll(List<UserStub> joined) {
+        for (UserStub userStub : joined) {
+            onJoin(userStub);
+        }
+    }
+
+    default void onLeave(String identifier) {
+    }
+
+    default void onAdmit(List<UserStub> admitted) {
+    }
+
+    /**
+     * Called once the queue has been emptied; tickets start again from zero.
+     */
+    default void onClear() {
+    }
+}
@@ -0,0 +1,123 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of a queue's hot operations, how often its lock could not be taken, and gauges read straight
+ * from its storage without taking the lock.
+ */
+public class QueueMetrics {
+
+    private final QueueStore store;
+    private final LatencyHistogram join = new LatencyHistogram();
+    private final LatencyHistogram joinBatch = new LatencyHistogram();
+    private final LatencyHistogram position = new LatencyHistogram();
+    private final LatencyHistogram pollBatch = new LatencyHistogram();
+    private final LatencyHistogram remove = new LatencyHistogram();
+    private final LatencyHistogram admit = new LatencyHistogram();
+    private final LongAdder readLockFailures = new LongAdder();
+    private final LongAdder writeLockFailures = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder compacted = new LongAdder();
+    private final LongAdder duplicateJoins = new LongAdder();
+
+    QueueMetrics(QueueStore store) {
+        this.store = store;
+    }
+
+    public LatencyHistogram getJoin() {
+        return join;
+    }
+
+    /**
+     * One sample per batch, however many users it holds.
+     */
+    public LatencyHistogram getJoinBatch() {
+        return joinBatch;
+    }
+
+    public LatencyHistogram getPosition() {
+        return position;
+    }
+
+    /**
+     * One sample per batch, however many identifiers it holds.
+     */
+    public LatencyHistogram getPollBatch() {
+        return pollBatch;
+    }
+
+    public LatencyHistogram getRemove() {
+        return remove;
+    }
+
+    public LatencyHistogram getAdmit() {
+        return admit;
+    }
+
+    public long getReadLockFailures() {
+        return readLockFailures.sum();
+    }
+
+    public long getWriteLockFailures() {
+        return writeLockFailures.sum();
+    }
+
+    /**
+     * Users removed because their heartbeat lapsed.
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * Segments rewritten without their tombstones.
+     */
+    public long getCompactedSegments() {
+        return compacted.sum();
+    }
+
+    /**
+     * Joins answered with the identifier of an earlier join under the same idempotency key.
+     */
+    public long getDuplicateJoins() {
+        return duplicateJoins.sum();
+    }
+
+    public long getQueueLength() {
+        return store.size();
+    }
+
+    public int getSegmentCount() {
+        return store.segmentCount();
+    }
+
+    /**
+     * Users admitted who have not left yet, and so are still kept to answer their polls.
+     */
+    public long getAdmittedCount() {
+        return store.admittedCount();
+    }
+
+    void readLockFailed() {
+        readLockFailures.increment();
+    }
+
+    void writeLockFailed() {
+        writeLockFailures.increment();
+    }
+
+    void expired(int count) {
+        expired.add(count);
+    }
+
+    void compacted(int count) {
+        compacted.add(count);
+    }
+
+    void duplicateJoin() {
+        duplicateJoins.increment();
+    }
+}
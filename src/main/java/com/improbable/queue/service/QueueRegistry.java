@@ -0,0 +1,90 @@
+package com.improbable.queue.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Named waiting rooms created and torn down at runtime. Every queue owns its own storage and lock, so
+ * traffic on one never contends with another. The {@link QueueService} bean is the "default" queue.
+ */
+@Service
+public class QueueRegistry {
+
+    public static final String DEFAULT_QUEUE = "default";
+
+    private static final Pattern QUEUE_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    @Autowired
+    private QueueService defaultQueue;
+
+    @Autowired
+    private IdentifierService identifierService;
+
+    @Value("${queue.store:object}")
+    private String storeType;
+
+    @Value("${queue.position-cache.max-staleness-ms:0}")
+    private long positionCacheStalenessMillis;
+
+    @Value("${queue.heartbeat.ttl-ms:0}")
+    private long heartbeatTtlMillis;
+
+    private final Map<String, QueueService> queues = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        queues.put(DEFAULT_QUEUE, defaultQueue);
+    }
+
+    public static boolean isValidName(String name) {
+        return name != null && QUEUE_NAME.matcher(name).matches();
+    }
+
+    /**
+     * @return the queue, or null when no queue has that name
+     */
+    public QueueService get(String name) {
+        return queues.get(name);
+    }
+
+    /**
+     * @return whether the queue was created, false when one with that name already exists
+     */
+    public boolean create(String name) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("invalid queue name " + name);
+        }
+        if (queues.containsKey(name)) {
+            return false;
+        }
+        return queues.putIfAbsent(name, new QueueService(name, identifierService, storeType, positionCacheStalenessMillis, heartbeatTtlMillis)) == null;
+    }
+
+    /**
+     * Drops the queue and everyone in it. The default queue cannot be deleted.
+     */
+    public boolean delete(String name) {
+        if (DEFAULT_QUEUE.equals(name)) {
+            return false;
+        }
+        QueueService queue = queues.remove(name);
+        if (queue == null) {
+            return false;
+        }
+        queue.clear();
+        queue.close();
+        return true;
+    }
+
+    public Set<String> names() {
+        return new TreeSet<>(queues.keySet());
+    }
+}
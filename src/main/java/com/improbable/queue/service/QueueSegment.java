@@ -0,0 +1,210 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.index.FenwickTree;
+import com.improbable.queue.model.UserStub;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-capacity block of the queue. Users keep the slot their ticket maps to; removed slots are
+ * marked rather than shifted so the slots of the remaining users never move.
+ * <p>
+ * Once every slot has been filled, {@link #compact} can rewrite a segment that is mostly tombstones into
+ * arrays holding only its live users, with a sorted table mapping their slots to array positions.
+ */
+class QueueSegment {
+
+    private static final UserStub REMOVED = UserStub.builder().build();
+
+    private final int capacity;
+    private final AtomicInteger filled = new AtomicInteger();
+    private volatile Layout layout;
+    //    an array position in the current layout
+    private volatile int head;
+
+    private static final class Layout {
+        //    slot of each array position, or null while every slot has its own position
+        final int[] slots;
+        final AtomicReferenceArray<UserStub> users;
+        final FenwickTree liveUsers;
+
+        Layout(int[] slots, int length) {
+            this.slots = slots;
+            this.users = new AtomicReferenceArray<>(length);
+            this.liveUsers = new FenwickTree(length);
+        }
+
+        int positionOf(int slot) {
+            return slots == null ? slot : Arrays.binarySearch(slots, slot);
+        }
+
+        int slotAt(int position) {
+            return slots == null ? position : slots[position];
+        }
+
+        /**
+         * @return how many array positions hold slots below {@code slot}
+         */
+        int positionsBefore(int slot) {
+            if (slots == null) {
+                return slot;
+            }
+            int position = Arrays.binarySearch(slots, slot);
+            return position < 0 ? -position - 1 : position;
+        }
+    }
+
+    QueueSegment(int capacity) {
+        this.capacity = capacity;
+        this.layout = new Layout(null, capacity);
+    }
+
+    void set(int slot, UserStub userStub) {
+        //    only full segments are compacted, so a slot being set always has its own position
+        Layout current = layout;
+        current.users.set(slot, userStub);
+        current.liveUsers.add(slot, 1);
+        filled.incrementAndGet();
+    }
+
+    boolean remove(int slot) {
+        Layout current = layout;
+        int position = current.positionOf(slot);
+        if (position < 0) {
+            return false;
+        }
+        UserStub userStub = current.users.get(position);
+        if (userStub == null || userStub == REMOVED || !current.users.compareAndSet(position, userStub, REMOVED)) {
+            return false;
+        }
+        current.liveUsers.add(position, -1);
+        return true;
+    }
+
+    /**
+     * Moves up to {@code count} users from the front of the segment into {@code drained}, stopping early
+     * at a slot whose join is still in flight.
+     */
+    int drainTo(List<UserStub> drained, int count) {
+        Layout current = layout;
+        int taken = 0;
+        int position = head;
+        while (taken < count && position < current.users.length()) {
+            UserStub userStub = current.users.get(position);
+            if (userStub == null) {
+                break;
+            }
+            if (userStub != REMOVED && current.users.compareAndSet(position, userStub, REMOVED)) {
+                current.liveUsers.add(position, -1);
+                drained.add(userStub);
+                taken++;
+            }
+            position++;
+        }
+        head = position;
+        return taken;
+    }
+
+    void forEachLive(QueueStore.TicketVisitor visitor, long firstTicket) {
+        //    read the layout before head: compaction resets head before publishing its layout
+        Layout current = layout;
+        for (int position = Math.min(head, current.users.length()); position < current.users.length(); position++) {
+            UserStub userStub = current.users.get(position);
+            if (userStub != null && userStub != REMOVED) {
+                visitor.visit(firstTicket + current.slotAt(position));
+            }
+        }
+    }
+
+    /**
+     * Visits up to {@code limit} live users in slot order, skipping the first {@code rank} of them.
+     *
+     * @return the number of users visited
+     */
+    int forEachLiveFrom(long rank, int limit, Consumer<UserStub> visitor) {
+        Layout current = layout;
+        int visited = 0;
+        for (int position = current.liveUsers.indexOf(rank); position < current.users.length() && visited < limit; position++) {
+            UserStub userStub = current.users.get(position);
+            if (userStub != null && userStub != REMOVED) {
+                visitor.accept(userStub);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    boolean isDrained() {
+        return head == layout.users.length();
+    }
+
+    int countBefore(int slot) {
+        Layout current = layout;
+        return (int) current.liveUsers.prefixSum(current.positionsBefore(slot));
+    }
+
+    UserStub peek() {
+        Layout current = layout;
+        int position = head;
+        //    only skip removed slots for good; an empty slot may belong to a join still in flight
+        while (position < current.users.length() && current.users.get(position) == REMOVED) {
+            position++;
+        }
+        head = position;
+        for (; position < current.users.length(); position++) {
+            UserStub userStub = current.users.get(position);
+            if (userStub != null && userStub != REMOVED) {
+                return userStub;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return (int) layout.liveUsers.total();
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return whether every slot has been filled and at least {@code threshold} of the positions from the
+     * head on are tombstones
+     */
+    boolean shouldCompact(double threshold) {
+        if (filled.get() < capacity) {
+            return false;
+        }
+        int held = layout.users.length() - head;
+        int tombstones = held - size();
+        return tombstones > 0 && tombstones >= threshold * held;
+    }
+
+    /**
+     * Drops every tombstone, keeping the live users in slot order. Callers must hold off everything but
+     * joins, which never reach a segment whose slots are all filled.
+     */
+    void compact() {
+        Layout current = layout;
+        int live = size();
+        int[] slots = new int[live];
+        Layout compacted = new Layout(slots, live);
+        int next = 0;
+        for (int position = head; position < current.users.length() && next < live; position++) {
+            UserStub userStub = current.users.get(position);
+            if (userStub != null && userStub != REMOVED) {
+                slots[next] = current.slotAt(position);
+                compacted.users.set(next, userStub);
+                compacted.liveUsers.add(next, 1);
+                next++;
+            }
+        }
+        head = 0;
+        layout = compacted;
+    }
+}
@@ -1,13 +1,16 @@
 package com.improbable.queue.service;
 
+import com.improbable.queue.model.QueueEntry;
+import com.improbable.queue.model.QueueStatus;
 import com.improbable.queue.model.UserStub;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Service
@@ -17,184 +20,584 @@ public class QueueService {
     private ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
     private ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
 
-    private static int MIN_QUEUE_INDEX = 0;
-    private static int MAX_QUEUE_INDEX = 0;
     private static final int MAX_SUB_QUEUE_SIZE = 1000;
-    private static final Map<Integer, ConcurrentLinkedQueue<UserStub>> QUEUES = new ConcurrentHashMap<>();
-    private static final Map<String, UserStub> IDENTIFIER_LOOKUP_MAP = new ConcurrentHashMap<>();
-    private static final Map<String, Integer> IDENTIFIER_QUEUE_INDEX_LOOKUP_MAP = new ConcurrentHashMap<>();
+
+    public static final long NOT_FOUND = QueueStore.UNKNOWN;
+    public static final long ADMITTED = QueueStore.ADMITTED;
+
+    private final String name;
+    private final IdentifierService identifierService;
+    private final QueueStore store;
+    private final QueueMetrics metrics;
+    private final PositionCache positionCache;
+    private final HeartbeatWheel heartbeats;
+    private final IdempotencyIndex idempotencyKeys = new IdempotencyIndex();
+
+    private final List<QueueListener> listeners = new CopyOnWriteArrayList<>();
+    //    bumped by every admission, leave, expiry and replacement, so it names the set of positions a poll saw
+    private final AtomicLong epoch = new AtomicLong();
 
     @Autowired
-    private IdentifierService identifierService;
+    public QueueService(IdentifierService identifierService, @Value("${queue.store:object}") String storeType,
+                        @Value("${queue.position-cache.max-staleness-ms:0}") long positionCacheStalenessMillis,
+                        @Value("${queue.heartbeat.ttl-ms:0}") long heartbeatTtlMillis) {
+        this(QueueRegistry.DEFAULT_QUEUE, identifierService, storeType, positionCacheStalenessMillis, heartbeatTtlMillis);
+    }
+
+    public QueueService(IdentifierService identifierService, String storeType) {
+        this(QueueRegistry.DEFAULT_QUEUE, identifierService, storeType, 0);
+    }
+
+    /**
+     * @param positionCacheStalenessMillis when positive, positions are served from a {@link PositionCache}
+     *                                     that may lag leaves by up to this long
+     */
+    public QueueService(String name, IdentifierService identifierService, String storeType, long positionCacheStalenessMillis) {
+        this(name, identifierService, storeType, positionCacheStalenessMillis, 0);
+    }
+
+    /**
+     * @param heartbeatTtlMillis when positive, users neither joining nor sending a {@link #heartbeat} for this
+     *                           long are removed as if they had left
+     */
+    public QueueService(String name, IdentifierService identifierService, String storeType, long positionCacheStalenessMillis,
+                        long heartbeatTtlMillis) {
+        this.name = name;
+        this.identifierService = identifierService;
+        if ("primitive".equals(storeType)) {
+            store = new PrimitiveQueueStore(MAX_SUB_QUEUE_SIZE);
+        } else if ("object".equals(storeType)) {
+            store = new ObjectQueueStore(MAX_SUB_QUEUE_SIZE);
+        } else {
+            throw new IllegalArgumentException("unknown queue.store " + storeType);
+        }
+        this.metrics = new QueueMetrics(store);
+        this.positionCache = positionCacheStalenessMillis > 0 ? new PositionCache(store, positionCacheStalenessMillis) : null;
+        this.heartbeats = heartbeatTtlMillis > 0 ? new HeartbeatWheel(heartbeatTtlMillis, this::expire) : null;
+    }
 
-    @PostConstruct
-    private void init() {
-        QUEUES.put(MIN_QUEUE_INDEX, new ConcurrentLinkedQueue<>());
+    public String getName() {
+        return name;
     }
 
     public String join(UserStub userStub) {
+        long start = System.nanoTime();
+        userStub.setIdentifier(identifierService.generateIdentifier());
+        //    lock-free: the ticket taken by the queue decides the user's slot, so joins never wait or fail
+        store.add(userStub);
+        return joined(userStub, start);
+    }
+
+    /**
+     * Joins the user unless someone already joined under {@code idempotencyKey} and has not left since, in which
+     * case nothing is added and that user's identifier is returned, so a retried join cannot queue a user twice.
+     * Keys are not journaled: after a restart, a retry of a join made before it joins again.
+     *
+     * @param idempotencyKey may be null, to always join
+     */
+    public String join(UserStub userStub, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return join(userStub);
+        }
+        long start = System.nanoTime();
+        boolean[] added = new boolean[1];
+        String identifier = idempotencyKeys.joinOnce(idempotencyKey, () -> {
+            userStub.setIdentifier(identifierService.generateIdentifier());
+            store.add(userStub);
+            added[0] = true;
+            return userStub.getIdentifier();
+        });
+        if (!added[0]) {
+            metrics.duplicateJoin();
+            heartbeat(identifier);
+            return identifier;
+        }
+        return joined(userStub, start);
+    }
+
+    /**
+     * Joins a user whose identifier the caller already chose. {@code onTicket} hears the user's ticket while
+     * {@code order} is held and before any listener hears of the join, so callers sharing {@code order} see
+     * tickets in increasing order.
+     */
+    String joinAs(UserStub userStub, Object order, QueueStore.TicketVisitor onTicket) {
+        long start = System.nanoTime();
+        synchronized (order) {
+            store.add(userStub);
+            onTicket.visit(store.ticketOf(userStub.getIdentifier()));
+        }
+        return joined(userStub, start);
+    }
+
+    private String joined(UserStub userStub, long start) {
+        String identifier = userStub.getIdentifier();
+        if (heartbeats != null) {
+            heartbeats.touch(identifier);
+        }
+        for (QueueListener listener : listeners) {
+            listener.onJoin(userStub);
+        }
+        metrics.getJoin().record(System.nanoTime() - start);
+        return identifier;
+    }
+
+    /**
+     * Joins every user in order as one contiguous block of the queue, with one pass over the storage.
+     *
+     * @return the identifiers, in the same order as the users
+     */
+    public List<String> joinAll(List<UserStub> userStubs) {
+        long start = System.nanoTime();
+        List<String> identifiers = new ArrayList<>(userStubs.size());
+        for (UserStub userStub : userStubs) {
+            String identifier = identifierService.generateIdentifier();
+            userStub.setIdentifier(identifier);
+            identifiers.add(identifier);
+        }
+        store.addAll(userStubs);
+        if (heartbeats != null) {
+            for (String identifier : identifiers) {
+                heartbeats.touch(identifier);
+            }
+        }
+        for (QueueListener listener : listeners) {
+            listener.onJoinAll(userStubs);
+        }
+        metrics.getJoinBatch().record(System.nanoTime() - start);
+        return identifiers;
+    }
+
+    /**
+     * Replaces the queue's contents with {@code users} in order, the first {@code admittedCount} of them
+     * admitted, without notifying listeners. Used when recovering state at startup.
+     */
+    void restore(List<UserStub> users, int admittedCount) {
+        writeLock.lock();
         try {
-            if (writeLock.tryLock()) {
-                String identifier = identifierService.generateIdentifier();
-                userStub.setIdentifier(identifier);
-
-                ConcurrentLinkedQueue<UserStub> maxQueue = QUEUES.get(MAX_QUEUE_INDEX);
-                if (maxQueue.size() >= MAX_SUB_QUEUE_SIZE) {
-                    MAX_QUEUE_INDEX++;
-                    ConcurrentLinkedQueue<UserStub> newQueue = new ConcurrentLinkedQueue<>();
-                    QUEUES.put(MAX_QUEUE_INDEX, newQueue);
-                    maxQueue = newQueue;
+            beginChange();
+            store.clear();
+            for (UserStub userStub : users) {
+                store.add(userStub);
+            }
+            store.admit(admittedCount);
+            endChange(0, 0, true);
+            idempotencyKeys.clear();
+            if (heartbeats != null) {
+                //    nobody could poll while the service was down, so every restored user starts a fresh TTL
+                heartbeats.clear();
+                for (UserStub userStub : users) {
+                    heartbeats.touch(userStub.getIdentifier());
                 }
-                userStub.setQueueIndex(MAX_QUEUE_INDEX);
-                maxQueue.add(userStub);
-
-                IDENTIFIER_LOOKUP_MAP.put(identifier, userStub);
-                IDENTIFIER_QUEUE_INDEX_LOOKUP_MAP.put(identifier, MAX_QUEUE_INDEX);
-                return identifier;
             }
         } finally {
-            if (writeLock.isHeldByCurrentThread()) {
-                writeLock.unlock();
-            }
+            writeLock.unlock();
         }
-        throw new RuntimeException("please retry later");
+    }
+
+    /**
+     * Visits every known user without taking the lock, see {@link QueueStore#forEach}.
+     */
+    void forEachUser(QueueStore.UserVisitor visitor) {
+        store.forEach(visitor);
+    }
+
+    public void addListener(QueueListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(QueueListener listener) {
+        listeners.remove(listener);
     }
 
     public boolean checkExists(String identifier) {
+        if (readLock.tryLock()) {
+            try {
+                return store.contains(identifier);
+            } finally {
+                readLock.unlock();
+            }
+        }
+        metrics.readLockFailed();
+        throw new QueueBusyException();
+    }
+
+    public int getPositionInQueue(String identifier) {
+        long start = System.nanoTime();
         try {
+            if (positionCache != null) {
+                //    lock-free: the cache only trails the lock-guarded state by a bounded amount anyway
+                long ticket = store.ticketOf(identifier);
+                long position = ticket < 0 ? -1 : positionCache.positionOf(ticket);
+                if (ticket < 0 || position >= 0) {
+                    return (int) position;
+                }
+            }
             if (readLock.tryLock()) {
-                return IDENTIFIER_LOOKUP_MAP.containsKey(identifier);
+                try {
+                    return (int) store.positionOf(identifier);
+                } finally {
+                    readLock.unlock();
+                }
             }
+            metrics.readLockFailed();
+            throw new QueueBusyException();
         } finally {
-            readLock.unlock();
+            metrics.getPosition().record(System.nanoTime() - start);
         }
-        throw new RuntimeException("please retry later");
     }
 
-    public int getPositionInQueue(String identifier) {
+    /**
+     * Resolves the identifier once, under one read lock, so whether the user is known, admitted or waiting and
+     * where all come from the same view of the queue. A waiting user's position comes from the position cache
+     * when it can answer.
+     */
+    public QueueStatus poll(String identifier) {
+        long start = System.nanoTime();
         try {
             if (readLock.tryLock()) {
-                if (IDENTIFIER_QUEUE_INDEX_LOOKUP_MAP.containsKey(identifier)) {
-                    int queueIndex = IDENTIFIER_QUEUE_INDEX_LOOKUP_MAP.get(identifier);
-                    ConcurrentLinkedQueue<UserStub> identifierQueue = QUEUES.get(queueIndex);
-                    int positionInQueue = 0;
-                    for (UserStub userStub : identifierQueue) {
-                        if (userStub.getIdentifier().equals(identifier)) {
-                            break;
-                        }
-                        positionInQueue++;
-                    }
-                    for (int i = MIN_QUEUE_INDEX; i <= queueIndex; i++) {
-                        if (i == queueIndex) {
-                            continue;
-                        }
-                        positionInQueue += QUEUES.get(i).size();
+                try {
+                    //    read before the lookup: every change up to this epoch is then visible to it
+                    long current = epoch.get();
+                    long status = store.statusOf(identifier, positionCache);
+                    if (status == NOT_FOUND) {
+                        return QueueStatus.notFound(current);
                     }
-                    return positionInQueue;
+                    return status == ADMITTED ? QueueStatus.admitted(current) : QueueStatus.waiting(status, current);
+                } finally {
+                    readLock.unlock();
                 }
-                return -1;
             }
+            metrics.readLockFailed();
+            throw new QueueBusyException();
         } finally {
-            readLock.unlock();
+            metrics.getPosition().record(System.nanoTime() - start);
         }
-        throw new RuntimeException("please retry later");
-
     }
 
-    public boolean isIdentifierAdmittable(String identifier) {
+    /**
+     * Looks many identifiers up against one consistent view of the queue, taking the read lock once.
+     *
+     * @return for each identifier its position, {@link #ADMITTED} or {@link #NOT_FOUND}
+     */
+    public long[] pollAll(List<String> identifiers) {
+        long start = System.nanoTime();
         try {
             if (readLock.tryLock()) {
-                return IDENTIFIER_LOOKUP_MAP.getOrDefault(identifier, UserStub.builder().isAdmittable(false).build()).isAdmittable();
+                try {
+                    long[] statuses = new long[identifiers.size()];
+                    store.statusOf(identifiers, statuses);
+                    return statuses;
+                } finally {
+                    readLock.unlock();
+                }
             }
+            metrics.readLockFailed();
+            throw new QueueBusyException();
         } finally {
-            readLock.unlock();
+            metrics.getPollBatch().record(System.nanoTime() - start);
         }
-        throw new RuntimeException("please retry later");
     }
 
-    public boolean removeIdentifier(String identifier) {
+    /**
+     * Like {@link #pollAll(List)} for the first {@code count} identifiers, each given as its two halves, filling
+     * {@code statuses}. The primitive store answers without building a string per identifier.
+     */
+    public void pollAll(long[] mostSignificantBits, long[] leastSignificantBits, int count, long[] statuses) {
+        long start = System.nanoTime();
         try {
-            if (writeLock.tryLock()) {
-                int position = getPositionInQueue(identifier);
-                if (position < 0) {
-                    return false;
-                }
-                ConcurrentLinkedQueue<UserStub> identifierQueue = QUEUES.get(IDENTIFIER_QUEUE_INDEX_LOOKUP_MAP.get(identifier));
-                UserStub userStubToDelete = null;
-                for (UserStub userStub : identifierQueue) {
-                    if (userStub.getIdentifier().equals(identifier)) {
-                        userStubToDelete = userStub;
-                        break;
-                    }
+            if (readLock.tryLock()) {
+                try {
+                    store.statusOf(mostSignificantBits, leastSignificantBits, count, statuses);
+                    return;
+                } finally {
+                    readLock.unlock();
                 }
-                identifierQueue.remove(userStubToDelete);
-                IDENTIFIER_LOOKUP_MAP.remove(identifier);
-                IDENTIFIER_QUEUE_INDEX_LOOKUP_MAP.remove(identifier);
-                return true;
             }
+            metrics.readLockFailed();
+            throw new QueueBusyException();
         } finally {
-            if (writeLock.isHeldByCurrentThread()) {
-                writeLock.unlock();
+            metrics.getPollBatch().record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the ticket of a waiting or admitted user, or -1 when the identifier is unknown
+     */
+    long ticketOf(String identifier) {
+        return store.ticketOf(identifier);
+    }
+
+    /**
+     * @return the number of waiting users holding a ticket below {@code ticket}
+     */
+    long waitingBefore(long ticket) {
+        if (readLock.tryLock()) {
+            try {
+                return store.waitingBefore(ticket);
+            } finally {
+                readLock.unlock();
             }
         }
-        return false;
+        metrics.readLockFailed();
+        throw new QueueBusyException();
     }
 
-    public boolean isQueueEmpty() {
+    public boolean isIdentifierAdmittable(String identifier) {
+        if (readLock.tryLock()) {
+            try {
+                return store.isAdmitted(identifier);
+            } finally {
+                readLock.unlock();
+            }
+        }
+        metrics.readLockFailed();
+        throw new QueueBusyException();
+    }
+
+    /**
+     * Marks the user's slot as left. Leaves share the read lock, so they run alongside each other and polls
+     * and only wait for admissions, clears and compactions.
+     */
+    public boolean removeIdentifier(String identifier) {
+        long start = System.nanoTime();
         try {
             if (readLock.tryLock()) {
-                for (int i = MIN_QUEUE_INDEX; i <= MAX_QUEUE_INDEX; i++) {
-                    if (!QUEUES.get(i).isEmpty()) {
+                try {
+                    if (!store.remove(identifier)) {
                         return false;
                     }
+                    if (positionCache != null) {
+                        positionCache.left();
+                    }
+                    epoch.incrementAndGet();
+                    idempotencyKeys.forget(identifier);
+                    if (heartbeats != null) {
+                        heartbeats.forget(identifier);
+                    }
+                    for (QueueListener listener : listeners) {
+                        listener.onLeave(identifier);
+                    }
+                    return true;
+                } finally {
+                    readLock.unlock();
                 }
-                return true;
             }
+            metrics.readLockFailed();
+            throw new QueueBusyException();
         } finally {
-            readLock.unlock();
+            metrics.getRemove().record(System.nanoTime() - start);
         }
-        throw new RuntimeException("please retry later");
     }
 
-    public UserStub getFirst() {
+    /**
+     * Records that the user is still there, pushing back their expiry. Does nothing unless
+     * {@code queue.heartbeat.ttl-ms} is set.
+     */
+    public void heartbeat(String identifier) {
+        if (heartbeats != null) {
+            heartbeats.touch(identifier);
+        }
+    }
+
+    /**
+     * Like {@link #heartbeat(String)} for an identifier given as its two halves, only formatted when heartbeats
+     * are on.
+     */
+    public void heartbeat(long mostSignificantBits, long leastSignificantBits) {
+        if (heartbeats != null) {
+            heartbeats.touch(UuidCodec.format(mostSignificantBits, leastSignificantBits));
+        }
+    }
+
+    /**
+     * Removes users whose heartbeat lapsed, in one pass under the write lock. Unlike requests, the expiry
+     * thread can afford to wait for the lock, so it does.
+     */
+    void expire(List<String> identifiers) {
+        List<String> removed = new ArrayList<>(identifiers.size());
+        writeLock.lock();
         try {
-            if (readLock.tryLock()) {
-                assert QUEUES.get(MIN_QUEUE_INDEX).size() > 0;
-                return QUEUES.get(MIN_QUEUE_INDEX).peek();
+            beginChange();
+            for (String identifier : identifiers) {
+                if (store.remove(identifier)) {
+                    idempotencyKeys.forget(identifier);
+                    removed.add(identifier);
+                }
+            }
+            endChange(0, removed.size(), false);
+            for (String identifier : removed) {
+                for (QueueListener listener : listeners) {
+                    listener.onLeave(identifier);
+                }
             }
         } finally {
-            readLock.unlock();
+            writeLock.unlock();
         }
-        throw new RuntimeException("please retry later");
+        metrics.expired(removed.size());
     }
 
-    public void clear() {
+    /**
+     * Admits the next {@code count} waiting users in queue order. Admitted users leave the queue, so they
+     * no longer count towards anyone's position, but stay known until they leave so polls see the admission.
+     */
+    public List<UserStub> admit(int count) {
+        long start = System.nanoTime();
         try {
             if (writeLock.tryLock()) {
-                QUEUES.clear();
-                MIN_QUEUE_INDEX = 0;
-                MAX_QUEUE_INDEX = 0;
-                QUEUES.put(MIN_QUEUE_INDEX, new ConcurrentLinkedQueue<>());
+                beginChange();
+                List<UserStub> admitted = store.admit(count);
+                endChange(admitted.size(), 0, false);
+                if (!admitted.isEmpty()) {
+                    for (QueueListener listener : listeners) {
+                        listener.onAdmit(admitted);
+                    }
+                }
+                return admitted;
             }
+            metrics.writeLockFailed();
         } finally {
             if (writeLock.isHeldByCurrentThread()) {
                 writeLock.unlock();
             }
+            metrics.getAdmit().record(System.nanoTime() - start);
         }
+        throw new QueueBusyException();
     }
 
-    public long size() {
+    /**
+     * Rewrites up to {@code maxSegments} segments in which at least {@code threshold} of the slots still held
+     * were left, so mass leaves stop costing memory and scans. Skipped when the write lock is busy.
+     *
+     * @return the number of segments compacted
+     */
+    int compact(double threshold, int maxSegments) {
+        if (!writeLock.tryLock()) {
+            return 0;
+        }
         try {
-            long size = 0;
-            if (readLock.tryLock()) {
-                for (int i = MIN_QUEUE_INDEX; i <= MAX_QUEUE_INDEX; i++) {
-                    size += QUEUES.get(i).size();
+            beginChange();
+            int compacted = store.compact(threshold, maxSegments);
+            endChange(0, 0, false);
+            metrics.compacted(compacted);
+            return compacted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isQueueEmpty() {
+        if (readLock.tryLock()) {
+            try {
+                return store.size() == 0;
+            } finally {
+                readLock.unlock();
+            }
+        }
+        metrics.readLockFailed();
+        throw new QueueBusyException();
+    }
+
+    public UserStub getFirst() {
+        if (readLock.tryLock()) {
+            try {
+                return store.peek();
+            } finally {
+                readLock.unlock();
+            }
+        }
+        metrics.readLockFailed();
+        throw new QueueBusyException();
+    }
+
+    /**
+     * Lists up to {@code limit} waiting users in queue order, starting at position {@code from}. Takes no lock,
+     * so joins and admissions carry on meanwhile and the page is weakly consistent: positions are counted
+     * from {@code from} in the order the scan met the users.
+     */
+    public List<QueueEntry> range(long from, int limit) {
+        List<QueueEntry> entries = new ArrayList<>(limit);
+        store.forEachWaitingFrom(from, limit, (ticket, mostSignificantBits, leastSignificantBits, admitted, username) ->
+                entries.add(QueueEntry.builder()
+                        .position(from + entries.size())
+                        .identifier(UuidCodec.format(mostSignificantBits, leastSignificantBits))
+                        .username(username)
+                        .ticket(ticket)
+                        .build()));
+        return entries;
+    }
+
+    public void clear() {
+        try {
+            if (writeLock.tryLock()) {
+                beginChange();
+                store.clear();
+                endChange(0, 0, true);
+                idempotencyKeys.clear();
+                if (heartbeats != null) {
+                    heartbeats.clear();
+                }
+                for (QueueListener listener : listeners) {
+                    listener.onClear();
                 }
-                return size;
+            } else {
+                metrics.writeLockFailed();
             }
         } finally {
-            readLock.unlock();
+            if (writeLock.isHeldByCurrentThread()) {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves whenever a waiting user's position may have: on admissions, leaves, expiries and clears, the
+     * same epoch {@link #poll} reports.
+     */
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    public long size() {
+        if (readLock.tryLock()) {
+            try {
+                return store.size();
+            } finally {
+                readLock.unlock();
+            }
+        }
+        metrics.readLockFailed();
+        throw new QueueBusyException();
+    }
+
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the queue's background work. Used when a named queue is deleted.
+     */
+    public void close() {
+        if (positionCache != null) {
+            positionCache.close();
+        }
+        if (heartbeats != null) {
+            heartbeats.close();
+        }
+    }
+
+    private void beginChange() {
+        if (positionCache != null) {
+            positionCache.beginChange();
+        }
+    }
+
+    private void endChange(int admittedCount, int leaveCount, boolean replaced) {
+        if (positionCache != null) {
+            positionCache.endChange(admittedCount, leaveCount, replaced);
+        }
+        //    compactions move nobody, so they leave the epoch alone
+        if (admittedCount > 0 || leaveCount > 0 || replaced) {
+            epoch.incrementAndGet();
         }
-        throw new RuntimeException("please retry later");
     }
 }
@@ -0,0 +1,210 @@
+package com.improbable.queue.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compact image of every user known at one journal position, so startup only has to replay the journal
+ * written after it. A snapshot is written to a temporary file and renamed once forced to disk, and its
+ * trailer repeats the header magic, so a file under its final name is always complete.
+ * <p>
+ * Users are visited while the queue keeps changing. Everything the journal holds before the snapshot's
+ * position is already visible to the visit; records after it are replayed on top, which is why replaying
+ * a join the snapshot already holds has to be harmless.
+ */
+final class QueueSnapshot {
+
+    private static final long MAGIC = 0x51534E4150534E31L;
+    private static final int VERSION = 1;
+    private static final byte USER = 1;
+    private static final byte END = 0;
+    private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 8;
+    private static final int TRAILER_SIZE = 1 + 8 + 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final Pattern FILE_NAME = Pattern.compile("snapshot-(\\d+)-(\\d+)\\.bin");
+
+    private QueueSnapshot() {
+    }
+
+    /**
+     * Writes the users passed to the visitor as the snapshot of {@code generation} at journal {@code position}.
+     *
+     * @return the number of users written
+     */
+    static long write(Path directory, long generation, long position, long lastAdmittedTicket,
+                      Consumer<QueueStore.UserVisitor> users) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(fileName(generation, position));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        long[] count = new long[1];
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putLong(MAGIC).putInt(VERSION).putLong(generation).putLong(position).putLong(lastAdmittedTicket);
+            users.accept((ticket, mostSignificantBits, leastSignificantBits, admitted, username) -> {
+                byte[] name = username == null ? null : username.getBytes(StandardCharsets.UTF_8);
+                int nameLength = name == null ? 0 : Math.min(name.length, Short.MAX_VALUE);
+                ensureRoom(channel, buffer, 1 + 8 + 8 + 8 + 1 + 2 + nameLength);
+                buffer.put(USER).putLong(ticket).putLong(mostSignificantBits).putLong(leastSignificantBits)
+                        .put((byte) (admitted ? 1 : 0)).putShort((short) (name == null ? -1 : nameLength));
+                if (name != null) {
+                    buffer.put(name, 0, nameLength);
+                }
+                count[0]++;
+            });
+            ensureRoom(channel, buffer, TRAILER_SIZE);
+            buffer.put(END).putLong(count[0]).putLong(MAGIC);
+            drain(channel, buffer);
+            channel.force(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        return count[0];
+    }
+
+    /**
+     * @return the newest complete snapshot of {@code generation}, or null if there is none
+     */
+    static Path newest(Path directory, long generation) throws IOException {
+        Path newest = null;
+        long newestPosition = -1;
+        for (Path file : files(directory)) {
+            Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+            if (matcher.matches() && Long.parseLong(matcher.group(1)) == generation
+                    && Long.parseLong(matcher.group(2)) > newestPosition && isComplete(file)) {
+                newest = file;
+                newestPosition = Long.parseLong(matcher.group(2));
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Passes every user in the snapshot to {@code handler} as a join, followed by the admission watermark.
+     *
+     * @return the journal position to replay from
+     */
+    static long read(Path file, QueueJournal.RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+            fill(channel, buffer, HEADER_SIZE);
+            if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a queue snapshot: " + file);
+            }
+            buffer.getLong();
+            long position = buffer.getLong();
+            long lastAdmittedTicket = buffer.getLong();
+            byte[] name = new byte[Short.MAX_VALUE];
+            while (true) {
+                fill(channel, buffer, 1);
+                if (buffer.get() == END) {
+                    break;
+                }
+                fill(channel, buffer, 8 + 8 + 8 + 1 + 2);
+                long ticket = buffer.getLong();
+                long mostSignificantBits = buffer.getLong();
+                long leastSignificantBits = buffer.getLong();
+                boolean admitted = buffer.get() == 1;
+                short nameLength = buffer.getShort();
+                String username = null;
+                if (nameLength >= 0) {
+                    fill(channel, buffer, nameLength);
+                    buffer.get(name, 0, nameLength);
+                    username = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+                }
+                handler.onJoin(ticket, mostSignificantBits, leastSignificantBits, admitted, username);
+            }
+            handler.onAdmit(lastAdmittedTicket);
+            return position;
+        }
+    }
+
+    /**
+     * Deletes every snapshot other than {@code snapshotToKeep}, along with leftover temporary files.
+     */
+    static void deleteOthers(Path directory, Path snapshotToKeep) throws IOException {
+        for (Path file : files(directory)) {
+            String name = file.getFileName().toString();
+            if (name.startsWith("snapshot-") && !file.equals(snapshotToKeep)) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    static String fileName(long generation, long position) {
+        return String.format("snapshot-%d-%d.bin", generation, position);
+    }
+
+    private static boolean isComplete(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE + TRAILER_SIZE) {
+                return false;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            channel.read(trailer, channel.size() - 8);
+            return trailer.getLong(0) == MAGIC;
+        }
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int size) {
+        if (buffer.remaining() < size) {
+            try {
+                drain(channel, buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes sure at least {@code size} unread bytes are in the buffer, which is kept in read mode.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < size) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("truncated queue snapshot");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static List<Path> files(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,134 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+
+import java.util.List;
+
+/**
+ * Storage engine behind {@link QueueService}. Implementations keep users in ticket order, must allow
+ * {@link #add} concurrently with every other operation and {@link #remove} concurrently with itself and the
+ * reads, and leave the locking of the rest to the service.
+ */
+interface QueueStore {
+
+    long UNKNOWN = -1;
+    long ADMITTED = -2;
+
+    interface UserVisitor {
+        void visit(long ticket, long mostSignificantBits, long leastSignificantBits, boolean admitted, String username);
+    }
+
+    interface TicketVisitor {
+        void visit(long ticket);
+    }
+
+    /**
+     * A faster but partial source of positions, such as a {@link PositionCache}.
+     */
+    interface PositionHint {
+        /**
+         * @return the number of waiting users ahead of the ticket, or -1 when the hint cannot answer
+         */
+        long positionOf(long ticket);
+    }
+
+    /**
+     * Appends the user, assigning its ticket, queue index and slot index.
+     */
+    void add(UserStub userStub);
+
+    /**
+     * Appends the users in order under one contiguous block of tickets, so no concurrent join lands
+     * between them.
+     */
+    void addAll(List<UserStub> userStubs);
+
+    boolean contains(String identifier);
+
+    boolean isAdmitted(String identifier);
+
+    /**
+     * @return the ticket of a waiting or admitted user, or -1 when the identifier is unknown
+     */
+    long ticketOf(String identifier);
+
+    /**
+     * @return the number of waiting users ahead of the identifier, or -1 when it is unknown
+     */
+    long positionOf(String identifier);
+
+    /**
+     * @return the number of waiting users whose ticket is below {@code ticket}, whether or not that ticket
+     * was ever taken
+     */
+    long waitingBefore(long ticket);
+
+    /**
+     * Fills {@code statuses} with the position of each identifier, or {@link #ADMITTED} or {@link #UNKNOWN}.
+     * Identifiers in the same segment share one prefix count over the segments ahead of it.
+     */
+    void statusOf(List<String> identifiers, long[] statuses);
+
+    /**
+     * Like {@link #statusOf(List, long[])} for the first {@code count} identifiers, each given as its two
+     * halves, so a caller that holds raw identifiers need not format them for a store that keeps them raw.
+     */
+    void statusOf(long[] mostSignificantBits, long[] leastSignificantBits, int count, long[] statuses);
+
+    /**
+     * Resolves the identifier once and answers its position, or {@link #ADMITTED} or {@link #UNKNOWN}. A
+     * waiting user's position comes from {@code hint} when it can answer, and is counted otherwise.
+     *
+     * @param hint may be null
+     */
+    long statusOf(String identifier, PositionHint hint);
+
+    /**
+     * Marks the user's slot as a tombstone without moving anyone else.
+     */
+    boolean remove(String identifier);
+
+    /**
+     * Takes up to {@code count} waiting users off the head of the queue and marks them admitted.
+     */
+    List<UserStub> admit(int count);
+
+    UserStub peek();
+
+    long size();
+
+    /**
+     * @return how many admitted users have not left yet
+     */
+    long admittedCount();
+
+    int segmentCount();
+
+    /**
+     * Rewrites up to {@code maxSegments} fully joined segments in which at least {@code threshold} of the slots
+     * still held are tombstones, so they keep only their present users. Positions are unchanged.
+     *
+     * @return the number of segments compacted
+     */
+    int compact(double threshold, int maxSegments);
+
+    /**
+     * Visits every user still known, waiting or admitted, in no particular order. Weakly consistent: runs
+     * alongside other operations and may or may not see their effects.
+     */
+    void forEach(UserVisitor visitor);
+
+    /**
+     * Visits the tickets of the waiting users in queue order, weakly consistent like {@link #forEach}.
+     */
+    void forEachWaiting(TicketVisitor visitor);
+
+    /**
+     * Visits up to {@code limit} waiting users in queue order, starting with the one at {@code position}. Seeks
+     * the segment and then the slot through the per-segment counts, so reaching a position deep in the queue
+     * costs no more than reaching the head. Weakly consistent like {@link #forEach}.
+     */
+    void forEachWaitingFrom(long position, int limit, UserVisitor visitor);
+
+    void clear();
+}
@@ -0,0 +1,37 @@
+package com.improbable.queue.service;
+
+import java.security.SecureRandom;
+
+/**
+ * Per-thread {@link SecureRandom} handing out random longs from a pre-filled block, so generating
+ * identifiers neither contends on a shared generator nor pays one native call per identifier.
+ */
+final class RandomBlocks {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private static final ThreadLocal<RandomBlocks> BLOCKS = ThreadLocal.withInitial(RandomBlocks::new);
+
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int position = BLOCK_SIZE;
+
+    private RandomBlocks() {
+    }
+
+    static RandomBlocks current() {
+        return BLOCKS.get();
+    }
+
+    long nextLong() {
+        if (position == BLOCK_SIZE) {
+            random.nextBytes(block);
+            position = 0;
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (block[position++] & 0xFF);
+        }
+        return value;
+    }
+}
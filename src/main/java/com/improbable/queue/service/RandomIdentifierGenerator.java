@@ -0,0 +1,15 @@
+package com.improbable.queue.service;
+
+/**
+ * Version 4 UUIDs with 122 random bits, the same format {@link java.util.UUID#randomUUID} produces.
+ */
+class RandomIdentifierGenerator implements IdentifierGenerator {
+
+    @Override
+    public String generate() {
+        RandomBlocks random = RandomBlocks.current();
+        long mostSignificantBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSignificantBits = (random.nextLong() & ~0xC000000000000000L) | 0x8000000000000000L;
+        return UuidCodec.format(mostSignificantBits, leastSignificantBits);
+    }
+}
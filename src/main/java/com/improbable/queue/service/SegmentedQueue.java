@@ -0,0 +1,209 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.index.FenwickTree;
+import com.improbable.queue.model.UserStub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Queue of users ordered by a monotonic ticket. A ticket fixes the segment and slot a user is
+ * published to, so joining threads never coordinate beyond one atomic increment.
+ */
+class SegmentedQueue {
+
+    private final int segmentSize;
+    private final AtomicLong nextTicket = new AtomicLong();
+    private final Map<Integer, QueueSegment> segments = new ConcurrentHashMap<>();
+    //    live users per segment, so a position is a prefix sum over segments plus an offset within one segment
+    private final FenwickTree segmentSizes = new FenwickTree();
+    private volatile int headIndex;
+
+    SegmentedQueue(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    long add(UserStub userStub) {
+        long ticket = nextTicket.getAndIncrement();
+        int queueIndex = (int) (ticket / segmentSize);
+        int slotIndex = (int) (ticket % segmentSize);
+        userStub.setTicket(ticket);
+        userStub.setQueueIndex(queueIndex);
+        userStub.setSlotIndex(slotIndex);
+        segment(queueIndex).set(slotIndex, userStub);
+        segmentSizes.add(queueIndex, 1);
+        return ticket;
+    }
+
+    /**
+     * Appends the users in order under one contiguous block of tickets, taken with a single increment.
+     */
+    void addAll(List<UserStub> userStubs) {
+        long ticket = nextTicket.getAndAdd(userStubs.size());
+        int next = 0;
+        while (next < userStubs.size()) {
+            int queueIndex = (int) (ticket / segmentSize);
+            QueueSegment segment = segment(queueIndex);
+            int published = 0;
+            do {
+                int slotIndex = (int) (ticket % segmentSize);
+                UserStub userStub = userStubs.get(next++);
+                userStub.setTicket(ticket++);
+                userStub.setQueueIndex(queueIndex);
+                userStub.setSlotIndex(slotIndex);
+                segment.set(slotIndex, userStub);
+                published++;
+            } while (next < userStubs.size() && ticket % segmentSize != 0);
+            segmentSizes.add(queueIndex, published);
+        }
+    }
+
+    boolean remove(UserStub userStub) {
+        int queueIndex = userStub.getQueueIndex();
+        QueueSegment segment = segments.get(queueIndex);
+        if (segment != null && segment.remove(userStub.getSlotIndex())) {
+            segmentSizes.add(queueIndex, -1);
+            return true;
+        }
+        return false;
+    }
+
+    long positionOf(UserStub userStub) {
+        return usersInSegmentsBefore(userStub.getQueueIndex()) + usersAheadInSegment(userStub);
+    }
+
+    long waitingBefore(long ticket) {
+        int queueIndex = (int) (ticket / segmentSize);
+        QueueSegment segment = segments.get(queueIndex);
+        long usersInSegmentsBefore = usersInSegmentsBefore(queueIndex);
+        return segment == null ? usersInSegmentsBefore : usersInSegmentsBefore + segment.countBefore((int) (ticket % segmentSize));
+    }
+
+    long usersInSegmentsBefore(int queueIndex) {
+        return segmentSizes.prefixSum(queueIndex);
+    }
+
+    long usersAheadInSegment(UserStub userStub) {
+        QueueSegment segment = segments.get(userStub.getQueueIndex());
+        return segment == null ? 0 : segment.countBefore(userStub.getSlotIndex());
+    }
+
+    /**
+     * Removes up to {@code count} users from the head in ticket order and drops every segment that has
+     * been drained completely. Callers must not poll concurrently.
+     */
+    List<UserStub> poll(int count) {
+        List<UserStub> polled = new ArrayList<>(Math.min(count, segmentSize));
+        int tailIndex = tailIndex();
+        while (polled.size() < count && headIndex <= tailIndex) {
+            QueueSegment segment = segments.get(headIndex);
+            if (segment == null) {
+                break;
+            }
+            int taken = segment.drainTo(polled, count - polled.size());
+            if (taken > 0) {
+                segmentSizes.add(headIndex, -taken);
+            }
+            if (!segment.isDrained()) {
+                break;
+            }
+            segments.remove(headIndex);
+            headIndex++;
+        }
+        return polled;
+    }
+
+    UserStub peek() {
+        for (int i = headIndex; i <= tailIndex(); i++) {
+            QueueSegment segment = segments.get(i);
+            UserStub first = segment == null ? null : segment.peek();
+            if (first != null) {
+                return first;
+            }
+        }
+        return null;
+    }
+
+    void forEach(QueueStore.TicketVisitor visitor) {
+        for (int i = headIndex; i <= tailIndex(); i++) {
+            QueueSegment segment = segments.get(i);
+            if (segment != null) {
+                segment.forEachLive(visitor, (long) i * segmentSize);
+            }
+        }
+    }
+
+    /**
+     * Visits up to {@code limit} users in queue order, starting with the one at {@code position}.
+     */
+    void forEachFrom(long position, int limit, Consumer<UserStub> visitor) {
+        int queueIndex = segmentSizes.indexOf(position);
+        long rank = position - segmentSizes.prefixSum(queueIndex);
+        int remaining = limit;
+        for (int i = queueIndex; i <= tailIndex() && remaining > 0; i++) {
+            QueueSegment segment = segments.get(i);
+            if (segment != null) {
+                remaining -= segment.forEachLiveFrom(rank, remaining, visitor);
+            }
+            //    every later segment is read from its front
+            rank = 0;
+        }
+    }
+
+    /**
+     * Compacts up to {@code maxSegments} segments in which at least {@code threshold} of the slots still held
+     * are tombstones. Callers must hold off everything but joins.
+     *
+     * @return the number of segments compacted
+     */
+    int compact(double threshold, int maxSegments) {
+        int compacted = 0;
+        for (int i = headIndex; i <= tailIndex() && compacted < maxSegments; i++) {
+            QueueSegment segment = segments.get(i);
+            if (segment != null && segment.shouldCompact(threshold)) {
+                segment.compact();
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    long size() {
+        return segmentSizes.total();
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    void clear() {
+        segments.clear();
+        segmentSizes.clear();
+        nextTicket.set(0);
+        headIndex = 0;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    private int tailIndex() {
+        return (int) ((nextTicket.get() - 1) / segmentSize);
+    }
+
+    private QueueSegment segment(int queueIndex) {
+        QueueSegment segment = segments.get(queueIndex);
+        if (segment == null) {
+            QueueSegment created = new QueueSegment(segmentSize);
+            segment = segments.putIfAbsent(queueIndex, created);
+            if (segment == null) {
+                segment = created;
+            }
+        }
+        return segment;
+    }
+}
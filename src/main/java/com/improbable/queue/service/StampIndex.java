@@ -0,0 +1,155 @@
+package com.improbable.queue.service;
+
+import java.util.Arrays;
+
+/**
+ * Join stamp of every ticket from the first one recorded, for a node of a cluster. Stamps never decrease
+ * with the ticket, so the first ticket past a stamp is a binary search. Tickets nobody recorded, taken by
+ * joins outside the cluster path, inherit the stamp before them; tickets below the first one recorded count
+ * as stamped before everything.
+ * <p>
+ * Once every ticket below some point was admitted, {@link #releaseBelow} lets the whole chunks beneath it go,
+ * so memory follows the users still waiting. Their tickets then count as stamped before everything too,
+ * which nobody waiting can tell apart.
+ * <p>
+ * One writer at a time; readers run alongside it.
+ */
+class StampIndex {
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile long[][] chunks = new long[0][];
+    private volatile long firstTicket;
+    //    one past the last ticket recorded; published after the stamps below it
+    private volatile long endTicket;
+    //    first ticket whose chunk is still held; published before the chunks below it are dropped
+    private volatile long heldTicket;
+    //    asked for on the admitting thread, carried out by the writer
+    private volatile long releaseBelow;
+
+    void record(long ticket, long stamp) {
+        long end = endTicket;
+        if (end == 0 || ticket < end) {
+            //    first record, or the queue's contents were replaced and its tickets started again
+            chunks = new long[0][];
+            firstTicket = ticket;
+            heldTicket = ticket;
+            releaseBelow = 0;
+            end = ticket;
+        }
+        long previous = end == firstTicket ? stamp : stampAt(chunks, end - 1);
+        for (long gap = end; gap < ticket; gap++) {
+            set(gap, previous);
+        }
+        set(ticket, stamp);
+        endTicket = ticket + 1;
+        release();
+    }
+
+    /**
+     * Lets go of the stamps of tickets below {@code ticket}, every one of which was admitted or left. Safe to
+     * call from any thread; the chunks go on the writer's next {@link #record}.
+     */
+    void releaseBelow(long ticket) {
+        releaseBelow = ticket;
+    }
+
+    /**
+     * @return the stamp recorded for the ticket, or {@link Long#MIN_VALUE} when it is below the first one
+     * held
+     */
+    long stampOf(long ticket) {
+        long end = endTicket;
+        long[][] current = chunks;
+        if (ticket < heldTicket || end == 0) {
+            return Long.MIN_VALUE;
+        }
+        return stampAt(current, Math.min(ticket, end - 1));
+    }
+
+    /**
+     * @return the first ticket whose stamp is above {@code stamp}, or at or above it when not
+     * {@code inclusive}
+     */
+    long firstTicketAfter(long stamp, boolean inclusive) {
+        //    read in the reverse of the order written, so every ticket in range has its chunk
+        long end = endTicket;
+        long[][] current = chunks;
+        long low = heldTicket;
+        long high = end;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            long stampAtMiddle = stampAt(current, middle);
+            if (stampAtMiddle < stamp || (inclusive && stampAtMiddle == stamp)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first ticket not yet released, or {@link #endTicket} when every one recorded was
+     */
+    long firstUnreleased() {
+        long end = endTicket;
+        return Math.min(end, Math.max(heldTicket, releaseBelow));
+    }
+
+    /**
+     * @return one past the last ticket recorded
+     */
+    long endTicket() {
+        return endTicket;
+    }
+
+    /**
+     * @return the number of chunks of stamps held
+     */
+    int chunkCount() {
+        long[][] current = chunks;
+        int held = 0;
+        for (long[] chunk : current) {
+            if (chunk != null) {
+                held++;
+            }
+        }
+        return held;
+    }
+
+    private void release() {
+        //    the chunk of the last ticket stays, as the next record may inherit its stamp
+        long below = Math.min(releaseBelow, endTicket - 1);
+        long first = firstTicket;
+        long held = heldTicket;
+        if (below - held < CHUNK_SIZE) {
+            return;
+        }
+        int heldChunk = (int) ((held - first) >>> CHUNK_BITS);
+        int releasedChunk = (int) ((below - first) >>> CHUNK_BITS);
+        long[][] released = chunks.clone();
+        Arrays.fill(released, heldChunk, releasedChunk, null);
+        heldTicket = first + ((long) releasedChunk << CHUNK_BITS);
+        chunks = released;
+    }
+
+    private long stampAt(long[][] current, long ticket) {
+        long offset = ticket - firstTicket;
+        return current[(int) (offset >>> CHUNK_BITS)][(int) (offset & CHUNK_MASK)];
+    }
+
+    private void set(long ticket, long stamp) {
+        long offset = ticket - firstTicket;
+        int chunk = (int) (offset >>> CHUNK_BITS);
+        long[][] current = chunks;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, chunk + 1);
+            current[chunk] = new long[CHUNK_SIZE];
+            chunks = current;
+        }
+        current[chunk][(int) (offset & CHUNK_MASK)] = stamp;
+    }
+}
@@ -0,0 +1,82 @@
+package com.improbable.queue.service;
+
+/**
+ * Another node's waiting users as sampled join stamps, each with how many of that node's users were waiting
+ * up to it, as of one moment. Counts between two samples are interpolated, so a count is off by at most the
+ * users between them, and exact while the node has no more tickets than samples.
+ * <p>
+ * {@code clock} is the node's stamp when the summary was taken: every later join there is stamped above it,
+ * so for stamps below it the summary misses only the leaves and admissions since.
+ */
+class StampSummary {
+
+    private final long clock;
+    private final long receivedMillis;
+    private final long[] stamps;
+    private final long[] counts;
+
+    /**
+     * @param encoded the clock followed by each sample's stamp and count, as {@link #encode} writes them
+     */
+    StampSummary(long[] encoded, long receivedMillis) {
+        this.clock = encoded[0];
+        this.receivedMillis = receivedMillis;
+        int samples = (encoded.length - 1) / 2;
+        stamps = new long[samples];
+        counts = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            stamps[i] = encoded[1 + 2 * i];
+            counts[i] = encoded[2 + 2 * i];
+        }
+    }
+
+    static long[] encode(long clock, long[] stamps, long[] counts, int samples) {
+        long[] encoded = new long[1 + 2 * samples];
+        encoded[0] = clock;
+        for (int i = 0; i < samples; i++) {
+            encoded[1 + 2 * i] = stamps[i];
+            encoded[2 + 2 * i] = counts[i];
+        }
+        return encoded;
+    }
+
+    /**
+     * @return whether the summary, received no earlier than {@code oldestMillis}, knows every user of its
+     * node stamped before {@code stamp}
+     */
+    boolean covers(long stamp, long oldestMillis) {
+        return stamp < clock && receivedMillis >= oldestMillis;
+    }
+
+    /**
+     * @return how many of the node's users wait ahead of one stamped {@code stamp}, counting equal stamps
+     * when {@code inclusive}
+     */
+    long countBefore(long stamp, boolean inclusive) {
+        int low = 0;
+        int high = stamps.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (stamps[middle] < stamp || (inclusive && stamps[middle] == stamp)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        //    low is the first sample after the stamp
+        if (low == 0) {
+            return 0;
+        }
+        long before = counts[low - 1];
+        if (low == stamps.length) {
+            return before;
+        }
+        long between = counts[low] - before;
+        if (between == 0) {
+            return before;
+        }
+        double fraction = (double) (stamp - stamps[low - 1]) / (stamps[low] - stamps[low - 1]);
+        //    the later sample's own user is stamped at or after the stamp, so never ahead of it
+        return before + Math.min(between - 1, (long) (between * fraction));
+    }
+}
@@ -0,0 +1,167 @@
+package com.improbable.queue.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash index from 128-bit identifiers to tickets. Keys are not stored in the table; they
+ * are read back from the user records through {@link Keys}, so every entry costs a single long.
+ */
+class TicketIndex {
+
+    interface Keys {
+        /**
+         * @return whether the ticket still has a record whose bits equal the given ones
+         */
+        boolean matches(long ticket, long mostSignificantBits, long leastSignificantBits);
+
+        long mostSignificantBits(long ticket);
+
+        long leastSignificantBits(long ticket);
+    }
+
+    //    entries hold ticket + 1, so a zeroed table is empty
+    private static final long FREE = 0;
+    private static final long DELETED = -1;
+    private static final int MIN_CAPACITY = 1024;
+
+    private final Keys keys;
+    private final StampedLock resizeLock = new StampedLock();
+    private final AtomicInteger occupied = new AtomicInteger();
+    private final AtomicInteger live = new AtomicInteger();
+    private volatile AtomicLongArray table = new AtomicLongArray(MIN_CAPACITY);
+
+    TicketIndex(Keys keys) {
+        this.keys = keys;
+    }
+
+    void put(long mostSignificantBits, long leastSignificantBits, long ticket) {
+        int occupiedSlots;
+        long stamp = resizeLock.readLock();
+        try {
+            AtomicLongArray current = table;
+            int mask = current.length() - 1;
+            for (int i = hash(mostSignificantBits, leastSignificantBits) & mask; ; i = (i + 1) & mask) {
+                if (current.get(i) == FREE && current.compareAndSet(i, FREE, ticket + 1)) {
+                    break;
+                }
+            }
+            live.incrementAndGet();
+            occupiedSlots = occupied.incrementAndGet();
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+        if (occupiedSlots * 2L > table.length()) {
+            resize();
+        }
+    }
+
+    /**
+     * @return the ticket, or -1 when the identifier is not indexed
+     */
+    long get(long mostSignificantBits, long leastSignificantBits) {
+        long stamp = resizeLock.readLock();
+        try {
+            AtomicLongArray current = table;
+            int slot = find(current, mostSignificantBits, leastSignificantBits);
+            return slot < 0 ? -1 : current.get(slot) - 1;
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the removed ticket, or -1 when the identifier was not indexed
+     */
+    long remove(long mostSignificantBits, long leastSignificantBits) {
+        long stamp = resizeLock.readLock();
+        try {
+            AtomicLongArray current = table;
+            int slot = find(current, mostSignificantBits, leastSignificantBits);
+            if (slot < 0) {
+                return -1;
+            }
+            long entry = current.get(slot);
+            if (entry <= FREE || !current.compareAndSet(slot, entry, DELETED)) {
+                return -1;
+            }
+            live.decrementAndGet();
+            return entry - 1;
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+    }
+
+    int size() {
+        return live.get();
+    }
+
+    long capacity() {
+        return table.length();
+    }
+
+    void clear() {
+        long stamp = resizeLock.writeLock();
+        try {
+            table = new AtomicLongArray(MIN_CAPACITY);
+            occupied.set(0);
+            live.set(0);
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+
+    private int find(AtomicLongArray current, long mostSignificantBits, long leastSignificantBits) {
+        int mask = current.length() - 1;
+        for (int i = hash(mostSignificantBits, leastSignificantBits) & mask; ; i = (i + 1) & mask) {
+            long entry = current.get(i);
+            if (entry == FREE) {
+                return -1;
+            }
+            if (entry != DELETED && keys.matches(entry - 1, mostSignificantBits, leastSignificantBits)) {
+                return i;
+            }
+        }
+    }
+
+    private void resize() {
+        long stamp = resizeLock.writeLock();
+        try {
+            AtomicLongArray current = table;
+            if (occupied.get() * 2L <= current.length()) {
+                return;
+            }
+            //    deleted entries are dropped on rehash, so a table full of leavers shrinks back
+            int capacity = MIN_CAPACITY;
+            while (capacity < live.get() * 3L) {
+                capacity <<= 1;
+            }
+            AtomicLongArray rehashed = new AtomicLongArray(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < current.length(); i++) {
+                long entry = current.get(i);
+                if (entry > FREE) {
+                    long ticket = entry - 1;
+                    int slot = hash(keys.mostSignificantBits(ticket), keys.leastSignificantBits(ticket)) & mask;
+                    while (rehashed.get(slot) != FREE) {
+                        slot = (slot + 1) & mask;
+                    }
+                    rehashed.set(slot, entry);
+                }
+            }
+            table = rehashed;
+            occupied.set(live.get());
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+
+    private static int hash(long mostSignificantBits, long leastSignificantBits) {
+        long h = mostSignificantBits * 0x9E3779B97F4A7C15L ^ leastSignificantBits;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
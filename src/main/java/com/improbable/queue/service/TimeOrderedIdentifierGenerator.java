@@ -0,0 +1,16 @@
+package com.improbable.queue.service;
+
+/**
+ * Version 7 UUIDs: a 48-bit millisecond timestamp followed by 74 random bits, so identifiers sort by the
+ * time they were issued while staying unguessable.
+ */
+class TimeOrderedIdentifierGenerator implements IdentifierGenerator {
+
+    @Override
+    public String generate() {
+        RandomBlocks random = RandomBlocks.current();
+        long mostSignificantBits = (System.currentTimeMillis() << 16) | 0x7000L | (random.nextLong() & 0x0FFFL);
+        long leastSignificantBits = (random.nextLong() & ~0xC000000000000000L) | 0x8000000000000000L;
+        return UuidCodec.format(mostSignificantBits, leastSignificantBits);
+    }
+}
@@ -0,0 +1,59 @@
+package com.improbable.queue.service;
+
+/**
+ * Tokens accrue continuously at {@code ratePerSecond} up to {@code burst}; each admission spends one. A
+ * bucket starts full, so the first tick after the rate is set may admit a whole burst.
+ */
+class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private double ratePerSecond;
+    private long burst;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double ratePerSecond, long burst, long now) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    synchronized double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    synchronized long getBurst() {
+        return burst;
+    }
+
+    /**
+     * Tokens accrued so far are kept at the old rate; a smaller burst discards whatever is above it.
+     */
+    synchronized void update(double ratePerSecond, long burst, long now) {
+        refill(now);
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        tokens = Math.min(tokens, burst);
+    }
+
+    /**
+     * @return whole tokens that can be spent now
+     */
+    synchronized long available(long now) {
+        refill(now);
+        return (long) tokens;
+    }
+
+    synchronized void consume(long count) {
+        tokens = Math.max(0, tokens - count);
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) / NANOS_PER_SECOND * ratePerSecond);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.improbable.queue.service;
+
+import java.util.UUID;
+
+/**
+ * Converts canonical {@code 8-4-4-4-12} hex identifiers to and from their two 64-bit halves without
+ * going through {@link UUID#fromString}. Only lowercase hex is canonical, as generated and formatted here,
+ * so the stores that keep identifiers as strings and those that keep their halves agree on every lookup.
+ */
+final class UuidCodec {
+
+    static final int LENGTH = 36;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private UuidCodec() {
+    }
+
+    static boolean isCanonical(String identifier) {
+        if (identifier == null || identifier.length() != LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            char c = identifier.charAt(i);
+            if (isDashPosition(i) ? c != '-' : hexValue(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Expects a canonical identifier, see {@link #isCanonical}.
+     */
+    static long mostSignificantBits(String identifier) {
+        return parseHex(identifier, 0, 18);
+    }
+
+    /**
+     * Expects a canonical identifier, see {@link #isCanonical}.
+     */
+    static long leastSignificantBits(String identifier) {
+        return parseHex(identifier, 19, LENGTH);
+    }
+
+    static String format(long mostSignificantBits, long leastSignificantBits) {
+        char[] chars = new char[LENGTH];
+        long bits = leastSignificantBits;
+        for (int i = LENGTH - 1; i >= 19; i--) {
+            if (isDashPosition(i)) {
+                chars[i] = '-';
+            } else {
+                chars[i] = HEX_DIGITS[(int) (bits & 0xF)];
+                bits >>>= 4;
+            }
+        }
+        bits = mostSignificantBits;
+        for (int i = 18; i >= 0; i--) {
+            if (isDashPosition(i)) {
+                chars[i] = '-';
+            } else {
+                chars[i] = HEX_DIGITS[(int) (bits & 0xF)];
+                bits >>>= 4;
+            }
+        }
+        return new String(chars);
+    }
+
+    private static long parseHex(String identifier, int from, int to) {
+        long bits = 0;
+        for (int i = from; i < to; i++) {
+            if (!isDashPosition(i)) {
+                bits = (bits << 4) | hexValue(identifier.charAt(i));
+            }
+        }
+        return bits;
+    }
+
+    private static boolean isDashPosition(int index) {
+        return index == 8 || index == 13 || index == 18 || index == 23;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,92 @@
+package com.improbable.queue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Three instances of the application on loopback ports, clustered. Runs only with {@code -Pintegration}.
+ */
+public class ClusterIT {
+
+    private static final int NODES = 3;
+
+    private static final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private static final List<String> urls = new ArrayList<>();
+    private static final RestTemplate restTemplate = new RestTemplate();
+
+    @BeforeClass
+    public static void startNodes() throws IOException {
+        for (int i = 0; i < NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls.add("http://127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        for (int i = 0; i < NODES; i++) {
+            contexts.add(new SpringApplicationBuilder(QueueServiceApplication.class)
+                    .run("--server.port=" + urls.get(i).substring(urls.get(i).lastIndexOf(':') + 1),
+                            "--queue.cluster.nodes=" + String.join(",", urls),
+                            "--queue.cluster.node-index=" + i));
+        }
+    }
+
+    @AfterClass
+    public static void stopNodes() {
+        for (ConfigurableApplicationContext context : contexts) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void positionsShouldFollowJoinOrderAcrossNodes() throws InterruptedException {
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            identifiers.add(restTemplate.postForObject(urls.get(i % NODES) + "/cluster/join", null, String.class));
+            //    stamps have millisecond wall-clock resolution across nodes
+            Thread.sleep(2);
+        }
+
+        for (int i = 0; i < identifiers.size(); i++) {
+            String poller = urls.get((i + 1) % NODES);
+            assertThat(restTemplate.getForObject(poller + "/cluster/poll?identifier={id}", Long.class, identifiers.get(i)))
+                    .isEqualTo(i);
+        }
+
+        restTemplate.put(urls.get(0) + "/cluster/leave?identifier={id}", null, identifiers.get(4));
+
+        //    a node may answer from another's summary taken before the leave, for at most one summary interval
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (restTemplate.getForObject(urls.get(2) + "/cluster/poll?identifier={id}", Long.class, identifiers.get(8)) != 7
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(restTemplate.getForObject(urls.get(2) + "/cluster/poll?identifier={id}", Long.class, identifiers.get(8)))
+                .isEqualTo(7);
+        assertThatThrownBy(() -> restTemplate.getForObject(urls.get(1) + "/cluster/poll?identifier={id}", String.class, identifiers.get(4)))
+                .isInstanceOfSatisfying(HttpClientErrorException.class, e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+    }
+
+    @Test
+    public void leaveOfAnUnknownUserShouldBeNotFoundOnEveryNode() {
+        for (int i = 0; i < 6; i++) {
+            //    random identifiers land on every node, so some are forwarded
+            String identifier = UUID.randomUUID().toString();
+            assertThatThrownBy(() -> restTemplate.put(urls.get(0) + "/cluster/leave?identifier={id}", null, identifier))
+                    .isInstanceOfSatisfying(HttpClientErrorException.class, e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+        }
+    }
+}
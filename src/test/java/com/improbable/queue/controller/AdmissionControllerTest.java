@@ -0,0 +1,74 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.AdmissionScheduler;
+import com.improbable.queue.service.QueueRegistry;
+import com.improbable.queue.service.QueueService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(AdmissionController.class)
+public class AdmissionControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private AdmissionScheduler admissionScheduler;
+
+    @MockBean
+    private QueueRegistry queueRegistry;
+
+    @Test
+    public void rateShouldReportTheDefaultQueue() throws Exception {
+        given(queueRegistry.get(QueueRegistry.DEFAULT_QUEUE)).willReturn(mock(QueueService.class));
+        given(admissionScheduler.getRatePerSecond(QueueRegistry.DEFAULT_QUEUE)).willReturn(500d);
+        given(admissionScheduler.getBurst(QueueRegistry.DEFAULT_QUEUE)).willReturn(1000L);
+
+        mvc.perform(get("/queue/admission"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(500d))
+                .andExpect(jsonPath("$.burst").value(1000));
+    }
+
+    @Test
+    public void setRateShouldChangeTheNamedQueue() throws Exception {
+        given(queueRegistry.get("concert")).willReturn(mock(QueueService.class));
+
+        mvc.perform(put("/queue/concert/admission").param("rate", "250").param("burst", "50"))
+                .andExpect(status().isOk());
+
+        verify(admissionScheduler).setRate("concert", 250, 50);
+    }
+
+    @Test
+    public void setRateWhenNegativeShouldReturnBadRequest() throws Exception {
+        mvc.perform(put("/queue/admission").param("rate", "-1"))
+                .andExpect(status().isBadRequest());
+
+        verify(admissionScheduler, never()).setRate(anyString(), anyDouble(), anyLong());
+    }
+
+    @Test
+    public void setRateWhenQueueIsUnknownShouldReturnNotFound() throws Exception {
+        mvc.perform(put("/queue/missing/admission").param("rate", "10"))
+                .andExpect(status().isNotFound());
+    }
+}
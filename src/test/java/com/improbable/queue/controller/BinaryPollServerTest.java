@@ -0,0 +1,105 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.model.UserStub;
+import com.improbable.queue.service.QueueService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+
+@RunWith(SpringRunner.class)
+//    no compaction ticks: they would call the spy from another thread while a test stubs it
+@SpringBootTest(properties = {"queue.binary.enabled=true", "queue.binary.port=0", "queue.compaction.interval-ms=0"})
+public class BinaryPollServerTest {
+
+    @Autowired
+    private BinaryPollServer binaryPollServer;
+
+    @SpyBean
+    private QueueService queueService;
+
+    @Test
+    public void pollShouldAnswerPipelinedRequestsInOrder() throws IOException {
+        queueService.clear();
+        String admitted = queueService.join(UserStub.builder().build());
+        String first = queueService.join(UserStub.builder().build());
+        String second = queueService.join(UserStub.builder().build());
+        queueService.admit(1);
+
+        ByteBuffer responses = exchange(second, UUID.randomUUID().toString(), admitted, first);
+
+        assertThat(responses.get()).isEqualTo(BinaryPollServer.WAITING);
+        assertThat(responses.getLong()).isEqualTo(1);
+        assertThat(responses.get()).isEqualTo(BinaryPollServer.NOT_FOUND);
+        assertThat(responses.getLong()).isEqualTo(0);
+        assertThat(responses.get()).isEqualTo(BinaryPollServer.ADMITTED);
+        assertThat(responses.getLong()).isEqualTo(0);
+        assertThat(responses.get()).isEqualTo(BinaryPollServer.WAITING);
+        assertThat(responses.getLong()).isEqualTo(0);
+    }
+
+    @Test
+    public void pollShouldAnswerMoreRequestsThanOneBatch() throws IOException {
+        String identifier = queueService.join(UserStub.builder().build());
+        long position = queueService.getPositionInQueue(identifier);
+        String[] identifiers = new String[1_000];
+        Arrays.fill(identifiers, identifier);
+
+        ByteBuffer responses = exchange(identifiers);
+
+        for (int i = 0; i < identifiers.length; i++) {
+            assertThat(responses.get()).isEqualTo(BinaryPollServer.WAITING);
+            assertThat(responses.getLong()).isEqualTo(position);
+        }
+    }
+
+    @Test
+    public void pollWhenALookupFailsShouldCloseOnlyThatConnection() throws IOException {
+        String identifier = queueService.join(UserStub.builder().build());
+        long position = queueService.getPositionInQueue(identifier);
+        doThrow(new IllegalStateException("broken listener")).doCallRealMethod()
+                .when(queueService).pollAll(any(long[].class), any(long[].class), anyInt(), any(long[].class));
+
+        assertThat(exchange(identifier).hasRemaining()).isFalse();
+
+        ByteBuffer responses = exchange(identifier);
+        assertThat(responses.get()).isEqualTo(BinaryPollServer.WAITING);
+        assertThat(responses.getLong()).isEqualTo(position);
+    }
+
+    private ByteBuffer exchange(String... identifiers) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", binaryPollServer.getLocalPort()))) {
+            ByteBuffer requests = ByteBuffer.allocate(identifiers.length * BinaryPollServer.REQUEST_SIZE);
+            for (String identifier : identifiers) {
+                UUID uuid = UUID.fromString(identifier);
+                requests.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            }
+            requests.flip();
+            ByteBuffer responses = ByteBuffer.allocate(identifiers.length * BinaryPollServer.RESPONSE_SIZE);
+            while (requests.hasRemaining() || responses.hasRemaining()) {
+                if (requests.hasRemaining()) {
+                    channel.write(requests);
+                }
+                if (channel.read(responses) < 0) {
+                    break;
+                }
+            }
+            responses.flip();
+            return responses;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.improbable.queue.controller;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LoadShedderTest {
+
+    private final LoadShedder loadShedder = new LoadShedder(10, 2, 8, 4, 4, 2);
+
+    @Test
+    public void tryAcquireShouldEnforceThePerOperationLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(loadShedder.tryAcquire(LoadShedder.Operation.JOIN)).isTrue();
+        }
+        assertThat(loadShedder.tryAcquire(LoadShedder.Operation.JOIN)).isFalse();
+
+        loadShedder.release(LoadShedder.Operation.JOIN);
+
+        assertThat(loadShedder.tryAcquire(LoadShedder.Operation.JOIN)).isTrue();
+        assertThat(loadShedder.inFlight()).isEqualTo(4);
+    }
+
+    @Test
+    public void reservedSlotsShouldOnlyGoToLeavesAndAdmissions() {
+        for (int i = 0; i < 8; i++) {
+            assertThat(loadShedder.tryAcquire(LoadShedder.Operation.POLL)).isTrue();
+        }
+        assertThat(loadShedder.tryAcquire(LoadShedder.Operation.JOIN)).isFalse();
+
+        assertThat(loadShedder.tryAcquire(LoadShedder.Operation.LEAVE)).isTrue();
+        assertThat(loadShedder.tryAcquire(LoadShedder.Operation.ADMIT)).isTrue();
+        assertThat(loadShedder.tryAcquire(LoadShedder.Operation.LEAVE)).isFalse();
+    }
+
+    @Test
+    public void preHandleWhenFullShouldAnswerServiceUnavailableWithRetryAfter() {
+        for (int i = 0; i < 8; i++) {
+            loadShedder.tryAcquire(LoadShedder.Operation.POLL);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean isHandled = loadShedder.preHandle(new MockHttpServletRequest("GET", "/queue/concert/poll"), response, null);
+
+        assertThat(isHandled).isFalse();
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(Integer.parseInt(response.getHeader("Retry-After"))).isBetween(1, 120);
+    }
+
+    @Test
+    public void afterCompletionShouldReleaseWhatPreHandleAcquired() {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/queue/leave");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(loadShedder.preHandle(request, response, null)).isTrue();
+        assertThat(loadShedder.inFlight()).isEqualTo(1);
+        loadShedder.afterCompletion(request, response, null, null);
+        loadShedder.afterCompletion(request, response, null, null);
+
+        assertThat(loadShedder.inFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void preHandleShouldIgnoreOtherEndpoints() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/queue/stream");
+
+        assertThat(loadShedder.preHandle(request, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(loadShedder.inFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void measureRateShouldCountCompletionsPerSecond() {
+        long start = System.nanoTime();
+        loadShedder.measureRate(start + TimeUnit.SECONDS.toNanos(1));
+        for (int i = 0; i < 50; i++) {
+            loadShedder.tryAcquire(LoadShedder.Operation.ADMIT);
+            loadShedder.release(LoadShedder.Operation.ADMIT);
+        }
+
+        assertThat(loadShedder.measureRate(start + TimeUnit.SECONDS.toNanos(3))).isCloseTo(25, within(1d));
+    }
+}
@@ -0,0 +1,60 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.metrics.LatencyHistogram;
+import com.improbable.queue.service.QueueMetrics;
+import com.improbable.queue.service.QueueRegistry;
+import com.improbable.queue.service.QueueService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+import java.util.TreeSet;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(MetricsController.class)
+public class MetricsControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private QueueRegistry queueRegistry;
+
+    @Test
+    public void metricsShouldReportEveryQueue() throws Exception {
+        QueueService queueService = mock(QueueService.class);
+        QueueMetrics metrics = mock(QueueMetrics.class);
+        LatencyHistogram join = new LatencyHistogram();
+        join.record(1_000);
+        given(queueRegistry.names()).willReturn(new TreeSet<>(Collections.singleton("default")));
+        given(queueRegistry.get("default")).willReturn(queueService);
+        given(queueService.getMetrics()).willReturn(metrics);
+        given(metrics.getJoin()).willReturn(join);
+        given(metrics.getJoinBatch()).willReturn(new LatencyHistogram());
+        given(metrics.getPosition()).willReturn(new LatencyHistogram());
+        given(metrics.getPollBatch()).willReturn(new LatencyHistogram());
+        given(metrics.getRemove()).willReturn(new LatencyHistogram());
+        given(metrics.getAdmit()).willReturn(new LatencyHistogram());
+        given(metrics.getQueueLength()).willReturn(7L);
+        given(metrics.getReadLockFailures()).willReturn(3L);
+
+        mvc.perform(get("/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.default.queueLength").value(7))
+                .andExpect(jsonPath("$.default.readLockFailures").value(3))
+                .andExpect(jsonPath("$.default.latency.join.count").value(1))
+                .andExpect(jsonPath("$.default.latency.join.p99").value(1_000))
+                .andExpect(jsonPath("$.default.latency.admit.count").value(0));
+    }
+}
@@ -0,0 +1,149 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.model.QueueStatus;
+import com.improbable.queue.service.IdentifierService;
+import com.improbable.queue.service.QueueRegistry;
+import com.improbable.queue.service.QueueService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(NamedQueueController.class)
+public class NamedQueueControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private QueueRegistry queueRegistry;
+
+    @MockBean
+    private IdentifierService identifierService;
+
+    @Test
+    public void joinShouldUseTheNamedQueue() throws Exception {
+        QueueService concert = mock(QueueService.class);
+        String identifier = UUID.randomUUID().toString();
+        given(queueRegistry.get("concert")).willReturn(concert);
+        given(concert.join(any())).willReturn(identifier);
+
+        MvcResult result = mvc.perform(post("/queue/concert/join"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo(identifier);
+    }
+
+    @Test
+    public void rangeWhenNotEnabledShouldReturnNotFound() throws Exception {
+        QueueService concert = mock(QueueService.class);
+        given(queueRegistry.get("concert")).willReturn(concert);
+
+        mvc.perform(get("/queue/concert/range?from=0"))
+                .andExpect(status().isNotFound())
+                .andReturn();
+    }
+
+    @Test
+    public void pollWhenQueueIsUnknownShouldReturnNotFound() throws Exception {
+        mvc.perform(get("/queue/unknown/poll?identifier=blabla"))
+                .andExpect(status().isNotFound())
+                .andReturn();
+    }
+
+    @Test
+    public void pollShouldReturnPositionInTheNamedQueue() throws Exception {
+        QueueService concert = mock(QueueService.class);
+        given(queueRegistry.get("concert")).willReturn(concert);
+        given(identifierService.validateIdentifier(any())).willReturn(true);
+        given(concert.poll(any())).willReturn(QueueStatus.waiting(7, 0));
+
+        MvcResult result = mvc.perform(get("/queue/concert/poll?identifier=blabla"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("7");
+    }
+
+    @Test
+    public void leaveWhenQueueIsUnknownShouldReturnNotFound() throws Exception {
+        mvc.perform(put("/queue/unknown/leave?identifier=blabla"))
+                .andExpect(status().isNotFound())
+                .andReturn();
+    }
+
+    @Test
+    public void admitWhenQueueIsUnknownShouldReturnNotFound() throws Exception {
+        mvc.perform(post("/queue/unknown/admit"))
+                .andExpect(status().isNotFound())
+                .andReturn();
+    }
+
+    @Test
+    public void createShouldReturnCreated() throws Exception {
+        given(queueRegistry.create("concert")).willReturn(true);
+        mvc.perform(put("/queues/concert"))
+                .andExpect(status().isCreated())
+                .andReturn();
+    }
+
+    @Test
+    public void createWhenQueueExistsShouldReturnConflict() throws Exception {
+        given(queueRegistry.create("concert")).willReturn(false);
+        mvc.perform(put("/queues/concert"))
+                .andExpect(status().isConflict())
+                .andReturn();
+    }
+
+    @Test
+    public void createWhenNameIsInvalidShouldReturnBadRequest() throws Exception {
+        mvc.perform(put("/queues/a.b"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+    }
+
+    @Test
+    public void deleteWhenDefaultShouldReturnBadRequest() throws Exception {
+        mvc.perform(delete("/queues/default"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+    }
+
+    @Test
+    public void deleteWhenQueueExistsShouldReturnOk() throws Exception {
+        given(queueRegistry.delete("concert")).willReturn(true);
+        mvc.perform(delete("/queues/concert"))
+                .andExpect(status().isOk())
+                .andReturn();
+    }
+
+    @Test
+    public void listShouldReturnQueueNames() throws Exception {
+        given(queueRegistry.names()).willReturn(new TreeSet<>(Arrays.asList("concert", "default")));
+        MvcResult result = mvc.perform(get("/queues"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("[\"concert\",\"default\"]");
+    }
+}
@@ -1,8 +1,11 @@
 package com.improbable.queue.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.improbable.queue.model.QueueEntry;
+import com.improbable.queue.model.QueueStatus;
 import com.improbable.queue.model.UserStub;
 import com.improbable.queue.service.IdentifierService;
+import com.improbable.queue.service.QueueBusyException;
 import com.improbable.queue.service.QueueService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,18 +17,26 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
-@WebMvcTest(QueueController.class)
+@WebMvcTest(controllers = QueueController.class, properties = "queue.range.enabled=true")
 public class QueueControllerTest {
 
     private ObjectMapper mapper = new ObjectMapper();
@@ -55,6 +66,70 @@ public class QueueControllerTest {
         assertThat(content).matches("^" + identifier + "$");
     }
 
+    @Test
+    public void joinBatchShouldReturnIdentifiersInOrder() throws Exception {
+        given(queueService.joinAll(any())).willReturn(Arrays.asList("first", "second"));
+
+        MvcResult result = mvc.perform(post("/queue/join/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(Arrays.asList("alice", "bob"))))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("[\"first\",\"second\"]");
+    }
+
+    @Test
+    public void admitWhenCountIsAboveTheBatchLimitShouldReturnBadRequest() throws Exception {
+        mvc.perform(post("/queue/admit").param("count", "10001"))
+                .andExpect(status().isBadRequest());
+
+        verify(queueService, never()).admit(anyInt());
+    }
+
+    @Test
+    public void joinBatchWhenEmptyShouldReturnBadRequest() throws Exception {
+        mvc.perform(post("/queue/join/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+    }
+
+    @Test
+    public void pollBatchShouldReturnStatusPerIdentifier() throws Exception {
+        String admitted = UUID.randomUUID().toString();
+        String waiting = UUID.randomUUID().toString();
+        String unknown = UUID.randomUUID().toString();
+        given(identifierService.validateIdentifier(any())).willReturn(true);
+        given(identifierService.validateIdentifier("blabla")).willReturn(false);
+        given(queueService.pollAll(Arrays.asList(admitted, waiting, unknown)))
+                .willReturn(new long[]{QueueService.ADMITTED, 41, QueueService.NOT_FOUND});
+
+        mvc.perform(post("/queue/poll/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(Arrays.asList(admitted, "blabla", waiting, unknown))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("JOIN"))
+                .andExpect(jsonPath("$[1].status").value("INVALID"))
+                .andExpect(jsonPath("$[2].status").value("WAITING"))
+                .andExpect(jsonPath("$[2].position").value(41))
+                .andExpect(jsonPath("$[3].identifier").value(unknown))
+                .andExpect(jsonPath("$[3].status").value("NOT_FOUND"));
+    }
+
+    @Test
+    public void joinWithAnIdempotencyKeyShouldPassItOn() throws Exception {
+        String identifier = UUID.randomUUID().toString();
+        given(queueService.join(any(), eq("token:abc"))).willReturn(identifier);
+
+        MvcResult result = mvc.perform(post("/queue/join?username=alice").header("Idempotency-Key", "abc"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo(identifier);
+    }
+
     @Test
     public void pollWhenIdentifierIsInvalidShouldReturnBadRequest() throws Exception {
         given(identifierService.validateIdentifier(any())).willReturn(false);
@@ -66,7 +141,7 @@ public class QueueControllerTest {
     @Test
     public void pollWhenIdentifierIsNotInTheQueueShouldReturnNotFound() throws Exception {
         given(identifierService.validateIdentifier(any())).willReturn(true);
-        given(queueService.checkExists(any())).willReturn(false);
+        given(queueService.poll(any())).willReturn(QueueStatus.notFound(0));
         mvc.perform(get("/queue/poll?identifier=blabla"))
                 .andExpect(status().isNotFound())
                 .andReturn();
@@ -75,21 +150,38 @@ public class QueueControllerTest {
     @Test
     public void pollWhenIdentifierIsValidShouldReturnPosition() throws Exception {
         given(identifierService.validateIdentifier(any())).willReturn(true);
-        given(queueService.checkExists(any())).willReturn(true);
-        given(queueService.getPositionInQueue(any())).willReturn(5);
+        given(queueService.poll(any())).willReturn(QueueStatus.waiting(5, 3));
         MvcResult result = mvc.perform(get("/queue/poll?identifier=blabla"))
                 .andExpect(status().isOk())
+                .andExpect(header().string(AbstractQueueController.EPOCH_HEADER, "3"))
                 .andReturn();
 
         String content = result.getResponse().getContentAsString();
         assertThat(content).matches("5");
+        verify(queueService).heartbeat("blabla");
+    }
+
+    @Test
+    public void pollWhenIdentifierIsUppercaseShouldLookUpItsLowercaseForm() throws Exception {
+        String identifier = UUID.randomUUID().toString();
+        given(identifierService.validateIdentifier(identifier)).willReturn(true);
+        given(queueService.poll(identifier)).willReturn(QueueStatus.waiting(2, 0));
+        given(queueService.checkExists(identifier)).willReturn(true);
+        given(queueService.removeIdentifier(identifier)).willReturn(true);
+
+        mvc.perform(get("/queue/poll").param("identifier", identifier.toUpperCase()))
+                .andExpect(status().isOk());
+        mvc.perform(put("/queue/leave").param("identifier", identifier.toUpperCase()))
+                .andExpect(status().isOk());
+
+        verify(queueService).heartbeat(identifier);
+        verify(queueService).removeIdentifier(identifier);
     }
 
     @Test
     public void pollWhenIdentifierIsAdmittableShouldReturnJoin() throws Exception {
         given(identifierService.validateIdentifier(any())).willReturn(true);
-        given(queueService.checkExists(any())).willReturn(true);
-        given(queueService.isIdentifierAdmittable(any())).willReturn(true);
+        given(queueService.poll(any())).willReturn(QueueStatus.admitted(0));
         MvcResult result = mvc.perform(get("/queue/poll?identifier=blabla"))
                 .andExpect(status().isOk())
                 .andReturn();
@@ -98,6 +190,15 @@ public class QueueControllerTest {
         assertThat(content).matches("JOIN");
     }
 
+    @Test
+    public void pollWhenQueueIsBusyShouldReturnServiceUnavailableWithRetryAfter() throws Exception {
+        given(identifierService.validateIdentifier(any())).willReturn(true);
+        given(queueService.poll(any())).willThrow(new QueueBusyException());
+        mvc.perform(get("/queue/poll?identifier=blabla"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+    }
+
     @Test
     public void leaveWhenIdentifierIsInvalidShouldReturnBadRequest() throws Exception {
         given(identifierService.validateIdentifier(any())).willReturn(false);
@@ -120,7 +221,7 @@ public class QueueControllerTest {
         given(identifierService.validateIdentifier(any())).willReturn(true);
         given(queueService.checkExists(any())).willReturn(true);
         given(queueService.removeIdentifier(any())).willReturn(true);
-        mvc.perform(get("/queue/poll?identifier=blabla"))
+        mvc.perform(put("/queue/leave?identifier=blabla"))
                 .andExpect(status().isOk())
                 .andReturn();
     }
@@ -134,22 +235,68 @@ public class QueueControllerTest {
     }
 
     @Test
-    public void admitWhenFirstUserIsAdmittableShouldReturnConflict() throws Exception {
+    public void admitWhenNobodyCouldBeAdmittedShouldReturnConflict() throws Exception {
         given(queueService.isQueueEmpty()).willReturn(false);
-        given(queueService.getFirst()).willReturn(UserStub.builder().isAdmittable(true).build());
-        given(queueService.isIdentifierAdmittable(any())).willReturn(true);
+        given(queueService.admit(anyInt())).willReturn(Collections.emptyList());
         mvc.perform(post("/queue/admit"))
                 .andExpect(status().isConflict())
                 .andReturn();
     }
 
     @Test
-    public void admitWhenFirstUserIsNotAdmittableShouldReturnOk() throws Exception {
+    public void rangeShouldReturnThePageFromThePosition() throws Exception {
+        String identifier = UUID.randomUUID().toString();
+        given(queueService.range(250_000, 2)).willReturn(Arrays.asList(
+                QueueEntry.builder().position(250_000).identifier(identifier).username("alice").ticket(260_000).build(),
+                QueueEntry.builder().position(250_001).identifier(UUID.randomUUID().toString()).ticket(260_002).build()));
+        mvc.perform(get("/queue/range?from=250000&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].identifier").value(identifier))
+                .andExpect(jsonPath("$[0].username").value("alice"))
+                .andExpect(jsonPath("$[1].position").value(250_001))
+                .andReturn();
+    }
+
+    @Test
+    public void rangeWhenPageIsOutOfBoundsShouldReturnBadRequest() throws Exception {
+        mvc.perform(get("/queue/range?from=-1"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+        mvc.perform(get("/queue/range?from=0&limit=0"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+        mvc.perform(get("/queue/range?from=0&limit=10001"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+    }
+
+    @Test
+    public void admitWhenFirstUserIsWaitingShouldReturnOk() throws Exception {
         given(queueService.isQueueEmpty()).willReturn(false);
-        given(queueService.getFirst()).willReturn(UserStub.builder().isAdmittable(false).build());
-        given(queueService.isIdentifierAdmittable(any())).willReturn(false);
-        mvc.perform(post("/queue/admit"))
+        given(queueService.admit(1)).willReturn(Collections.singletonList(UserStub.builder().build()));
+        MvcResult result = mvc.perform(post("/queue/admit"))
                 .andExpect(status().isOk())
                 .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("1");
+    }
+
+    @Test
+    public void admitWhenCountIsGivenShouldReturnNumberAdmitted() throws Exception {
+        given(queueService.isQueueEmpty()).willReturn(false);
+        given(queueService.admit(3)).willReturn(Arrays.asList(UserStub.builder().build(), UserStub.builder().build()));
+        MvcResult result = mvc.perform(post("/queue/admit?count=3"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("2");
+    }
+
+    @Test
+    public void admitWhenCountIsNotPositiveShouldReturnBadRequest() throws Exception {
+        mvc.perform(post("/queue/admit?count=0"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
     }
 }
@@ -0,0 +1,64 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.QueueEventService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(QueueEventController.class)
+public class QueueEventControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private QueueEventService queueEventService;
+
+    @Test
+    public void eventsWhenDisabledShouldReturnNotFound() throws Exception {
+        given(queueEventService.isEnabled()).willReturn(false);
+        mvc.perform(get("/queue/events"))
+                .andExpect(status().isNotFound())
+                .andReturn();
+    }
+
+    @Test
+    public void eventsWithoutACursorShouldStartAtTheNextEvent() throws Exception {
+        given(queueEventService.isEnabled()).willReturn(true);
+        given(queueEventService.lastSequence()).willReturn(41L);
+        mvc.perform(get("/queue/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        verify(queueEventService).subscribe(eq(42L), any());
+    }
+
+    @Test
+    public void eventsShouldResumeAfterTheLastEventId() throws Exception {
+        given(queueEventService.isEnabled()).willReturn(true);
+        mvc.perform(get("/queue/events").header("Last-Event-ID", "99"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        verify(queueEventService).subscribe(eq(100L), any());
+    }
+
+    @Test
+    public void eventsWithANegativeCursorShouldReturnBadRequest() throws Exception {
+        given(queueEventService.isEnabled()).willReturn(true);
+        mvc.perform(get("/queue/events?from=-5"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+    }
+}
@@ -0,0 +1,64 @@
+package com.improbable.queue.controller;
+
+import com.improbable.queue.service.IdentifierService;
+import com.improbable.queue.service.PositionUpdateService;
+import com.improbable.queue.service.QueueService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(QueueStreamController.class)
+public class QueueStreamControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private QueueService queueService;
+
+    @MockBean
+    private IdentifierService identifierService;
+
+    @MockBean
+    private PositionUpdateService positionUpdateService;
+
+    @Test
+    public void streamWhenIdentifierIsInvalidShouldReturnBadRequest() throws Exception {
+        given(identifierService.validateIdentifier(any())).willReturn(false);
+        mvc.perform(get("/queue/stream?identifier=blabla"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+    }
+
+    @Test
+    public void streamWhenIdentifierIsNotInTheQueueShouldReturnNotFound() throws Exception {
+        given(identifierService.validateIdentifier(any())).willReturn(true);
+        given(queueService.checkExists(any())).willReturn(false);
+        mvc.perform(get("/queue/stream?identifier=blabla"))
+                .andExpect(status().isNotFound())
+                .andReturn();
+    }
+
+    @Test
+    public void streamWhenIdentifierIsInTheQueueShouldSubscribe() throws Exception {
+        given(identifierService.validateIdentifier(any())).willReturn(true);
+        given(queueService.checkExists(any())).willReturn(true);
+        mvc.perform(get("/queue/stream?identifier=blabla"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        verify(positionUpdateService).subscribe(eq("blabla"), any());
+    }
+}
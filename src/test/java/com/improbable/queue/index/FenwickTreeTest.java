@@ -0,0 +1,88 @@
+package com.improbable.queue.index;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FenwickTreeTest {
+
+    @Test
+    public void prefixSumShouldMatchNaiveSums() {
+        FenwickTree tree = new FenwickTree(4);
+        long[] counts = new long[5_000];
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            int index = random.nextInt(counts.length);
+            long delta = random.nextInt(10);
+            counts[index] += delta;
+            tree.add(index, delta);
+        }
+        long expected = 0;
+        for (int i = 0; i <= counts.length; i++) {
+            assertThat(tree.prefixSum(i)).isEqualTo(expected);
+            if (i < counts.length) {
+                expected += counts[i];
+            }
+        }
+        assertThat(tree.total()).isEqualTo(expected);
+    }
+
+    @Test
+    public void addBeyondCapacityShouldKeepEarlierCounts() {
+        FenwickTree tree = new FenwickTree(2);
+        tree.add(0, 3);
+        tree.add(1, 4);
+        tree.add(1_000, 5);
+        assertThat(tree.prefixSum(2)).isEqualTo(7);
+        assertThat(tree.rangeSum(1, 1_001)).isEqualTo(9);
+        assertThat(tree.total()).isEqualTo(12);
+    }
+
+    @Test
+    public void addWhenCalledConcurrentlyWhileGrowingShouldNotLoseCounts() throws Exception {
+        FenwickTree tree = new FenwickTree(2);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    tree.add(i * threads.length + offset, 1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(tree.total()).isEqualTo(40_000);
+        assertThat(tree.prefixSum(20_000)).isEqualTo(20_000);
+    }
+
+    @Test
+    public void rangeSumWhenRangeIsEmptyShouldReturnZero() {
+        FenwickTree tree = new FenwickTree();
+        tree.add(3, 1);
+        assertThat(tree.rangeSum(5, 5)).isZero();
+        assertThat(tree.rangeSum(5, 2)).isZero();
+    }
+
+    @Test
+    public void indexOfShouldFindTheIndexHoldingEachRank() {
+        FenwickTree tree = new FenwickTree(4);
+        long[] counts = new long[3_000];
+        Random random = new Random(7);
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = random.nextInt(4) == 0 ? random.nextInt(5) : 0;
+            tree.add(i, counts[i]);
+        }
+        long rank = 0;
+        for (int i = 0; i < counts.length; i++) {
+            for (long k = 0; k < counts[i]; k++) {
+                assertThat(tree.indexOf(rank++)).isEqualTo(i);
+            }
+        }
+        assertThat(tree.indexOf(rank)).isGreaterThanOrEqualTo(counts.length);
+    }
+}
@@ -0,0 +1,68 @@
+package com.improbable.queue.metrics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentileShouldStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1_000_000; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertThat(histogram.count()).isEqualTo(1_000_000);
+        assertThat(histogram.mean()).isCloseTo(500_000.5, within(0.01));
+        assertThat(histogram.percentile(50)).isCloseTo(500_000L, within(500_000L / 64));
+        assertThat(histogram.percentile(99)).isCloseTo(990_000L, within(990_000L / 64));
+        assertThat(histogram.percentile(100)).isEqualTo(1_000_000);
+        assertThat(histogram.max()).isEqualTo(1_000_000);
+    }
+
+    @Test
+    public void bucketsShouldCoverEveryValueInOrder() {
+        int previous = -1;
+        for (long value : new long[]{0, 1, 127, 128, 130, 255, 256, 1_000_000, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(bucket).isGreaterThan(previous);
+            assertThat(LatencyHistogram.highestValueIn(bucket)).isGreaterThanOrEqualTo(value);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void emptyHistogramShouldReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertThat(histogram.count()).isZero();
+        assertThat(histogram.percentile(99)).isZero();
+        assertThat(histogram.mean()).isZero();
+    }
+
+    @Test
+    public void recordWhenCalledConcurrentlyShouldLoseNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long offset = t;
+            threads[t] = new Thread(() -> {
+                for (long nanos = 1; nanos <= 100_000; nanos++) {
+                    histogram.record(nanos * threads.length + offset);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(histogram.count()).isEqualTo(400_000);
+        assertThat(histogram.max()).isEqualTo(400_003);
+        assertThat(histogram.mean()).isCloseTo(200_003.5, within(0.01));
+    }
+}
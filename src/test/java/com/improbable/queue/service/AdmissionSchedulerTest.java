@@ -0,0 +1,104 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class AdmissionSchedulerTest {
+
+    private static final String QUEUE = "admission-test";
+
+    @Autowired
+    private AdmissionScheduler admissionScheduler;
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    private QueueService queueService;
+
+    @Before
+    public void setUp() {
+        queueRegistry.create(QUEUE);
+        queueService = queueRegistry.get(QUEUE);
+        for (int i = 0; i < 50; i++) {
+            queueService.join(UserStub.builder().build());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        admissionScheduler.setRate(QUEUE, 0, 0);
+        queueRegistry.delete(QUEUE);
+    }
+
+    @Test
+    public void tickShouldAdmitABurstAtOnce() {
+        admissionScheduler.setRate(QUEUE, 1, 20);
+
+        admissionScheduler.tick();
+
+        //    the scheduler's own thread may have taken the burst first; a rate of 1/s adds at most one more
+        assertThat(queueService.size()).isBetween(29L, 30L);
+    }
+
+    @Test
+    public void tickWhenAListenerFailsShouldCarryOn() {
+        queueService.addListener(new QueueListener() {
+            @Override
+            public void onAdmit(List<UserStub> admitted) {
+                throw new IllegalStateException("listener broke");
+            }
+        });
+        admissionScheduler.setRate(QUEUE, 1, 20);
+
+        admissionScheduler.tick();
+
+        assertThat(queueService.size()).isBetween(29L, 30L);
+    }
+
+    @Test
+    public void setRateShouldDefaultTheBurstToOneSecondsWorth() {
+        admissionScheduler.setRate(QUEUE, 40, 0);
+
+        assertThat(admissionScheduler.getRatePerSecond(QUEUE)).isEqualTo(40);
+        assertThat(admissionScheduler.getBurst(QUEUE)).isEqualTo(40);
+    }
+
+    @Test
+    public void setRateToZeroShouldStopAdmitting() {
+        admissionScheduler.setRate(QUEUE, 1, 20);
+        admissionScheduler.setRate(QUEUE, 0, 0);
+
+        admissionScheduler.tick();
+
+        assertThat(queueService.size()).isEqualTo(50);
+        assertThat(admissionScheduler.getRatePerSecond(QUEUE)).isEqualTo(0);
+    }
+
+    @Test
+    public void setRateWhenNegativeShouldThrow() {
+        assertThatThrownBy(() -> admissionScheduler.setRate(QUEUE, -1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void tickShouldForgetDeletedQueues() {
+        admissionScheduler.setRate(QUEUE, 1, 20);
+        queueRegistry.delete(QUEUE);
+
+        admissionScheduler.tick();
+
+        assertThat(admissionScheduler.getRatePerSecond(QUEUE)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,54 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CompactionSchedulerTest {
+
+    private static final String QUEUE = "compaction-test";
+
+    @Autowired
+    private CompactionScheduler compactionScheduler;
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    @After
+    public void tearDown() {
+        queueRegistry.delete(QUEUE);
+    }
+
+    @Test
+    public void tickShouldCompactEverySegmentPastTheThresholdAcrossLockHolds() {
+        queueRegistry.create(QUEUE);
+        QueueService queueService = queueRegistry.get(QUEUE);
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            identifiers.add(queueService.join(UserStub.builder().build()));
+        }
+        for (int i = 0; i < identifiers.size(); i++) {
+            if (i % 4 != 0) {
+                queueService.removeIdentifier(identifiers.get(i));
+            }
+        }
+
+        compactionScheduler.tick();
+
+        //    the scheduler's own thread may have compacted some first; each segment is compacted only once
+        assertThat(queueService.getMetrics().getCompactedSegments()).isEqualTo(20);
+        assertThat(queueService.getPositionInQueue(identifiers.get(19_996))).isEqualTo(4_999);
+        assertThat(queueService.admit(2)).extracting(UserStub::getIdentifier).containsExactly(identifiers.get(0), identifiers.get(4));
+    }
+}
@@ -0,0 +1,71 @@
+package com.improbable.queue.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventRingTest {
+
+    @Test
+    public void readShouldReturnEventsInSequenceOrderUpToTheLimit() {
+        EventRing ring = new EventRing(8);
+        for (long i = 0; i < 5; i++) {
+            assertThat(ring.publish(EventRing.JOIN, i, i, i)).isEqualTo(i);
+        }
+        List<Long> tickets = new ArrayList<>();
+
+        long next = ring.read(1, 3, (sequence, type, ticket, mostSignificantBits, leastSignificantBits) -> tickets.add(ticket));
+
+        assertThat(tickets).containsExactly(1L, 2L, 3L);
+        assertThat(next).isEqualTo(4);
+        assertThat(ring.read(next, 10, (sequence, type, ticket, mostSignificantBits, leastSignificantBits) -> tickets.add(ticket)))
+                .isEqualTo(5);
+        assertThat(tickets).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(ring.read(5, 10, (sequence, type, ticket, mostSignificantBits, leastSignificantBits) -> tickets.add(ticket)))
+                .isEqualTo(5);
+    }
+
+    @Test
+    public void readAfterTheRingWrappedShouldStartAtTheOldestEventHeld() {
+        EventRing ring = new EventRing(8);
+        for (long i = 0; i < 20; i++) {
+            ring.publish(EventRing.ADMIT, i, i, i);
+        }
+        List<Long> sequences = new ArrayList<>();
+
+        long next = ring.read(3, 100, (sequence, type, ticket, mostSignificantBits, leastSignificantBits) -> sequences.add(sequence));
+
+        assertThat(sequences).containsExactly(12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L);
+        assertThat(next).isEqualTo(20);
+        assertThat(ring.lastSequence()).isEqualTo(19);
+    }
+
+    @Test
+    public void readWhileTheWriterLapsShouldNeverSeeATornEvent() throws InterruptedException {
+        EventRing ring = new EventRing(64);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (long i = 0; running.get(); i++) {
+                ring.publish(EventRing.JOIN, i, i * 31, i * 17);
+            }
+        });
+        writer.start();
+        List<String> torn = new ArrayList<>();
+        long next = 0;
+        for (int reads = 0; reads < 100_000; reads++) {
+            next = ring.read(next, 16, (sequence, type, ticket, mostSignificantBits, leastSignificantBits) -> {
+                if (ticket != sequence || mostSignificantBits != sequence * 31 || leastSignificantBits != sequence * 17) {
+                    torn.add(sequence + ": " + ticket);
+                }
+            });
+        }
+        running.set(false);
+        writer.join();
+
+        assertThat(torn).isEmpty();
+    }
+}
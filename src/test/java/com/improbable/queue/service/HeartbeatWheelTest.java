@@ -0,0 +1,79 @@
+package com.improbable.queue.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HeartbeatWheelTest {
+
+    //    long enough that the wheel's own thread never expires anything while a test runs
+    private static final long TTL = TimeUnit.SECONDS.toNanos(64);
+    private static final long TICK = TTL / HeartbeatWheel.TICKS_PER_TTL;
+
+    private final List<List<String>> batches = new ArrayList<>();
+    private final HeartbeatWheel wheel = new HeartbeatWheel(TimeUnit.NANOSECONDS.toMillis(TTL), batches::add);
+    private final long now = System.nanoTime();
+
+    @After
+    public void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    public void silentUsersShouldExpireAfterTheTtlInOneBatch() {
+        wheel.touch("a", now);
+        wheel.touch("b", now);
+
+        wheel.expire(now + TTL - TICK);
+        assertThat(batches).isEmpty();
+
+        wheel.expire(now + TTL + 2 * TICK);
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder("a", "b");
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void heartbeatShouldPushBackExpiry() {
+        wheel.touch("a", now);
+        wheel.touch("b", now);
+        wheel.touch("b", now + TTL / 2);
+
+        wheel.expire(now + TTL + 2 * TICK);
+        assertThat(batches).containsExactly(Collections.singletonList("a"));
+
+        wheel.expire(now + TTL / 2 + TTL + 2 * TICK);
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(1)).containsExactly("b");
+    }
+
+    @Test
+    public void forgottenUsersShouldNotExpire() {
+        wheel.touch("a", now);
+        wheel.forget("a");
+
+        wheel.expire(now + 2 * TTL);
+
+        assertThat(batches).isEmpty();
+    }
+
+    @Test
+    public void usersShouldSurviveManyTurnsOfTheWheelWhileHeartbeating() {
+        wheel.touch("a", now);
+        long time = now;
+        for (int i = 0; i < 10 * HeartbeatWheel.TICKS_PER_TTL; i++) {
+            time += TICK;
+            wheel.touch("a", time);
+            wheel.expire(time);
+        }
+
+        assertThat(batches).isEmpty();
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+}
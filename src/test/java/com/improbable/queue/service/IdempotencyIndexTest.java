@@ -0,0 +1,55 @@
+package com.improbable.queue.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdempotencyIndexTest {
+
+    private final IdempotencyIndex index = new IdempotencyIndex();
+
+    @Test
+    public void joinOnceShouldOnlyJoinTheFirstTimeAKeyIsSeen() {
+        assertThat(index.joinOnce("token:a", () -> "first")).isEqualTo("first");
+        assertThat(index.joinOnce("token:a", () -> "second")).isEqualTo("first");
+        assertThat(index.joinOnce("token:b", () -> "third")).isEqualTo("third");
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void forgetShouldReleaseTheKeyOfAUserWhoLeft() {
+        index.joinOnce("token:a", () -> "first");
+        index.forget("unkeyed");
+        assertThat(index.joinOnce("token:a", () -> "second")).isEqualTo("first");
+
+        index.forget("first");
+
+        assertThat(index.joinOnce("token:a", () -> "second")).isEqualTo("second");
+    }
+
+    @Test
+    public void joinOnceShouldJoinOnceUnderConcurrentRetries() throws Exception {
+        AtomicInteger joins = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(executor.submit(() -> index.joinOnce("username:alice", () -> "joined-" + joins.incrementAndGet())));
+        }
+        HashSet<String> identifiers = new HashSet<>();
+        for (Future<String> result : results) {
+            identifiers.add(result.get());
+        }
+        executor.shutdown();
+
+        assertThat(identifiers).containsExactly("joined-1");
+        assertThat(joins.get()).isEqualTo(1);
+    }
+}
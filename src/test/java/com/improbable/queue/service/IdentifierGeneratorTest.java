@@ -0,0 +1,59 @@
+package com.improbable.queue.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdentifierGeneratorTest {
+
+    @Test
+    public void randomGeneratorShouldProduceVersionFourIdentifiers() {
+        String identifier = new RandomIdentifierGenerator().generate();
+        assertThat(identifier).matches("[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}");
+        assertThat(UUID.fromString(identifier).version()).isEqualTo(4);
+    }
+
+    @Test
+    public void timeOrderedGeneratorShouldProduceSortableVersionSevenIdentifiers() throws Exception {
+        IdentifierGenerator generator = new TimeOrderedIdentifierGenerator();
+        String earlier = generator.generate();
+        Thread.sleep(2);
+        String later = generator.generate();
+
+        assertThat(earlier).matches("[0-9a-f]{8}-[0-9a-f]{4}-7[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}");
+        assertThat(UUID.fromString(earlier).variant()).isEqualTo(2);
+        assertThat(earlier).isLessThan(later);
+    }
+
+    @Test
+    public void generatorsShouldNotRepeatAcrossThreads() throws Exception {
+        for (IdentifierGenerator generator : new IdentifierGenerator[]{new RandomIdentifierGenerator(), new TimeOrderedIdentifierGenerator()}) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    List<String> identifiers = new ArrayList<>();
+                    for (int i = 0; i < 25_000; i++) {
+                        identifiers.add(generator.generate());
+                    }
+                    return identifiers;
+                }));
+            }
+            Set<String> unique = new HashSet<>();
+            for (Future<List<String>> result : results) {
+                unique.addAll(result.get());
+            }
+            executor.shutdown();
+            assertThat(unique).hasSize(100_000);
+        }
+    }
+}
@@ -26,4 +26,27 @@ public class IdentifierServiceTest {
         String identifier = "61bbcfec-4272-4344-94d5";
         assertThat(identifierService.validateIdentifier(identifier)).isFalse();
     }
+
+    @Test
+    public void validateIdentifierWhenNotCanonicalShouldReturnFalse() {
+        assertThat(identifierService.validateIdentifier("1-2-3-4-5")).isFalse();
+        assertThat(identifierService.validateIdentifier("61bbcfec-4272-4344-94d5-9db33f228c7g")).isFalse();
+        assertThat(identifierService.validateIdentifier("61bbcfec+4272-4344-94d5-9db33f228c7a")).isFalse();
+        assertThat(identifierService.validateIdentifier("61BBCFEC-4272-4344-94D5-9DB33F228C7A")).isFalse();
+        assertThat(identifierService.validateIdentifier("")).isFalse();
+        assertThat(identifierService.validateIdentifier(null)).isFalse();
+    }
+
+    @Test
+    public void normalizeIdentifierShouldMakeUppercaseHexCanonical() {
+        String identifier = identifierService.generateIdentifier();
+        assertThat(IdentifierService.normalizeIdentifier(identifier.toUpperCase())).isEqualTo(identifier);
+        assertThat(identifierService.validateIdentifier(IdentifierService.normalizeIdentifier("61BBCFEC-4272-4344-94D5-9DB33F228C7A"))).isTrue();
+        assertThat(IdentifierService.normalizeIdentifier(null)).isNull();
+    }
+
+    @Test
+    public void validateIdentifierWhenGeneratedShouldReturnTrue() {
+        assertThat(identifierService.validateIdentifier(identifierService.generateIdentifier())).isTrue();
+    }
 }
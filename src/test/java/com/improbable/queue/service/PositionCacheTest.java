@@ -0,0 +1,137 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PositionCacheTest {
+
+    private final ObjectQueueStore store = new ObjectQueueStore(10);
+    private final PositionCache cache = new PositionCache(store, 60_000);
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void admissionsShouldKeepCachedPositionsExact() {
+        List<UserStub> users = join(35);
+        cache.rebuild();
+
+        cache.beginChange();
+        int admitted = store.admit(12).size();
+        cache.endChange(admitted, 0, false);
+
+        assertThat(cache.positionOf(users.get(12).getTicket())).isEqualTo(0);
+        assertThat(cache.positionOf(users.get(34).getTicket())).isEqualTo(22);
+    }
+
+    @Test
+    public void usersJoinedAfterTheBuildShouldNotBeAnswered() {
+        join(5);
+        cache.rebuild();
+        UserStub late = join(1).get(0);
+
+        assertThat(cache.positionOf(late.getTicket())).isEqualTo(-1);
+        cache.rebuildIfChanged();
+        assertThat(cache.positionOf(late.getTicket())).isEqualTo(5);
+    }
+
+    @Test
+    public void leavesShouldOnlyLagWithinTheStalenessBound() throws Exception {
+        PositionCache strict = new PositionCache(store, 1);
+        List<UserStub> users = join(20);
+        cache.rebuild();
+        strict.rebuild();
+
+        for (PositionCache each : new PositionCache[]{cache, strict}) {
+            each.beginChange();
+        }
+        store.remove(users.get(0).getIdentifier());
+        for (PositionCache each : new PositionCache[]{cache, strict}) {
+            each.endChange(0, 1, false);
+        }
+        Thread.sleep(5);
+
+        //    within the bound the old rank is served; past it, either a rebuilt table or no answer
+        assertThat(cache.positionOf(users.get(10).getTicket())).isEqualTo(10);
+        strict.close();
+        assertThat(strict.positionOf(users.get(10).getTicket())).isIn(-1L, 9L);
+    }
+
+    @Test
+    public void replacingTheContentsShouldInvalidateTheTable() {
+        List<UserStub> users = join(5);
+        cache.rebuild();
+
+        cache.beginChange();
+        store.clear();
+        cache.endChange(0, 0, true);
+
+        assertThat(cache.positionOf(users.get(3).getTicket())).isEqualTo(-1);
+    }
+
+    @Test
+    public void rebuildShouldBeDiscardedWhenTheQueueChangesMeanwhile() {
+        List<UserStub> users = join(5);
+        cache.beginChange();
+        cache.rebuild();
+        cache.endChange(0, 0, false);
+
+        assertThat(cache.positionOf(users.get(3).getTicket())).isEqualTo(-1);
+    }
+
+    @Test
+    public void rebuildShouldKeepItsTableWhileUsersKeepLeaving() {
+        List<UserStub> users = new ArrayList<>();
+        PositionCache[] leavingCache = new PositionCache[1];
+        //    every tenth user the scan visits, the user at the back of the queue leaves
+        ObjectQueueStore leaving = new ObjectQueueStore(10) {
+            @Override
+            public void forEachWaiting(QueueStore.TicketVisitor visitor) {
+                int[] visited = {0};
+                super.forEachWaiting(ticket -> {
+                    visitor.visit(ticket);
+                    if (++visited[0] % 10 == 0 && remove(users.remove(users.size() - 1).getIdentifier())) {
+                        leavingCache[0].left();
+                    }
+                });
+            }
+        };
+        for (int i = 0; i < 1_000; i++) {
+            UserStub userStub = UserStub.builder().identifier(UUID.randomUUID().toString()).build();
+            leaving.add(userStub);
+            users.add(userStub);
+        }
+        leavingCache[0] = new PositionCache(leaving, 60_000);
+        try {
+            leavingCache[0].rebuild();
+            leavingCache[0].rebuild();
+
+            //    both scans raced leaves, yet every remaining rank is exact as only users not yet visited left
+            assertThat(users.size()).isLessThan(850);
+            for (int i = 0; i < users.size(); i += 50) {
+                assertThat(leavingCache[0].positionOf(users.get(i).getTicket())).isEqualTo(i);
+            }
+        } finally {
+            leavingCache[0].close();
+        }
+    }
+
+    private List<UserStub> join(int count) {
+        List<UserStub> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UserStub userStub = UserStub.builder().identifier(UUID.randomUUID().toString()).build();
+            store.add(userStub);
+            users.add(userStub);
+        }
+        return users;
+    }
+}
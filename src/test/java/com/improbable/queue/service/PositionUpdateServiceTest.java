@@ -0,0 +1,154 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class PositionUpdateServiceTest {
+
+    @Autowired
+    private QueueService queueService;
+
+    @Autowired
+    private PositionUpdateService positionUpdateService;
+
+    @Test
+    public void subscribeShouldSendCurrentPositionAtOnce() {
+        queueService.clear();
+        queueService.join(UserStub.builder().build());
+        String identifier = queueService.join(UserStub.builder().build());
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+
+        positionUpdateService.subscribe(identifier, subscriber);
+
+        assertThat(subscriber.events).containsExactly("position 1");
+        positionUpdateService.unsubscribe(identifier, subscriber);
+    }
+
+    @Test
+    public void admitShouldPushNewPositionsAndThenAdmission() throws Exception {
+        queueService.clear();
+        queueService.join(UserStub.builder().build());
+        queueService.join(UserStub.builder().build());
+        String identifier = queueService.join(UserStub.builder().build());
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        positionUpdateService.subscribe(identifier, subscriber);
+
+        queueService.admit(1);
+        awaitEvents(subscriber, 2);
+        queueService.admit(2);
+        awaitEvents(subscriber, 3);
+
+        assertThat(subscriber.events).containsExactly("position 2", "position 1", "admitted");
+        assertThat(subscriber.closed).isTrue();
+        assertThat(positionUpdateService.subscriberCount()).isZero();
+    }
+
+    @Test
+    public void leaveShouldCloseTheLeaversStream() throws Exception {
+        queueService.clear();
+        String identifier = queueService.join(UserStub.builder().build());
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        positionUpdateService.subscribe(identifier, subscriber);
+
+        queueService.removeIdentifier(identifier);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!subscriber.closed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(subscriber.closed).isTrue();
+        assertThat(subscriber.events).containsExactly("position 0");
+    }
+
+    @Test
+    public void publishShouldReachOtherSubscribersWhenOneFails() throws Exception {
+        queueService.clear();
+        queueService.join(UserStub.builder().build());
+        String broken = queueService.join(UserStub.builder().build());
+        String identifier = queueService.join(UserStub.builder().build());
+        RecordingSubscriber failing = new RecordingSubscriber() {
+            @Override
+            public boolean sendPosition(long position) {
+                if (!events.isEmpty()) {
+                    throw new IllegalStateException("stream broke");
+                }
+                return super.sendPosition(position);
+            }
+        };
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        positionUpdateService.subscribe(broken, failing);
+        positionUpdateService.subscribe(identifier, subscriber);
+
+        queueService.admit(1);
+        awaitEvents(subscriber, 2);
+
+        assertThat(subscriber.events).containsExactly("position 2", "position 1");
+        positionUpdateService.unsubscribe(broken, failing);
+        positionUpdateService.unsubscribe(identifier, subscriber);
+    }
+
+    @Test
+    public void publishAllShouldLookSubscribersUpOnlyWhenTheEpochMoved() throws Exception {
+        queueService.clear();
+        queueService.join(UserStub.builder().build());
+        String identifier = queueService.join(UserStub.builder().build());
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        positionUpdateService.subscribe(identifier, subscriber);
+        positionUpdateService.publishAll();
+        long lookups = queueService.getMetrics().getPollBatch().count();
+
+        for (int i = 0; i < 3; i++) {
+            queueService.join(UserStub.builder().build());
+            positionUpdateService.publishAll();
+        }
+        assertThat(queueService.getMetrics().getPollBatch().count()).isEqualTo(lookups);
+
+        queueService.admit(1);
+        positionUpdateService.publishAll();
+        awaitEvents(subscriber, 2);
+
+        assertThat(queueService.getMetrics().getPollBatch().count()).isEqualTo(lookups + 1);
+        assertThat(subscriber.events).containsExactly("position 1", "position 0");
+        positionUpdateService.unsubscribe(identifier, subscriber);
+    }
+
+    private static void awaitEvents(RecordingSubscriber subscriber, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (subscriber.events.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingSubscriber implements PositionUpdateService.Subscriber {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        private volatile boolean closed;
+
+        @Override
+        public boolean sendPosition(long position) {
+            events.add("position " + position);
+            return true;
+        }
+
+        @Override
+        public boolean sendAdmitted() {
+            events.add("admitted");
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrimitiveQueueStoreTest {
+
+    private final PrimitiveQueueStore store = new PrimitiveQueueStore(10);
+
+    @Test
+    public void addShouldMakeIdentifierFindable() {
+        String identifier = join("alice");
+        assertThat(store.contains(identifier)).isTrue();
+        //    the object store's string keys would miss it too
+        assertThat(store.contains(identifier.toUpperCase())).isFalse();
+        assertThat(store.contains(UUID.randomUUID().toString())).isFalse();
+        assertThat(store.contains("not-an-identifier")).isFalse();
+        assertThat(store.isAdmitted(identifier)).isFalse();
+    }
+
+    @Test
+    public void positionOfShouldCountWaitingUsersAhead() {
+        List<String> identifiers = joinMany(35);
+        store.remove(identifiers.get(3));
+        store.remove(identifiers.get(22));
+
+        assertThat(store.positionOf(identifiers.get(2))).isEqualTo(2);
+        assertThat(store.positionOf(identifiers.get(4))).isEqualTo(3);
+        assertThat(store.positionOf(identifiers.get(34))).isEqualTo(32);
+        assertThat(store.positionOf(identifiers.get(3))).isEqualTo(-1);
+        assertThat(store.size()).isEqualTo(33);
+    }
+
+    @Test
+    public void admitShouldReturnUsersInOrderWithTheirDetails() {
+        String first = join("alice");
+        String second = join(null);
+        join("carol");
+
+        List<UserStub> admitted = store.admit(2);
+
+        assertThat(admitted).extracting(UserStub::getIdentifier).containsExactly(first, second);
+        assertThat(admitted.get(0).getUsername()).isEqualTo("alice");
+        assertThat(admitted.get(0).isAdmittable()).isTrue();
+        assertThat(admitted.get(1).getTicket()).isEqualTo(1);
+        assertThat(store.isAdmitted(first)).isTrue();
+        assertThat(store.peek().getUsername()).isEqualTo("carol");
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void admitShouldKeepDrainedSegmentsUntilAdmittedUsersLeave() {
+        List<String> identifiers = joinMany(25);
+
+        store.admit(20);
+
+        assertThat(store.segmentCount()).isEqualTo(3);
+        for (int i = 0; i < 10; i++) {
+            assertThat(store.remove(identifiers.get(i))).isTrue();
+        }
+        assertThat(store.segmentCount()).isEqualTo(2);
+        assertThat(store.isAdmitted(identifiers.get(15))).isTrue();
+        assertThat(store.positionOf(identifiers.get(24))).isEqualTo(4);
+    }
+
+    @Test
+    public void removeShouldOnlySucceedOnce() {
+        String identifier = join(null);
+        assertThat(store.remove(identifier)).isTrue();
+        assertThat(store.remove(identifier)).isFalse();
+        assertThat(store.contains(identifier)).isFalse();
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    public void addWhenIndexGrowsShouldKeepEveryIdentifier() {
+        List<String> identifiers = joinMany(20_000);
+        for (int i = 0; i < identifiers.size(); i += 2) {
+            store.remove(identifiers.get(i));
+        }
+        for (int i = 0; i < identifiers.size(); i++) {
+            assertThat(store.contains(identifiers.get(i))).isEqualTo(i % 2 == 1);
+        }
+        assertThat(store.positionOf(identifiers.get(19_999))).isEqualTo(9_999);
+    }
+
+    private String join(String username) {
+        String identifier = UUID.randomUUID().toString();
+        store.add(UserStub.builder().identifier(identifier).username(username).build());
+        return identifier;
+    }
+
+    private List<String> joinMany(int count) {
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            identifiers.add(join(null));
+        }
+        return identifiers;
+    }
+
+    @Test
+    public void addAllShouldKeepTheBatchInOrder() {
+        join("first");
+        List<UserStub> batch = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            batch.add(UserStub.builder().identifier(UUID.randomUUID().toString()).username("user" + i).build());
+        }
+
+        store.addAll(batch);
+
+        assertThat(store.size()).isEqualTo(26);
+        assertThat(store.segmentCount()).isEqualTo(3);
+        assertThat(store.positionOf(batch.get(0).getIdentifier())).isEqualTo(1);
+        assertThat(store.positionOf(batch.get(24).getIdentifier())).isEqualTo(25);
+        List<UserStub> admitted = store.admit(26);
+        assertThat(admitted.get(25).getUsername()).isEqualTo("user24");
+    }
+
+    @Test
+    public void statusOfShouldMatchSingleLookups() {
+        List<String> identifiers = joinMany(35);
+        store.admit(3);
+        store.remove(identifiers.get(20));
+        List<String> polled = Arrays.asList(identifiers.get(34), identifiers.get(1), "not-an-identifier", identifiers.get(20),
+                identifiers.get(12), identifiers.get(15));
+
+        long[] statuses = new long[polled.size()];
+        store.statusOf(polled, statuses);
+
+        assertThat(statuses).containsExactly(30, QueueStore.ADMITTED, QueueStore.UNKNOWN, QueueStore.UNKNOWN,
+                store.positionOf(identifiers.get(12)), store.positionOf(identifiers.get(15)));
+    }
+
+    @Test
+    public void compactShouldKeepPresentUsersAddressable() {
+        List<String> identifiers = joinMany(20);
+        String named = join("alice");
+        store.admit(12);
+        for (int i = 0; i < 10; i++) {
+            if (i != 4) {
+                store.remove(identifiers.get(i));
+            }
+        }
+        for (int i = 12; i < 20; i++) {
+            if (i != 15) {
+                store.remove(identifiers.get(i));
+            }
+        }
+
+        assertThat(store.compact(0.5, 10)).isEqualTo(2);
+
+        assertThat(store.isAdmitted(identifiers.get(4))).isTrue();
+        assertThat(store.isAdmitted(identifiers.get(11))).isTrue();
+        assertThat(store.positionOf(identifiers.get(15))).isZero();
+        assertThat(store.positionOf(named)).isEqualTo(1);
+        assertThat(store.contains(identifiers.get(3))).isFalse();
+        List<Long> tickets = new ArrayList<>();
+        store.forEachWaiting(tickets::add);
+        assertThat(tickets).containsExactly(15L, 20L);
+
+        assertThat(store.remove(identifiers.get(4))).isTrue();
+        assertThat(store.segmentCount()).isEqualTo(2);
+        List<UserStub> admitted = store.admit(2);
+        assertThat(admitted).extracting(UserStub::getIdentifier).containsExactly(identifiers.get(15), named);
+        assertThat(admitted.get(0).getTicket()).isEqualTo(15);
+        assertThat(admitted.get(1).getUsername()).isEqualTo("alice");
+    }
+
+    @Test
+    public void forEachWaitingFromShouldSeekThroughCompactedSegments() {
+        List<String> identifiers = joinMany(30);
+        String named = join("alice");
+        store.admit(4);
+        for (int i = 10; i < 20; i++) {
+            if (i != 16) {
+                store.remove(identifiers.get(i));
+            }
+        }
+        store.compact(0.5, 10);
+        List<String> page = new ArrayList<>();
+        List<Long> tickets = new ArrayList<>();
+
+        //    waiting: 4..9, 16, 20..29, then alice
+        store.forEachWaitingFrom(5, 3, (ticket, mostSignificantBits, leastSignificantBits, admitted, username) -> {
+            page.add(UuidCodec.format(mostSignificantBits, leastSignificantBits));
+            tickets.add(ticket);
+        });
+
+        assertThat(page).containsExactly(identifiers.get(9), identifiers.get(16), identifiers.get(20));
+        assertThat(tickets).containsExactly(9L, 16L, 20L);
+        List<String> usernames = new ArrayList<>();
+        store.forEachWaitingFrom(17, 10, (ticket, mostSignificantBits, leastSignificantBits, admitted, username) -> usernames.add(username));
+        assertThat(usernames).containsExactly("alice");
+        assertThat(store.positionOf(named)).isEqualTo(17);
+    }
+
+    @Test
+    public void statusOfRawIdentifiersShouldMatchTheFormattedLookup() {
+        List<String> identifiers = joinMany(25);
+        store.admit(2);
+        store.remove(identifiers.get(7));
+        List<String> polled = Arrays.asList(identifiers.get(0), identifiers.get(7), identifiers.get(24), UUID.randomUUID().toString());
+        long[] mostSignificantBits = new long[8];
+        long[] leastSignificantBits = new long[8];
+        for (int i = 0; i < polled.size(); i++) {
+            mostSignificantBits[i] = UuidCodec.mostSignificantBits(polled.get(i));
+            leastSignificantBits[i] = UuidCodec.leastSignificantBits(polled.get(i));
+        }
+        long[] statuses = new long[8];
+
+        store.statusOf(mostSignificantBits, leastSignificantBits, polled.size(), statuses);
+
+        assertThat(statuses).startsWith(QueueStore.ADMITTED, QueueStore.UNKNOWN, 21, QueueStore.UNKNOWN);
+        long[] formatted = new long[polled.size()];
+        store.statusOf(polled, formatted);
+        assertThat(Arrays.copyOf(statuses, polled.size())).containsExactly(formatted);
+    }
+}
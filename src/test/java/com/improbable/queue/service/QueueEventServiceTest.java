@@ -0,0 +1,115 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.QueueEvent;
+import com.improbable.queue.model.UserStub;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"queue.events.enabled=true", "queue.events.capacity=16", "queue.events.batch-size=4"})
+public class QueueEventServiceTest {
+
+    @Autowired
+    private QueueEventService queueEventService;
+
+    @Autowired
+    private QueueService queueService;
+
+    @Test
+    public void readShouldReturnJoinsAdmissionsAndLeavesInOrder() {
+        queueService.clear();
+        long from = queueEventService.lastSequence() + 1;
+        String first = queueService.join(UserStub.builder().build());
+        List<String> batch = queueService.joinAll(Collections.singletonList(UserStub.builder().build()));
+        queueService.admit(1);
+        queueService.removeIdentifier(batch.get(0));
+
+        List<QueueEvent> events = queueEventService.read(from, 10);
+
+        assertThat(events).extracting(QueueEvent::getType)
+                .containsExactly(QueueEvent.JOIN, QueueEvent.JOIN, QueueEvent.ADMIT, QueueEvent.LEAVE);
+        assertThat(events).extracting(QueueEvent::getIdentifier).containsExactly(first, batch.get(0), first, batch.get(0));
+        assertThat(events).extracting(QueueEvent::getTicket).containsExactly(0L, 1L, 0L, null);
+        assertThat(events.get(3).getSequence()).isEqualTo(from + 3);
+    }
+
+    @Test
+    public void readWhenAnAdmissionOvertookItsJoinShouldStillListTheJoinFirst() {
+        queueService.clear();
+        long from = queueEventService.lastSequence() + 1;
+        UserStub overtaken = UserStub.builder().identifier(UuidCodec.format(0, 1)).ticket(0).build();
+        UserStub next = UserStub.builder().identifier(UuidCodec.format(0, 2)).ticket(1).build();
+
+        //    the order the listener hears of them when admission runs between the first user's add and its join
+        queueEventService.onAdmit(Collections.singletonList(overtaken));
+        queueEventService.onJoin(overtaken);
+        queueEventService.onJoin(next);
+        queueEventService.onAdmit(Collections.singletonList(next));
+
+        List<QueueEvent> events = queueEventService.read(from, 10);
+
+        assertThat(events).extracting(QueueEvent::getType)
+                .containsExactly(QueueEvent.JOIN, QueueEvent.ADMIT, QueueEvent.JOIN, QueueEvent.ADMIT);
+        assertThat(events).extracting(QueueEvent::getTicket).containsExactly(0L, 0L, 1L, 1L);
+    }
+
+    @Test
+    public void subscriberShouldHearOfAnAdmissionInBatchesAndOfWhatItLost() throws InterruptedException {
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        QueueEventService.Subscriber subscriber = new QueueEventService.Subscriber() {
+            @Override
+            public boolean send(List<QueueEvent> events) {
+                received.add(new ArrayList<>(events));
+                return true;
+            }
+
+            @Override
+            public boolean sendLost(long from, long to) {
+                received.add(new long[]{from, to});
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        long from = queueEventService.lastSequence() + 1;
+        //    more than the ring holds, so the oldest are overwritten before the subscriber reads them
+        for (int i = 0; i < 20; i++) {
+            queueService.join(UserStub.builder().build());
+        }
+        queueEventService.subscribe(from, subscriber);
+        try {
+            long[] lost = (long[]) received.poll(5, TimeUnit.SECONDS);
+            assertThat(lost).containsExactly(from, from + 4);
+            List<QueueEvent> events = new ArrayList<>();
+            while (events.size() < 16) {
+                @SuppressWarnings("unchecked")
+                List<QueueEvent> batch = (List<QueueEvent>) received.poll(5, TimeUnit.SECONDS);
+                assertThat(batch).hasSize(4);
+                events.addAll(batch);
+            }
+            assertThat(events.get(15).getSequence()).isEqualTo(from + 19);
+
+            UserStub admitted = queueService.admit(1).get(0);
+            @SuppressWarnings("unchecked")
+            List<QueueEvent> batch = (List<QueueEvent>) received.poll(5, TimeUnit.SECONDS);
+            assertThat(batch).extracting(QueueEvent::getType).containsExactly(QueueEvent.ADMIT);
+            assertThat(batch.get(0).getIdentifier()).isEqualTo(admitted.getIdentifier());
+        } finally {
+            queueEventService.unsubscribe(subscriber);
+        }
+    }
+}
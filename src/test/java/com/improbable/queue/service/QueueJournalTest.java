@@ -0,0 +1,99 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueueJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoverShouldRestoreWaitingAndAdmittedUsersInTicketOrder() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<UUID> identifiers = new ArrayList<>();
+        try (QueueJournal journal = new QueueJournal(directory, 1, 1 << 16, 1)) {
+            start(directory, journal);
+            for (int i = 0; i < 6; i++) {
+                identifiers.add(UUID.randomUUID());
+            }
+            //    concurrent joins can reach the journal out of ticket order
+            join(journal, 1, identifiers.get(1), "bob");
+            join(journal, 0, identifiers.get(0), "alice");
+            for (int i = 2; i < 6; i++) {
+                join(journal, i, identifiers.get(i), null);
+            }
+            journal.appendAdmit(1);
+            journal.appendLeave(identifiers.get(3).getMostSignificantBits(), identifiers.get(3).getLeastSignificantBits());
+            journal.appendLeave(identifiers.get(0).getMostSignificantBits(), identifiers.get(0).getLeastSignificantBits());
+        }
+
+        JournalRecovery recovery = JournalRecovery.recover(directory);
+
+        assertThat(recovery.users()).extracting(UserStub::getIdentifier).containsExactly(
+                identifiers.get(1).toString(), identifiers.get(2).toString(), identifiers.get(4).toString(), identifiers.get(5).toString());
+        assertThat(recovery.users().get(0).getUsername()).isEqualTo("bob");
+        assertThat(recovery.users().get(1).getUsername()).isNull();
+        assertThat(recovery.admittedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void recoverShouldSpanRolledFiles() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 1, 4096, 1)) {
+            start(directory, journal);
+            for (int i = 0; i < 1_000; i++) {
+                join(journal, i, UUID.randomUUID(), "user" + i);
+            }
+        }
+
+        assertThat(Files.list(directory).count()).isGreaterThan(1);
+        assertThat(JournalRecovery.recover(directory).users()).hasSize(1_000);
+    }
+
+    @Test
+    public void recoverWhenAStartFailedBeforeItsSnapshotShouldUseThePreviousGeneration() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 1, 1 << 16, 1)) {
+            start(directory, journal);
+            join(journal, 0, UUID.randomUUID(), null);
+        }
+        //    the next start opened its generation, then died before writing the snapshot it starts from
+        new QueueJournal(directory, 2, 1 << 16, 1).close();
+
+        assertThat(JournalRecovery.recover(directory).users()).hasSize(1);
+        QueueJournal.deleteOtherGenerations(directory, 2);
+        assertThat(JournalRecovery.recover(directory)).isNull();
+    }
+
+    @Test(timeout = 60_000)
+    public void awaitDurableShouldWakeTheFlusherRatherThanWaitOutItsInterval() throws Exception {
+        //    a flusher left to its interval would not run within the test's timeout
+        try (QueueJournal journal = new QueueJournal(folder.getRoot().toPath(), 1, 1 << 16, 3_600_000)) {
+            journal.awaitDurable(journal.appendAdmit(0));
+            journal.awaitDurable(journal.appendAdmit(1));
+        }
+    }
+
+    /**
+     * Writes the empty snapshot a start writes before journaling anything.
+     */
+    private static void start(Path directory, QueueJournal journal) throws Exception {
+        QueueSnapshot.write(directory, journal.generation(), journal.position(), -1, visitor -> {
+        });
+    }
+
+    private static void join(QueueJournal journal, long ticket, UUID identifier, String username) {
+        journal.appendJoin(ticket, identifier.getMostSignificantBits(), identifier.getLeastSignificantBits(), false, username);
+    }
+}
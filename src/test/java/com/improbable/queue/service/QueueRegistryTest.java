@@ -0,0 +1,67 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class QueueRegistryTest {
+
+    @Autowired
+    private QueueRegistry queueRegistry;
+
+    @Autowired
+    private QueueService queueService;
+
+    @Test
+    public void getWhenDefaultShouldReturnTheQueueServiceBean() {
+        assertThat(queueRegistry.get(QueueRegistry.DEFAULT_QUEUE)).isSameAs(queueService);
+    }
+
+    @Test
+    public void createShouldMakeAnIndependentQueue() {
+        assertThat(queueRegistry.create("concert")).isTrue();
+        QueueService concert = queueRegistry.get("concert");
+        concert.join(UserStub.builder().build());
+        String identifier = concert.join(UserStub.builder().build());
+
+        assertThat(concert.getName()).isEqualTo("concert");
+        assertThat(concert.getPositionInQueue(identifier)).isEqualTo(1);
+        assertThat(queueService.checkExists(identifier)).isFalse();
+        assertThat(queueRegistry.names()).contains("concert", QueueRegistry.DEFAULT_QUEUE);
+        queueRegistry.delete("concert");
+    }
+
+    @Test
+    public void createWhenNameIsTakenShouldReturnFalse() {
+        assertThat(queueRegistry.create("festival")).isTrue();
+        assertThat(queueRegistry.create("festival")).isFalse();
+        queueRegistry.delete("festival");
+    }
+
+    @Test
+    public void createWhenNameIsInvalidShouldThrow() {
+        assertThatThrownBy(() -> queueRegistry.create("no spaces")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void deleteShouldDropTheQueue() {
+        queueRegistry.create("matinee");
+        assertThat(queueRegistry.delete("matinee")).isTrue();
+        assertThat(queueRegistry.get("matinee")).isNull();
+        assertThat(queueRegistry.delete("matinee")).isFalse();
+    }
+
+    @Test
+    public void deleteWhenDefaultShouldBeRefused() {
+        assertThat(queueRegistry.delete(QueueRegistry.DEFAULT_QUEUE)).isFalse();
+        assertThat(queueRegistry.get(QueueRegistry.DEFAULT_QUEUE)).isNotNull();
+    }
+}
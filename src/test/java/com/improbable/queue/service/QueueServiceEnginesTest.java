@@ -0,0 +1,133 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.QueueEntry;
+import com.improbable.queue.model.QueueStatus;
+import com.improbable.queue.model.UserStub;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Behaviour both storage engines behind {@code queue.store} must share, run once against each.
+ */
+@RunWith(Parameterized.class)
+@SpringBootTest
+public class QueueServiceEnginesTest {
+
+    @ClassRule
+    public static final SpringClassRule SPRING_CLASS_RULE = new SpringClassRule();
+
+    @Rule
+    public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+    @Parameterized.Parameter
+    public String storeType;
+
+    @Autowired
+    private IdentifierService identifierService;
+
+    private QueueService queueService;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<String> storeTypes() {
+        return Arrays.asList("object", "primitive");
+    }
+
+    @Before
+    public void setUp() {
+        queueService = new QueueService(storeType, identifierService, storeType, 0);
+    }
+
+    @After
+    public void tearDown() {
+        queueService.close();
+    }
+
+    @Test
+    public void compactShouldKeepPositionsOnceMostOfASegmentLeft() {
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            identifiers.add(queueService.join(UserStub.builder().build()));
+        }
+        for (int i = 1_000; i < 2_000; i++) {
+            if (i % 10 != 0) {
+                queueService.removeIdentifier(identifiers.get(i));
+            }
+        }
+
+        assertThat(queueService.compact(0.5, 16)).isEqualTo(1);
+        assertThat(queueService.compact(0.5, 16)).isZero();
+
+        assertThat(queueService.getPositionInQueue(identifiers.get(1_500))).isEqualTo(1_050);
+        assertThat(queueService.getPositionInQueue(identifiers.get(2_999))).isEqualTo(2_099);
+        assertThat(queueService.removeIdentifier(identifiers.get(1_010))).isTrue();
+        assertThat(queueService.removeIdentifier(identifiers.get(1_011))).isFalse();
+        assertThat(queueService.getPositionInQueue(identifiers.get(1_500))).isEqualTo(1_049);
+        List<UserStub> admitted = queueService.admit(1_099);
+        assertThat(admitted.get(1_000).getIdentifier()).isEqualTo(identifiers.get(1_000));
+        assertThat(admitted.get(1_001).getIdentifier()).isEqualTo(identifiers.get(1_020));
+        assertThat(queueService.getPositionInQueue(identifiers.get(2_000))).isEqualTo(0);
+        assertThat(queueService.getMetrics().getCompactedSegments()).isEqualTo(1);
+    }
+
+    @Test
+    public void pollShouldResolveEachStateWithTheEpochOfItsPositions() {
+        String first = queueService.join(UserStub.builder().build());
+        String second = queueService.join(UserStub.builder().build());
+        String third = queueService.join(UserStub.builder().build());
+        assertThat(queueService.poll(second)).isEqualTo(QueueStatus.waiting(1, 0));
+        queueService.admit(1);
+        assertThat(queueService.poll(second)).isEqualTo(QueueStatus.waiting(0, 1));
+        queueService.removeIdentifier(second);
+
+        assertThat(queueService.poll(first)).isEqualTo(QueueStatus.admitted(2));
+        assertThat(queueService.poll(second)).isEqualTo(QueueStatus.notFound(2));
+        assertThat(queueService.poll(third)).isEqualTo(QueueStatus.waiting(0, 2));
+        assertThat(queueService.poll(UUID.randomUUID().toString()).isFound()).isFalse();
+        //    joins and admissions of nobody move no one
+        queueService.join(UserStub.builder().build());
+        assertThat(queueService.poll(third)).isEqualTo(QueueStatus.waiting(0, 2));
+
+        queueService.clear();
+        String again = queueService.join(UserStub.builder().build());
+        assertThat(queueService.poll(again)).isEqualTo(QueueStatus.waiting(0, 3));
+    }
+
+    @Test
+    public void rangeShouldListWaitingUsersFromAPositionDeepInTheQueue() {
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            identifiers.add(queueService.join(UserStub.builder().username("user" + i).build()));
+        }
+        queueService.admit(300);
+        for (int i = 1_000; i < 1_500; i++) {
+            queueService.removeIdentifier(identifiers.get(i));
+        }
+
+        List<QueueEntry> page = queueService.range(698, 4);
+
+        assertThat(page).extracting(QueueEntry::getPosition).containsExactly(698L, 699L, 700L, 701L);
+        assertThat(page).extracting(QueueEntry::getUsername).containsExactly("user998", "user999", "user1500", "user1501");
+        assertThat(page).extracting(QueueEntry::getTicket).containsExactly(998L, 999L, 1_500L, 1_501L);
+        for (QueueEntry entry : page) {
+            assertThat(queueService.getPositionInQueue(entry.getIdentifier())).isEqualTo((int) entry.getPosition());
+        }
+        assertThat(queueService.range(1_698, 10)).extracting(QueueEntry::getIdentifier).containsExactly(identifiers.get(2_498), identifiers.get(2_499));
+        assertThat(queueService.range(1_700, 10)).isEmpty();
+    }
+}
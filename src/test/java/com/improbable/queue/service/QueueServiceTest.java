@@ -7,7 +7,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -18,12 +27,37 @@ public class QueueServiceTest {
     @Autowired
     private QueueService queueService;
 
+    @Autowired
+    private IdentifierService identifierService;
+
     @Test
     public void joinShouldReturnIdentifier() {
         String identifier = queueService.join(UserStub.builder().build());
         assertThat(identifier).matches("[0-9a-f]{8}-[0-9a-f]{4}-[34][0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}");
     }
 
+    @Test
+    public void joinWithAnIdempotencyKeyShouldOnlyQueueTheUserOnce() {
+        QueueService keyed = new QueueService("keyed", identifierService, "primitive", 0);
+        long duplicates = keyed.getMetrics().getDuplicateJoins();
+        String first = keyed.join(UserStub.builder().username("alice").build(), "token:retry");
+        String retried = keyed.join(UserStub.builder().username("alice").build(), "token:retry");
+        String other = keyed.join(UserStub.builder().build(), "token:other");
+
+        assertThat(retried).isEqualTo(first);
+        assertThat(other).isNotEqualTo(first);
+        assertThat(keyed.size()).isEqualTo(2);
+        assertThat(keyed.getMetrics().getDuplicateJoins()).isEqualTo(duplicates + 1);
+
+        keyed.admit(1);
+        assertThat(keyed.join(UserStub.builder().build(), "token:retry")).isEqualTo(first);
+        keyed.removeIdentifier(first);
+        String rejoined = keyed.join(UserStub.builder().build(), "token:retry");
+        assertThat(rejoined).isNotEqualTo(first);
+        assertThat(keyed.getPositionInQueue(rejoined)).isEqualTo(1);
+        keyed.close();
+    }
+
     @Test
     public void checkExistsWhenIdentifierExistsShouldReturnTrue() {
         String identifier = queueService.join(UserStub.builder().build());
@@ -62,6 +96,55 @@ public class QueueServiceTest {
         assertThat(queueService.getPositionInQueue(userToCheck.getIdentifier())).isEqualTo(234_567);
     }
 
+    @Test
+    public void getPositionInQueueWhenManyUsersLeftShouldCountOnlyThoseStillAhead() {
+        queueService.clear();
+        String[] identifiers = new String[1_000_000];
+        for (int i = 0; i < identifiers.length; i++) {
+            identifiers[i] = queueService.join(UserStub.builder().build());
+        }
+        for (int i = 0; i < 1_000; i++) {
+            queueService.removeIdentifier(identifiers[i * 1_000]);
+        }
+
+        for (int i = 0; i < identifiers.length; i += 7) {
+            if (i % 1_000 != 0) {
+                int removedAhead = i / 1_000 + 1;
+                assertThat(queueService.getPositionInQueue(identifiers[i])).isEqualTo(i - removedAhead);
+            }
+        }
+        assertThat(queueService.size()).isEqualTo(999_000);
+    }
+
+    @Test
+    public void joinWhenManyThreadsJoinAtOnceShouldNeverFail() throws Exception {
+        queueService.clear();
+        int threads = 8;
+        int joinsPerThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                List<String> identifiers = new ArrayList<>(joinsPerThread);
+                for (int i = 0; i < joinsPerThread; i++) {
+                    identifiers.add(queueService.join(UserStub.builder().build()));
+                }
+                return identifiers;
+            }));
+        }
+        Set<Integer> positions = new HashSet<>();
+        for (Future<List<String>> result : results) {
+            for (String identifier : result.get()) {
+                positions.add(queueService.getPositionInQueue(identifier));
+            }
+        }
+        executor.shutdown();
+        assertThat(queueService.size()).isEqualTo(threads * joinsPerThread);
+        assertThat(positions).hasSize(threads * joinsPerThread);
+        assertThat(Collections.min(positions)).isEqualTo(0);
+        assertThat(Collections.max(positions)).isEqualTo(threads * joinsPerThread - 1);
+    }
+
     @Test
     public void getPositionInQueueWhenIdentifierNotExistsShouldReturnNegative() {
         queueService.join(UserStub.builder().build());
@@ -136,6 +219,50 @@ public class QueueServiceTest {
         assertThat(queueService.isQueueEmpty()).isTrue();
     }
 
+    @Test
+    public void admitShouldDequeueUsersInOrderAndKeepThemAdmittable() {
+        queueService.clear();
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            identifiers.add(queueService.join(UserStub.builder().build()));
+        }
+        queueService.removeIdentifier(identifiers.get(10));
+
+        List<UserStub> admitted = queueService.admit(2_500);
+
+        assertThat(admitted).hasSize(2_500);
+        assertThat(admitted.get(0).getIdentifier()).isEqualTo(identifiers.get(0));
+        assertThat(admitted.get(10).getIdentifier()).isEqualTo(identifiers.get(11));
+        assertThat(queueService.isIdentifierAdmittable(identifiers.get(2_500))).isTrue();
+        assertThat(queueService.checkExists(identifiers.get(2_500))).isTrue();
+        assertThat(queueService.getPositionInQueue(identifiers.get(2_501))).isEqualTo(0);
+        assertThat(queueService.size()).isEqualTo(499);
+        assertThat(queueService.getFirst().getIdentifier()).isEqualTo(identifiers.get(2_501));
+    }
+
+    @Test
+    public void admitWhenQueueIsEmptyShouldReturnNobody() {
+        queueService.clear();
+        assertThat(queueService.admit(10)).isEmpty();
+    }
+
+    @Test
+    public void restoreShouldReplaceQueueContents() {
+        queueService.clear();
+        String stale = queueService.join(UserStub.builder().build());
+        List<UserStub> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            users.add(UserStub.builder().identifier(UUID.randomUUID().toString()).build());
+        }
+
+        queueService.restore(users, 2);
+
+        assertThat(queueService.checkExists(stale)).isFalse();
+        assertThat(queueService.isIdentifierAdmittable(users.get(1).getIdentifier())).isTrue();
+        assertThat(queueService.getPositionInQueue(users.get(4).getIdentifier())).isEqualTo(2);
+        assertThat(queueService.size()).isEqualTo(3);
+    }
+
     @Test
     public void getFirstWhenQueueIsNotEmptyShouldReturnFirst() {
         queueService.clear();
@@ -145,4 +272,224 @@ public class QueueServiceTest {
         queueService.join(UserStub.builder().build());
         assertThat(queueService.getFirst()).isEqualTo(firstUser);
     }
+
+    @Test
+    public void metricsShouldRecordLatenciesAndGauges() {
+        queueService.clear();
+        QueueMetrics metrics = queueService.getMetrics();
+        long joins = metrics.getJoin().count();
+        long admissions = metrics.getAdmit().count();
+        String first = queueService.join(UserStub.builder().build());
+        queueService.join(UserStub.builder().build());
+        queueService.join(UserStub.builder().build());
+        queueService.getPositionInQueue(first);
+        queueService.admit(1);
+
+        assertThat(metrics.getJoin().count()).isEqualTo(joins + 3);
+        assertThat(metrics.getAdmit().count()).isEqualTo(admissions + 1);
+        assertThat(metrics.getPosition().max()).isPositive();
+        assertThat(metrics.getQueueLength()).isEqualTo(2);
+        assertThat(metrics.getAdmittedCount()).isEqualTo(1);
+        assertThat(metrics.getSegmentCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void readWhileWriteLockIsHeldShouldCountTheFailure() throws Exception {
+        QueueMetrics metrics = queueService.getMetrics();
+        long failures = metrics.getReadLockFailures();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        //    a listener running under the write lock lets another thread try to read meanwhile
+        QueueListener reader = new QueueListener() {
+            @Override
+            public void onAdmit(List<UserStub> admitted) {
+                Future<?> read = executor.submit(() -> queueService.checkExists(admitted.get(0).getIdentifier()));
+                try {
+                    read.get();
+                } catch (Exception e) {
+                    assertThat(e.getCause()).hasMessage("please retry later");
+                }
+            }
+        };
+        queueService.clear();
+        queueService.join(UserStub.builder().build());
+        queueService.addListener(reader);
+        try {
+            queueService.admit(1);
+        } finally {
+            queueService.removeListener(reader);
+            executor.shutdown();
+        }
+
+        assertThat(metrics.getReadLockFailures()).isEqualTo(failures + 1);
+    }
+
+    @Test
+    public void leaveWhileWriteLockIsHeldShouldReportBusyRatherThanNotFound() throws Exception {
+        queueService.clear();
+        queueService.join(UserStub.builder().build());
+        String waiting = queueService.join(UserStub.builder().build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Throwable> failures = new ArrayList<>();
+        QueueListener leaver = new QueueListener() {
+            @Override
+            public void onAdmit(List<UserStub> admitted) {
+                try {
+                    executor.submit(() -> queueService.removeIdentifier(waiting)).get();
+                } catch (Exception e) {
+                    failures.add(e.getCause());
+                }
+            }
+        };
+        queueService.addListener(leaver);
+        try {
+            queueService.admit(1);
+        } finally {
+            queueService.removeListener(leaver);
+            executor.shutdown();
+        }
+
+        assertThat(failures).hasSize(1);
+        assertThat(failures.get(0)).isInstanceOf(QueueBusyException.class);
+        assertThat(queueService.removeIdentifier(waiting)).isTrue();
+    }
+
+    @Test
+    public void leaveShouldNotBlockReadsOrOtherLeaves() throws Exception {
+        QueueMetrics metrics = queueService.getMetrics();
+        long failures = metrics.getReadLockFailures();
+        String other = queueService.join(UserStub.builder().build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Boolean> results = new ArrayList<>();
+        //    a listener runs while the leave holds its lock, so another thread reads and leaves meanwhile
+        QueueListener concurrent = new QueueListener() {
+            @Override
+            public void onLeave(String identifier) {
+                if (identifier.equals(other)) {
+                    return;
+                }
+                try {
+                    results.add(executor.submit(() -> queueService.checkExists(other)).get());
+                    results.add(executor.submit(() -> queueService.removeIdentifier(other)).get());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        queueService.addListener(concurrent);
+        try {
+            queueService.removeIdentifier(queueService.join(UserStub.builder().build()));
+        } finally {
+            queueService.removeListener(concurrent);
+            executor.shutdown();
+        }
+
+        assertThat(results).containsExactly(true, true);
+        assertThat(metrics.getReadLockFailures()).isEqualTo(failures);
+    }
+
+    @Test
+    public void joinAllShouldKeepTheBatchTogetherWhileOthersJoin() throws Exception {
+        queueService.clear();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> singles = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            singles.add(executor.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    queueService.join(UserStub.builder().build());
+                }
+            }));
+        }
+        List<UserStub> batch = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            batch.add(UserStub.builder().username("partner" + i).build());
+        }
+
+        List<String> identifiers = queueService.joinAll(batch);
+        for (Future<?> single : singles) {
+            single.get();
+        }
+        executor.shutdown();
+
+        assertThat(identifiers).hasSize(10_000);
+        assertThat(new HashSet<>(identifiers)).hasSize(10_000);
+        int first = queueService.getPositionInQueue(identifiers.get(0));
+        assertThat(queueService.getPositionInQueue(identifiers.get(9_999))).isEqualTo(first + 9_999);
+        assertThat(queueService.size()).isEqualTo(30_000);
+    }
+
+    @Test
+    public void pollAllShouldReportEveryIdentifierInRequestOrder() {
+        queueService.clear();
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            identifiers.add(queueService.join(UserStub.builder().build()));
+        }
+        queueService.admit(2);
+        queueService.removeIdentifier(identifiers.get(1_500));
+
+        long[] statuses = queueService.pollAll(Arrays.asList(identifiers.get(2_499), identifiers.get(0),
+                UUID.randomUUID().toString(), identifiers.get(1_001), identifiers.get(1_500), identifiers.get(2)));
+
+        assertThat(statuses).containsExactly(2_496, QueueService.ADMITTED, QueueService.NOT_FOUND, 999, QueueService.NOT_FOUND, 0);
+    }
+
+    @Test
+    public void pollWithPositionCacheShouldMatchTheExactPosition() {
+        QueueService cached = new QueueService("cached", identifierService, "object", 60_000);
+        try {
+            List<String> identifiers = new ArrayList<>();
+            for (int i = 0; i < 3_000; i++) {
+                identifiers.add(cached.join(UserStub.builder().build()));
+            }
+            cached.admit(100);
+            cached.removeIdentifier(identifiers.get(500));
+
+            assertThat(cached.poll(identifiers.get(400)).getPosition()).isEqualTo(300);
+            assertThat(cached.poll(identifiers.get(2_999)).getPosition()).isEqualTo(2_898);
+            assertThat(cached.poll(identifiers.get(50)).isAdmitted()).isTrue();
+        } finally {
+            cached.close();
+        }
+    }
+
+    @Test
+    public void getPositionInQueueWithPositionCacheShouldMatchTheExactPosition() {
+        QueueService cached = new QueueService("cached", identifierService, "primitive", 60_000);
+        try {
+            List<String> identifiers = new ArrayList<>();
+            for (int i = 0; i < 3_000; i++) {
+                identifiers.add(cached.join(UserStub.builder().build()));
+            }
+            assertThat(cached.getPositionInQueue(identifiers.get(2_999))).isEqualTo(2_999);
+
+            cached.admit(100);
+            cached.removeIdentifier(identifiers.get(500));
+
+            assertThat(cached.getPositionInQueue(identifiers.get(400))).isEqualTo(300);
+            assertThat(cached.getPositionInQueue(identifiers.get(500))).isEqualTo(-1);
+            assertThat(cached.getPositionInQueue(UUID.randomUUID().toString())).isEqualTo(-1);
+        } finally {
+            cached.close();
+        }
+    }
+
+    @Test
+    public void usersWithoutHeartbeatShouldExpire() throws InterruptedException {
+        QueueService expiring = new QueueService("expiring", identifierService, "object", 0, 200);
+        try {
+            String silent = expiring.join(UserStub.builder().build());
+            String polling = expiring.join(UserStub.builder().build());
+            for (int i = 0; i < 40; i++) {
+                Thread.sleep(10);
+                expiring.heartbeat(polling);
+            }
+
+            assertThat(expiring.checkExists(silent)).isFalse();
+            assertThat(expiring.checkExists(polling)).isTrue();
+            assertThat(expiring.getPositionInQueue(polling)).isEqualTo(0);
+            assertThat(expiring.getMetrics().getExpiredCount()).isEqualTo(1);
+        } finally {
+            expiring.close();
+        }
+    }
 }
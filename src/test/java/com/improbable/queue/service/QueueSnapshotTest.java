@@ -0,0 +1,111 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueueSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoverShouldLoadSnapshotAndReplayOnlyTheJournalAfterIt() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<UUID> identifiers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            identifiers.add(UUID.randomUUID());
+        }
+        try (QueueJournal journal = new QueueJournal(directory, 1, 1 << 16, 1)) {
+            join(journal, 0, identifiers.get(0), "alice");
+            join(journal, 1, identifiers.get(1), null);
+            long position = journal.position();
+            //    the snapshot visit can already see a join whose record lands after its position
+            QueueSnapshot.write(directory, 1, position, 0, visitor -> {
+                for (int i = 0; i < 3; i++) {
+                    UUID identifier = identifiers.get(i);
+                    visitor.visit(i, identifier.getMostSignificantBits(), identifier.getLeastSignificantBits(), i == 0, i == 0 ? "alice" : null);
+                }
+            });
+            join(journal, 2, identifiers.get(2), null);
+            join(journal, 3, identifiers.get(3), null);
+            join(journal, 4, identifiers.get(4), "eve");
+            journal.appendLeave(identifiers.get(1).getMostSignificantBits(), identifiers.get(1).getLeastSignificantBits());
+            journal.appendAdmit(2);
+        }
+
+        JournalRecovery recovery = JournalRecovery.recover(directory);
+
+        assertThat(recovery.users()).extracting(UserStub::getIdentifier).containsExactly(
+                identifiers.get(0).toString(), identifiers.get(2).toString(), identifiers.get(3).toString(), identifiers.get(4).toString());
+        assertThat(recovery.users().get(0).getUsername()).isEqualTo("alice");
+        assertThat(recovery.users().get(3).getUsername()).isEqualTo("eve");
+        assertThat(recovery.admittedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void snapshotShouldCompleteAGeneration() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 1, 1 << 16, 1)) {
+            QueueSnapshot.write(directory, 1, journal.position(), -1, visitor -> {
+            });
+            join(journal, 0, UUID.randomUUID(), null);
+        }
+        try (QueueJournal journal = new QueueJournal(directory, 2, 1 << 16, 1)) {
+            QueueSnapshot.write(directory, 2, journal.position(), -1, visitor -> {
+            });
+            join(journal, 0, UUID.randomUUID(), null);
+            join(journal, 1, UUID.randomUUID(), null);
+        }
+
+        assertThat(JournalRecovery.recover(directory).users()).hasSize(2);
+    }
+
+    @Test
+    public void recoverShouldReplayFromSnapshotAfterOlderFilesAreDeleted() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (QueueJournal journal = new QueueJournal(directory, 1, 4096, 1)) {
+            for (int i = 0; i < 500; i++) {
+                join(journal, i, UUID.randomUUID(), "user" + i);
+            }
+            long position = journal.position();
+            QueueSnapshot.write(directory, 1, position, -1, visitor -> {
+                for (int i = 0; i < 500; i++) {
+                    visitor.visit(i, i, i, false, "user" + i);
+                }
+            });
+            journal.deleteFilesBefore(position);
+            for (int i = 500; i < 600; i++) {
+                join(journal, i, UUID.randomUUID(), "user" + i);
+            }
+        }
+
+        assertThat(Files.exists(directory.resolve("journal-1-000000.log"))).isFalse();
+        List<UserStub> users = JournalRecovery.recover(directory).users();
+        assertThat(users).hasSize(600);
+        assertThat(users.get(599).getUsername()).isEqualTo("user599");
+    }
+
+    @Test
+    public void newestShouldIgnoreIncompleteSnapshots() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        QueueSnapshot.write(directory, 1, 10, -1, visitor -> visitor.visit(0, 1, 2, false, null));
+        Files.write(directory.resolve(QueueSnapshot.fileName(1, 20)), new byte[64]);
+
+        assertThat(QueueSnapshot.newest(directory, 1)).isEqualTo(directory.resolve(QueueSnapshot.fileName(1, 10)));
+        assertThat(QueueSnapshot.newest(directory, 2)).isNull();
+    }
+
+    private static void join(QueueJournal journal, long ticket, UUID identifier, String username) {
+        journal.appendJoin(ticket, identifier.getMostSignificantBits(), identifier.getLeastSignificantBits(), false, username);
+    }
+}
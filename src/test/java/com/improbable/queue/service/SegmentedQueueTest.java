@@ -0,0 +1,149 @@
+package com.improbable.queue.service;
+
+import com.improbable.queue.model.UserStub;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentedQueueTest {
+
+    @Test
+    public void pollShouldDropDrainedSegments() {
+        SegmentedQueue queue = new SegmentedQueue(10);
+        List<UserStub> users = new ArrayList<>();
+        for (int i = 0; i < 35; i++) {
+            UserStub userStub = UserStub.builder().build();
+            queue.add(userStub);
+            users.add(userStub);
+        }
+        assertThat(queue.segmentCount()).isEqualTo(4);
+
+        assertThat(queue.poll(25)).containsExactlyElementsOf(users.subList(0, 25));
+
+        assertThat(queue.segmentCount()).isEqualTo(2);
+        assertThat(queue.size()).isEqualTo(10);
+        assertThat(queue.positionOf(users.get(25))).isEqualTo(0);
+        assertThat(queue.positionOf(users.get(34))).isEqualTo(9);
+    }
+
+    @Test
+    public void pollShouldSkipRemovedUsers() {
+        SegmentedQueue queue = new SegmentedQueue(10);
+        List<UserStub> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UserStub userStub = UserStub.builder().build();
+            queue.add(userStub);
+            users.add(userStub);
+        }
+        for (int i = 0; i < 10; i++) {
+            queue.remove(users.get(i));
+        }
+        queue.remove(users.get(11));
+
+        assertThat(queue.poll(2)).containsExactly(users.get(10), users.get(12));
+        assertThat(queue.segmentCount()).isEqualTo(1);
+        assertThat(queue.peek()).isSameAs(users.get(13));
+    }
+
+    @Test
+    public void pollWhenAllDrainedShouldLeaveQueueEmpty() {
+        SegmentedQueue queue = new SegmentedQueue(10);
+        for (int i = 0; i < 10; i++) {
+            queue.add(UserStub.builder().build());
+        }
+        assertThat(queue.poll(100)).hasSize(10);
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.segmentCount()).isZero();
+
+        UserStub late = UserStub.builder().build();
+        queue.add(late);
+        assertThat(queue.peek()).isSameAs(late);
+        assertThat(queue.positionOf(late)).isEqualTo(0);
+    }
+
+    @Test
+    public void addAllShouldTakeContiguousTicketsAcrossSegments() {
+        SegmentedQueue queue = new SegmentedQueue(10);
+        queue.add(UserStub.builder().build());
+        List<UserStub> batch = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            batch.add(UserStub.builder().build());
+        }
+
+        queue.addAll(batch);
+
+        for (int i = 0; i < batch.size(); i++) {
+            assertThat(batch.get(i).getTicket()).isEqualTo(i + 1);
+        }
+        assertThat(queue.segmentCount()).isEqualTo(3);
+        assertThat(queue.size()).isEqualTo(26);
+        assertThat(queue.positionOf(batch.get(24))).isEqualTo(25);
+        assertThat(queue.poll(26).subList(1, 26)).containsExactlyElementsOf(batch);
+    }
+
+    @Test
+    public void compactShouldDropTombstonesAndKeepPositions() {
+        SegmentedQueue queue = new SegmentedQueue(10);
+        List<UserStub> users = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            UserStub userStub = UserStub.builder().build();
+            queue.add(userStub);
+            users.add(userStub);
+        }
+        for (int i = 10; i < 20; i++) {
+            if (i != 13 && i != 17) {
+                queue.remove(users.get(i));
+            }
+        }
+        //    the tail segment is not full yet, so it is never compacted
+        for (int i = 20; i < 25; i++) {
+            queue.remove(users.get(i));
+        }
+
+        assertThat(queue.compact(0.9, 10)).isZero();
+        assertThat(queue.compact(0.5, 10)).isEqualTo(1);
+
+        assertThat(queue.positionOf(users.get(13))).isEqualTo(10);
+        assertThat(queue.positionOf(users.get(17))).isEqualTo(11);
+        assertThat(queue.waitingBefore(15)).isEqualTo(11);
+        assertThat(queue.remove(users.get(12))).isFalse();
+        List<Long> tickets = new ArrayList<>();
+        queue.forEach(tickets::add);
+        assertThat(tickets).hasSize(12).endsWith(13L, 17L);
+
+        assertThat(queue.remove(users.get(13))).isTrue();
+        assertThat(queue.poll(12)).hasSize(11).endsWith(users.get(17));
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void forEachFromShouldSeekPastRemovedAndPolledUsers() {
+        SegmentedQueue queue = new SegmentedQueue(10);
+        List<UserStub> users = new ArrayList<>();
+        for (int i = 0; i < 45; i++) {
+            UserStub userStub = UserStub.builder().build();
+            queue.add(userStub);
+            users.add(userStub);
+        }
+        queue.poll(12);
+        for (int i = 20; i < 30; i++) {
+            queue.remove(users.get(i));
+        }
+        queue.remove(users.get(33));
+        List<UserStub> page = new ArrayList<>();
+
+        //    waiting: 12..19, then 30..32, 34..
+        queue.forEachFrom(7, 5, page::add);
+
+        assertThat(page).containsExactly(users.get(19), users.get(30), users.get(31), users.get(32), users.get(34));
+        page.clear();
+        queue.forEachFrom(20, 10, page::add);
+        assertThat(page).containsExactly(users.get(43), users.get(44));
+        page.clear();
+        queue.forEachFrom(22, 10, page::add);
+        assertThat(page).isEmpty();
+    }
+}
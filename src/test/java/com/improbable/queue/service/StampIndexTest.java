@@ -0,0 +1,67 @@
+package com.improbable.queue.service;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StampIndexTest {
+
+    @Test
+    public void firstTicketAfterShouldBinarySearchTheStamps() {
+        StampIndex index = new StampIndex();
+        for (long ticket = 0; ticket < 100_000; ticket++) {
+            index.record(ticket, 1_000 + ticket * 2);
+        }
+
+        assertThat(index.firstTicketAfter(1_000, false)).isEqualTo(0);
+        assertThat(index.firstTicketAfter(1_000, true)).isEqualTo(1);
+        assertThat(index.firstTicketAfter(1_001, true)).isEqualTo(1);
+        assertThat(index.firstTicketAfter(1_000 + 70_000 * 2, false)).isEqualTo(70_000);
+        assertThat(index.firstTicketAfter(Long.MAX_VALUE, false)).isEqualTo(100_000);
+        assertThat(index.stampOf(70_000)).isEqualTo(1_000 + 70_000 * 2);
+    }
+
+    @Test
+    public void unrecordedTicketsShouldInheritThePreviousStamp() {
+        StampIndex index = new StampIndex();
+        index.record(5, 10);
+        index.record(8, 20);
+
+        assertThat(index.stampOf(3)).isEqualTo(Long.MIN_VALUE);
+        assertThat(index.stampOf(7)).isEqualTo(10);
+        assertThat(index.firstTicketAfter(10, true)).isEqualTo(8);
+        assertThat(index.firstTicketAfter(10, false)).isEqualTo(5);
+    }
+
+    @Test
+    public void recordBelowTheLastTicketShouldStartAgain() {
+        StampIndex index = new StampIndex();
+        index.record(0, 10);
+        index.record(1, 20);
+
+        index.record(0, 30);
+
+        assertThat(index.stampOf(0)).isEqualTo(30);
+        assertThat(index.firstTicketAfter(25, false)).isEqualTo(0);
+        assertThat(index.firstTicketAfter(30, true)).isEqualTo(1);
+    }
+
+    @Test
+    public void releaseBelowShouldDropWholeChunksOnTheNextRecord() {
+        StampIndex index = new StampIndex();
+        for (long ticket = 0; ticket < 100_000; ticket++) {
+            index.record(ticket, 1_000 + ticket * 2);
+        }
+        assertThat(index.chunkCount()).isEqualTo(7);
+
+        index.releaseBelow(70_000);
+        index.record(100_000, 1_000 + 100_000 * 2);
+
+        //    70,000 falls in the fifth chunk, which is kept with the two after it
+        assertThat(index.chunkCount()).isEqualTo(3);
+        assertThat(index.stampOf(60_000)).isEqualTo(Long.MIN_VALUE);
+        assertThat(index.stampOf(70_000)).isEqualTo(1_000 + 70_000 * 2);
+        assertThat(index.firstTicketAfter(1_000 + 80_000 * 2, false)).isEqualTo(80_000);
+        assertThat(index.firstTicketAfter(0, false)).isEqualTo(65_536);
+    }
+}
@@ -0,0 +1,47 @@
+package com.improbable.queue.service;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StampSummaryTest {
+
+    @Test
+    public void countBeforeShouldBeExactWhenEveryTicketIsSampled() {
+        //    stamps 10, 20, 30, 40; the user stamped 30 left
+        StampSummary summary = new StampSummary(StampSummary.encode(50, new long[]{10, 20, 30, 40}, new long[]{1, 2, 2, 3}, 4), 0);
+
+        assertThat(summary.countBefore(5, false)).isEqualTo(0);
+        assertThat(summary.countBefore(10, false)).isEqualTo(0);
+        assertThat(summary.countBefore(10, true)).isEqualTo(1);
+        assertThat(summary.countBefore(19, false)).isEqualTo(1);
+        assertThat(summary.countBefore(35, false)).isEqualTo(2);
+        assertThat(summary.countBefore(40, false)).isEqualTo(2);
+        assertThat(summary.countBefore(45, false)).isEqualTo(3);
+    }
+
+    @Test
+    public void countBeforeShouldInterpolateBetweenSamples() {
+        //    1000 users stamped 0, 10, 20 and so on, sampled every 100th
+        long[] stamps = new long[10];
+        long[] counts = new long[10];
+        for (int i = 0; i < 10; i++) {
+            stamps[i] = (i * 100 + 99) * 10;
+            counts[i] = i * 100 + 100;
+        }
+        StampSummary summary = new StampSummary(StampSummary.encode(10_000, stamps, counts, 10), 0);
+
+        assertThat(summary.countBefore(5_005, false)).isBetween(499L, 501L);
+        assertThat(summary.countBefore(9_990, true)).isEqualTo(1_000);
+    }
+
+    @Test
+    public void coversShouldNeedAStampBeforeTheClockAndARecentSummary() {
+        StampSummary summary = new StampSummary(StampSummary.encode(50, new long[0], new long[0], 0), 1_000);
+
+        assertThat(summary.covers(49, 1_000)).isTrue();
+        assertThat(summary.covers(50, 1_000)).isFalse();
+        assertThat(summary.covers(49, 1_001)).isFalse();
+        assertThat(summary.countBefore(49, true)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,59 @@
+package com.improbable.queue.service;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void newBucketShouldStartFull() {
+        TokenBucket bucket = new TokenBucket(100, 50, 0);
+
+        assertThat(bucket.available(0)).isEqualTo(50);
+    }
+
+    @Test
+    public void tokensShouldAccrueAtTheRateUpToTheBurst() {
+        TokenBucket bucket = new TokenBucket(100, 50, 0);
+        bucket.consume(50);
+
+        assertThat(bucket.available(SECOND / 10)).isEqualTo(10);
+        assertThat(bucket.available(SECOND / 4)).isEqualTo(25);
+        assertThat(bucket.available(10 * SECOND)).isEqualTo(50);
+    }
+
+    @Test
+    public void fractionalTokensShouldCarryOver() {
+        TokenBucket bucket = new TokenBucket(3, 3, 0);
+        bucket.consume(3);
+
+        assertThat(bucket.available(SECOND / 4)).isEqualTo(0);
+        assertThat(bucket.available(SECOND / 2)).isEqualTo(1);
+        bucket.consume(1);
+        assertThat(bucket.available(SECOND)).isEqualTo(2);
+    }
+
+    @Test
+    public void updateShouldKeepTokensAccruedAtTheOldRate() {
+        TokenBucket bucket = new TokenBucket(10, 100, 0);
+        bucket.consume(100);
+
+        bucket.update(1000, 100, SECOND);
+
+        assertThat(bucket.available(SECOND)).isEqualTo(10);
+        assertThat(bucket.available(SECOND + SECOND / 100)).isEqualTo(20);
+        assertThat(bucket.getRatePerSecond()).isEqualTo(1000);
+    }
+
+    @Test
+    public void updateWithSmallerBurstShouldDiscardTheExcess() {
+        TokenBucket bucket = new TokenBucket(10, 100, 0);
+
+        bucket.update(10, 5, 0);
+
+        assertThat(bucket.available(0)).isEqualTo(5);
+    }
+}